@@ -0,0 +1,285 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.util.BinaryData;
+import co.elastic.clients.util.ContentType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes large sets of documents to elastic as a series of bounded bulk requests.
+ * <p>
+ * The operations are split into bulk requests of at most elasticsearch.bulk.max.operations documents and
+ * elasticsearch.bulk.max.bytes bytes, and at most elasticsearch.bulk.concurrency of them are in flight at once
+ * across all the writers, a writer submitting more blocks until one of them completes.
+ * <p>
+ * Operations rejected with a 429, because the elastic write queue is full, are retried up to
+ * elasticsearch.bulk.max.retries times, waiting elasticsearch.bulk.retry.backoff milliseconds before the first
+ * retry and doubling the wait each time. The operations which still fail are reported with their failure
+ * reason in the {@link BulkResult}, the rest of the operations are still written.
+ * <p>
+ * With {@link Refresh#True} the bulk requests are sent without a refresh and the written indices are refreshed
+ * once all of them completed, instead of once per bulk request.
+ */
+@Configuration
+public class BulkIngester {
+
+    private static final Logger logger = Logger.getLogger(BulkIngester.class.getName());
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    // estimated size of the action line of a bulk operation, without its index and id
+    private static final int ACTION_OVERHEAD = 64;
+
+    @Autowired
+    ElasticConfig esService;
+
+    @Autowired
+    @Qualifier("indexClient")
+    ElasticsearchClient client;
+
+    @Autowired
+    WriteCounter writeCounter;
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-ingester-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    void init() {
+        inFlight = new Semaphore(Math.max(1, esService.getES_BULK_CONCURRENCY()), true);
+    }
+
+    /**
+     * A single bulk operation and its estimated size
+     *
+     * @param index     the index written
+     * @param id        the document id
+     * @param operation the bulk operation
+     * @param size      the estimated size in bytes of the operation in the bulk request
+     */
+    public record Operation(String index, String id, BulkOperation operation, long size) {
+
+        /**
+         * @param index    the index written
+         * @param id       the document id
+         * @param document the document to index
+         * @param mapper   the mapper used to serialize the document
+         * @return an index operation
+         * @throws JsonProcessingException if the document cannot be serialized
+         */
+        public static Operation index(String index, String id, Object document, ObjectMapper mapper)
+                throws JsonProcessingException {
+            // serialized once, the bytes are measured and sent as they are
+            byte[] json = mapper.writeValueAsBytes(document);
+            long size = json.length + index.length() + id.length() + ACTION_OVERHEAD;
+            BulkOperation operation = BulkOperation.of(op -> op.index(i -> i.index(index)
+                    .id(id)
+                    .document(BinaryData.of(json, ContentType.APPLICATION_JSON))));
+            return new Operation(index, id, operation, size);
+        }
+
+        /**
+         * @param index the index written
+         * @param id    the id of the document to delete
+         * @return a delete operation
+         */
+        public static Operation delete(String index, String id) {
+            BulkOperation operation = BulkOperation.of(op -> op.delete(d -> d.index(index).id(id)));
+            return new Operation(index, id, operation, index.length() + id.length() + ACTION_OVERHEAD);
+        }
+    }
+
+    /**
+     * The outcome of a bulk write
+     *
+     * @param operations the operations written
+     * @param failures   the failure reason of each operation which could not be written, by operation position
+     */
+    public record BulkResult(List<Operation> operations, SortedMap<Integer, String> failures) {
+
+        /**
+         * @return true if any of the operations failed
+         */
+        public boolean hasFailures() {
+            return !failures.isEmpty();
+        }
+
+        /**
+         * @param position operation position
+         * @return true if the operation at the given position failed
+         */
+        public boolean failed(int position) {
+            return failures.containsKey(position);
+        }
+
+        /**
+         * @return the failure reasons by document id
+         */
+        public Map<String, String> failuresById() {
+            Map<String, String> failuresById = new LinkedHashMap<>();
+            failures.forEach((position, reason) -> failuresById.put(operations.get(position).id(), reason));
+            return failuresById;
+        }
+    }
+
+    /**
+     * Write the operations as bounded bulk requests, waiting for all of them to complete
+     *
+     * @param operations the bulk operations
+     * @param refresh    the refresh policy of the write
+     * @return the failures of the operations which could not be written
+     * @throws IOException if the write was interrupted
+     */
+    public BulkResult write(List<Operation> operations, Refresh refresh) throws IOException {
+        if (operations.isEmpty()) {
+            return new BulkResult(operations, Collections.emptySortedMap());
+        }
+        // a single refresh once all the bulk requests are written
+        Refresh bulkRefresh = refresh == Refresh.True ? Refresh.False : refresh;
+        List<CompletableFuture<SortedMap<Integer, String>>> requests = new ArrayList<>();
+        try {
+            for (List<Integer> chunk : split(operations)) {
+                inFlight.acquire();
+                try {
+                    requests.add(CompletableFuture.supplyAsync(() -> send(operations, chunk, bulkRefresh), executor)
+                            .whenComplete((failures, e) -> inFlight.release()));
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+            CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+
+        SortedMap<Integer, String> failures = new TreeMap<>();
+        requests.forEach(request -> failures.putAll(request.join()));
+        if (refresh == Refresh.True) {
+            Set<String> indices = new TreeSet<>();
+            operations.forEach(operation -> indices.add(operation.index()));
+            client.indices().refresh(r -> r.index(List.copyOf(indices)));
+        }
+        if (!failures.isEmpty()) {
+            logger.log(Level.SEVERE, () -> MessageFormat.format(TextUtil.BULK_FAILED_OPERATIONS,
+                    failures.size(), operations.size()));
+        }
+        if (failures.size() < operations.size()) {
+            writeCounter.written();
+        }
+        return new BulkResult(operations, failures);
+    }
+
+    /**
+     * Split the operations into bulk requests bounded by elasticsearch.bulk.max.operations and
+     * elasticsearch.bulk.max.bytes, a single operation larger than the byte limit is sent on its own
+     *
+     * @param operations the bulk operations
+     * @return the positions of the operations of each bulk request
+     */
+    List<List<Integer>> split(List<Operation> operations) {
+        int maxOperations = Math.max(1, esService.getES_BULK_MAX_OPERATIONS());
+        long maxBytes = esService.getES_BULK_MAX_BYTES();
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> chunk = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            long size = operations.get(i).size();
+            if (!chunk.isEmpty() && (chunk.size() >= maxOperations || bytes + size > maxBytes)) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                bytes = 0;
+            }
+            chunk.add(i);
+            bytes += size;
+        }
+        chunks.add(chunk);
+        return chunks;
+    }
+
+    private SortedMap<Integer, String> send(List<Operation> operations, List<Integer> chunk, Refresh refresh) {
+        SortedMap<Integer, String> failures = new TreeMap<>();
+        List<Integer> pending = chunk;
+        long backoff = esService.getES_BULK_RETRY_BACKOFF();
+        for (int attempt = 0; ; attempt++) {
+            List<Integer> batch = pending;
+            List<Integer> rejected = new ArrayList<>();
+            try {
+                BulkResponse response = client.bulk(b -> b
+                        .operations(batch.stream().map(i -> operations.get(i).operation()).toList())
+                        .refresh(refresh));
+                for (int i = 0; i < pending.size(); i++) {
+                    BulkResponseItem item = response.items().get(i);
+                    if (item.error() == null) {
+                        failures.remove(pending.get(i));
+                    } else {
+                        failures.put(pending.get(i), item.error().reason());
+                        if (item.status() == TOO_MANY_REQUESTS) {
+                            rejected.add(pending.get(i));
+                        }
+                    }
+                }
+            } catch (ElasticsearchException e) {
+                pending.forEach(i -> failures.put(i, e.getMessage()));
+                if (e.status() == TOO_MANY_REQUESTS) {
+                    rejected.addAll(pending);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS, e);
+                pending.forEach(i -> failures.put(i, String.valueOf(e.getMessage())));
+            }
+            if (rejected.isEmpty() || attempt >= esService.getES_BULK_MAX_RETRIES()) {
+                return failures;
+            }
+            logger.log(Level.WARNING, MessageFormat.format(TextUtil.BULK_REJECTED_RETRY, rejected.size(), backoff));
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failures;
+            }
+            backoff *= 2;
+            pending = rejected;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
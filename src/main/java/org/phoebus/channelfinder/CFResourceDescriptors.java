@@ -9,4 +9,5 @@ public class CFResourceDescriptors {
     public static final String CHANNEL_RESOURCE_URI = CF_SERVICE + "/resources/channels";
     public static final String SCROLL_RESOURCE_URI = CF_SERVICE + "/resources/scroll";
     public static final String CHANNEL_PROCESSOR_RESOURCE_URI = CF_SERVICE + "/resources/processors";
+    public static final String JOB_RESOURCE_URI = CF_SERVICE + "/resources/jobs";
 }
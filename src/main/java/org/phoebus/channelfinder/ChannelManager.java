@@ -1,16 +1,20 @@
 package org.phoebus.channelfinder;
 
-import com.google.common.collect.FluentIterable;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import org.phoebus.channelfinder.AuthorizationService.ROLES;
 import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Property;
 import org.phoebus.channelfinder.entity.SearchResult;
 import org.phoebus.channelfinder.entity.Tag;
+import org.phoebus.channelfinder.processors.ChannelChange;
 import org.phoebus.channelfinder.processors.ChannelProcessorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -26,7 +30,11 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -58,12 +66,24 @@ public class ChannelManager {
     @Autowired
     ChannelRepository channelRepository;
 
+    @Autowired
+    MetadataCache metadataCache;
+
     @Autowired
     AuthorizationService authorizationService;
 
     @Autowired
     ChannelProcessorService channelProcessorService;
 
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ElasticConfig esService;
+
+    @Autowired
+    JobService jobService;
+
     /**
      * GET method for querying a collection of Channel instances, based on a
      * multi-parameter query specifying patterns for tags, property values, and
@@ -102,6 +122,36 @@ public class ChannelManager {
         return channelRepository.count(allRequestParams);
     }
 
+    /**
+     * GET method for exporting all the Channel instances matching a multi-parameter query specifying
+     * patterns for tags, property values, and channel names to match against.
+     * <p>
+     * The channels are streamed as newline delimited json, one page at a time, so the result is not
+     * limited by the max result window and the memory used does not depend on the number of matches.
+     *
+     * @param allRequestParams query parameters
+     * @param response the response the channels are written to
+     * @throws IOException if writing to the response fails
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void export(@RequestParam MultiValueMap<String, String> allRequestParams,
+                       HttpServletResponse response) throws IOException {
+        long start = System.currentTimeMillis();
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            // the records are separated by new lines rather than the default root value separator
+            generator.setRootValueSeparator(null);
+            long count = channelRepository.searchAll(allRequestParams, channels -> {
+                for (Channel channel : channels) {
+                    generator.writeObject(channel);
+                    generator.writeRaw('\n');
+                }
+                generator.flush();
+            });
+            channelManagerAudit.log(Level.INFO, () -> MessageFormat.format(TextUtil.EXPORT_CHANNELS, allRequestParams, count, System.currentTimeMillis() - start));
+        }
+    }
+
     /**
      * GET method for retrieving an instance of Channel identified by
      * <code>channelName</code>.
@@ -151,12 +201,12 @@ public class ChannelManager {
             } 
 
             // reset owners of attached tags/props back to existing owners
-            channel.getProperties().forEach(prop -> prop.setOwner(propertyRepository.findById(prop.getName()).get().getOwner()));
-            channel.getTags().forEach(tag -> tag.setOwner(tagRepository.findById(tag.getName()).get().getOwner()));
+            channel.getProperties().forEach(prop -> prop.setOwner(metadataCache.getPropertyOwner(prop.getName()).get()));
+            channel.getTags().forEach(tag -> tag.setOwner(metadataCache.getTagOwner(tag.getName()).get()));
 
             Channel createdChannel = channelRepository.index(channel);
             // process the results
-            channelProcessorService.sendToProcessors(List.of(createdChannel));
+            channelProcessorService.sendChangesToProcessors(List.of(ChannelChange.of(existingChannel.orElse(null), createdChannel)));
             // create new channel
             return createdChannel;
         } else {
@@ -172,8 +222,45 @@ public class ChannelManager {
      * @param channels - XmlChannels to be created
      * @return the list of channels created
      */
+    public Iterable<Channel> create(Iterable<Channel> channels) {
+        ChannelRepository.WriteResult result = create(channels, esService.getES_WRITE_REFRESH());
+        return result.failures().isEmpty() ? result.channels() : Collections.emptyList();
+    }
+
+    /**
+     * PUT method for creating multiple channels.
+     *
+     * @param channels - XmlChannels to be created
+     * @param refresh - refresh=true|wait_for|false, if and how to wait for the channels to be searchable
+     * @param response - response=full|summary|none, return the created channels, their count and failures or nothing
+     * @param async - async=true replaces the channels in a background job, the authorization and validation
+     *              errors are reported by the job
+     * @return the list of channels created, a summary or nothing depending on the response mode, or the job
+     * replacing the channels when async
+     */
     @PutMapping
-    public Iterable<Channel> create(@RequestBody Iterable<Channel> channels) {
+    public Object create(@RequestBody Iterable<Channel> channels,
+                         @RequestParam(value = "refresh", required = false) String refresh,
+                         @RequestParam(value = "response", required = false) String response,
+                         @RequestParam(value = "async", required = false, defaultValue = "false") boolean async) {
+        WriteOptions options = getWriteOptions(refresh, response);
+        if(async) {
+            List<Channel> channelList = Lists.newArrayList(channels);
+            return jobService.submit("replace-channels", channelList.size() + " channels", progress -> {
+                progress.total(channelList.size());
+                ChannelRepository.WriteResult result = create(channelList, options.refresh());
+                progress.scanned(channelList.size());
+                progress.modified(result.channels().size());
+                if(!result.failures().isEmpty()) {
+                    throw new IOException(MessageFormat.format(TextUtil.BULK_FAILED_OPERATIONS,
+                            result.failures().size(), channelList.size()));
+                }
+            });
+        }
+        return getWriteResponse(create(channels, options.refresh()), options);
+    }
+
+    private ChannelRepository.WriteResult create(Iterable<Channel> channels, Refresh refresh) {
         // check if authorized role
         if(authorizationService.isAuthorizedRole(SecurityContextHolder.getContext().getAuthentication(), ROLES.CF_CHANNEL)) {
             // check if authorized owner
@@ -201,7 +288,7 @@ public class ChannelManager {
             start = System.currentTimeMillis();
 
             // delete existing channels
-            channelRepository.deleteAll(channels);
+            channelRepository.deleteAll(channels, refresh);
             logger.log(Level.INFO, "Completed replacement of Channels : " + (System.currentTimeMillis() - start) + "ms");
             start = System.currentTimeMillis();
 
@@ -213,11 +300,13 @@ public class ChannelManager {
 
             logger.log(Level.INFO, "Completed logging : " + (System.currentTimeMillis() - start) + "ms");
             start = System.currentTimeMillis();
-            List<Channel> createdChannels = channelRepository.indexAll(Lists.newArrayList(channels));
+            ChannelRepository.WriteResult createdChannels = channelRepository.indexAll(Lists.newArrayList(channels), refresh);
 
             logger.log(Level.INFO, "Completed indexing : " + (System.currentTimeMillis() - start) + "ms");
             // process the results
-            channelProcessorService.sendToProcessors(createdChannels);
+            channelProcessorService.sendChangesToProcessors(createdChannels.channels().stream()
+                    .map(channel -> ChannelChange.of(existingChannels.get(channel.getName()), channel))
+                    .toList());
             // created new channel
             return createdChannels;
         } else {
@@ -228,16 +317,9 @@ public class ChannelManager {
     }
 
     private void resetOwnersToExisting(Iterable<Channel> channels) {
-        Map<String, String> propOwners = StreamSupport
-                .stream(propertyRepository.findAll().spliterator(), true)
-                .collect(Collectors.toUnmodifiableMap(Property::getName, Property::getOwner));
-        Map<String, String> tagOwners = StreamSupport
-                .stream(tagRepository.findAll().spliterator(), true)
-                .collect(Collectors.toUnmodifiableMap(Tag::getName, Tag::getOwner));
-
         for(Channel channel: channels) {
-            channel.getProperties().forEach(prop -> prop.setOwner(propOwners.get(prop.getName())));
-            channel.getTags().forEach(tag -> tag.setOwner(tagOwners.get(tag.getName())));
+            channel.getProperties().forEach(prop -> prop.setOwner(metadataCache.getPropertyOwner(prop.getName()).orElse(null)));
+            channel.getTags().forEach(tag -> tag.setOwner(metadataCache.getTagOwner(tag.getName()).orElse(null)));
         }
     }
 
@@ -266,6 +348,9 @@ public class ChannelManager {
             boolean present = existingChannel.isPresent();
 
             Channel newChannel;
+            // the existing channel before it is merged with the update
+            Channel previousChannel = ChannelChange.snapshot(existingChannel.orElse(null));
+            boolean renamed = false;
             if(present) {
                 checkAndThrow(!authorizationService.isAuthorizedOwner(SecurityContextHolder.getContext().getAuthentication(), existingChannel.get()), TextUtil.USER_NOT_AUTHORIZED_ON_CHANNEL, existingChannel.get(), HttpStatus.UNAUTHORIZED);
                 newChannel = existingChannel.get();
@@ -277,18 +362,21 @@ public class ChannelManager {
                     // Since this is a rename operation we will need to remove the old channel.
                     channelRepository.deleteById(existingChannel.get().getName());
                     newChannel.setName(channel.getName());
+                    renamed = true;
                 }
             } else {
                 newChannel = channel;
             }
 
             // reset owners of attached tags/props back to existing owners
-            channel.getProperties().forEach(prop -> prop.setOwner(propertyRepository.findById(prop.getName()).get().getOwner()));
-            channel.getTags().forEach(tag -> tag.setOwner(tagRepository.findById(tag.getName()).get().getOwner()));
+            channel.getProperties().forEach(prop -> prop.setOwner(metadataCache.getPropertyOwner(prop.getName()).get()));
+            channel.getTags().forEach(tag -> tag.setOwner(metadataCache.getTagOwner(tag.getName()).get()));
 
             Channel updatedChannels = channelRepository.save(newChannel);
-            // process the results
-            channelProcessorService.sendToProcessors(List.of(updatedChannels));
+            // process the results, a renamed channel is deleted and created under its new name
+            channelProcessorService.sendChangesToProcessors(renamed
+                    ? List.of(ChannelChange.of(previousChannel, null), ChannelChange.of(null, updatedChannels))
+                    : List.of(ChannelChange.of(previousChannel, updatedChannels)));
             // created new channel
             return updatedChannels;
         } else {
@@ -305,16 +393,39 @@ public class ChannelManager {
      * @param channels - XmlChannels to be updated
      * @return the updated channels
      */
+    public Iterable<Channel> update(Iterable<Channel> channels) {
+        ChannelRepository.WriteResult result = update(channels, esService.getES_WRITE_REFRESH());
+        return result.failures().isEmpty() ? result.channels() : null;
+    }
+
+    /**
+     * POST method for merging properties and tags of the Channels identified by the
+     * payload into existing channels.
+     *
+     * @param channels - XmlChannels to be updated
+     * @param refresh - refresh=true|wait_for|false, if and how to wait for the channels to be searchable
+     * @param response - response=full|summary|none, return the updated channels, their count and failures or nothing
+     * @return the updated channels, a summary or nothing depending on the response mode
+     */
     @PostMapping()
-    public Iterable<Channel> update(@RequestBody Iterable<Channel> channels) {
+    public Object update(@RequestBody Iterable<Channel> channels,
+                         @RequestParam(value = "refresh", required = false) String refresh,
+                         @RequestParam(value = "response", required = false) String response) {
+        WriteOptions options = getWriteOptions(refresh, response);
+        return getWriteResponse(update(channels, options.refresh()), options);
+    }
+
+    private ChannelRepository.WriteResult update(Iterable<Channel> channels, Refresh refresh) {
         // check if authorized role
         if(authorizationService.isAuthorizedRole(SecurityContextHolder.getContext().getAuthentication(), ROLES.CF_CHANNEL)) {
             long start = System.currentTimeMillis();
 
+            Map<String, Channel> existingChannels = new HashMap<>();
             for(Channel channel: channels) {
                 Optional<Channel> existingChannel = channelRepository.findById(channel.getName());
                 boolean present = existingChannel.isPresent();
                 if(present) {
+                    existingChannels.put(channel.getName(), existingChannel.get());
                     checkAndThrow(!authorizationService.isAuthorizedOwner(SecurityContextHolder.getContext().getAuthentication(), existingChannel.get()), TextUtil.USER_NOT_AUTHORIZED_ON_CHANNEL, existingChannel.get(), HttpStatus.UNAUTHORIZED);
                     channel.setOwner(existingChannel.get().getOwner());
                 } else {
@@ -333,9 +444,11 @@ public class ChannelManager {
             channelManagerAudit.log(Level.INFO, () -> MessageFormat.format(TextUtil.PATH_POST_PREPERATION_TIME, servletContext.getContextPath(), time));
 
             // update channels
-            List<Channel> updatedChannels =  FluentIterable.from(channelRepository.saveAll(channels)).toList();
+            ChannelRepository.WriteResult updatedChannels = channelRepository.saveAll(channels, refresh);
             // process the results
-            channelProcessorService.sendToProcessors(updatedChannels);
+            channelProcessorService.sendChangesToProcessors(updatedChannels.channels().stream()
+                    .map(channel -> ChannelChange.of(existingChannels.get(channel.getName()), channel))
+                    .toList());
             // created new channel
             return updatedChannels;
         } else {
@@ -362,6 +475,7 @@ public class ChannelManager {
                 if(authorizationService.isAuthorizedOwner(SecurityContextHolder.getContext().getAuthentication(), existingChannel.get())) {
                     // delete channel
                     channelRepository.deleteById(channelName);
+                    channelProcessorService.sendChangesToProcessors(List.of(ChannelChange.of(existingChannel.get(), null)));
                 } else {
                     String message = MessageFormat.format(TextUtil.USER_NOT_AUTHORIZED_ON_CHANNEL, channelName);
                     logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.UNAUTHORIZED));
@@ -379,6 +493,24 @@ public class ChannelManager {
         }
     }
 
+    private WriteOptions getWriteOptions(String refresh, String response) {
+        try {
+            return WriteOptions.of(refresh, response, esService);
+        } catch (IllegalArgumentException e) {
+            String message = MessageFormat.format(TextUtil.INVALID_WRITE_OPTIONS, refresh, response);
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, message, e);
+        }
+    }
+
+    private static Object getWriteResponse(ChannelRepository.WriteResult result, WriteOptions options) {
+        return switch (options.response()) {
+            case FULL -> result.channels();
+            case SUMMARY -> result.summary();
+            case NONE -> null;
+        };
+    }
+
     /**
      * Checks if
      * 1. the channel name is not null and matches the name in the body
@@ -402,7 +534,7 @@ public class ChannelManager {
         List <String> propertyNames = channel.getProperties().stream().map(Property::getName).toList();
         List <String> propertyValues = channel.getProperties().stream().map(Property::getValue).toList();
         for(String propertyName:propertyNames) {
-            if(!propertyRepository.existsById(propertyName)) {
+            if(!metadataCache.containsProperty(propertyName)) {
                 String message = MessageFormat.format(TextUtil.PROPERTY_NAME_DOES_NOT_EXIST, propertyName);
                 logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.NOT_FOUND));
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, message);
@@ -424,7 +556,7 @@ public class ChannelManager {
     private void checkTags(Channel channel) {
         List <String> tagNames = channel.getTags().stream().map(Tag::getName).toList();
         for(String tagName:tagNames) {
-            if(!tagRepository.existsById(tagName)) {
+            if(!metadataCache.containsTag(tagName)) {
                 String message = MessageFormat.format(TextUtil.TAG_NAME_DOES_NOT_EXIST, tagName);
                 logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.NOT_FOUND));
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, message);
@@ -449,14 +581,6 @@ public class ChannelManager {
      * @param channels list of channels to be validated
      */
     public void validateChannelRequest(Iterable<Channel> channels) {
-        List<String> existingProperties = StreamSupport
-                .stream(propertyRepository.findAll().spliterator(), true)
-                .map(Property::getName)
-                .toList();
-        List<String> existingTags = StreamSupport
-                .stream(tagRepository.findAll().spliterator(), true)
-                .map(Tag::getName)
-                .toList();
         for(Channel channel: channels) {
             // 1
             checkAndThrow(channel.getName() == null || channel.getName().isEmpty(), TextUtil.CHANNEL_NAME_CANNOT_BE_NULL_OR_EMPTY, channel, HttpStatus.BAD_REQUEST);
@@ -465,7 +589,7 @@ public class ChannelManager {
             // 3
             List <String> tagNames = channel.getTags().stream().map(Tag::getName).toList();
             for(String tagName:tagNames) {
-                if(!existingTags.contains(tagName)) {
+                if(!metadataCache.containsTag(tagName)) {
                     String message = MessageFormat.format(TextUtil.TAG_NAME_DOES_NOT_EXIST, tagName);
                     logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.NOT_FOUND));
                     throw new ResponseStatusException(HttpStatus.NOT_FOUND, message);
@@ -475,7 +599,7 @@ public class ChannelManager {
             List <String> propertyNames = channel.getProperties().stream().map(Property::getName).toList();
             List <String> propertyValues = channel.getProperties().stream().map(Property::getValue).toList();
             for(String propertyName:propertyNames) {
-                if(!existingProperties.contains(propertyName)) {
+                if(!metadataCache.containsProperty(propertyName)) {
                     String message = MessageFormat.format(TextUtil.PROPERTY_NAME_DOES_NOT_EXIST, propertyName);
                     logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.NOT_FOUND));
                     throw new ResponseStatusException(HttpStatus.NOT_FOUND, message);
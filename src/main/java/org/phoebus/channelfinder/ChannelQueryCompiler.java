@@ -0,0 +1,254 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.DisMaxQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.NestedQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.WildcardQuery;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compiles the channel search parameters into elastic queries.
+ * <p>
+ * The search parameters are first normalized into an immutable {@link ChannelQuery}, the clauses are
+ * sorted and the patterns trimmed, lower cased and de-duplicated, so equivalent searches share the same
+ * form. The elastic {@link Query} compiled from the clauses is kept in a LRU cache of
+ * elasticsearch.query.cache.size entries, so repeated searches skip rebuilding it.
+ * <p>
+ * All the patterns are matched as case-insensitive wildcards.
+ * Search parameters ~name - The name of the channel ~tag - A list of comma
+ * separated values ${propertyName}:${propertyValue} - ~size - The number of
+ * channels to be returned ~from - The starting index of the channel list
+ * ~search_after - The channel name to start after ~track_total_hits - Count all the matches
+ */
+@Configuration
+public class ChannelQueryCompiler {
+
+    private static final String VALUE_SPLIT_PATTERN = "[|,;]";
+
+    private final ElasticConfig esService;
+
+    private final Map<List<Clause>, Query> queries;
+
+    public ChannelQueryCompiler(ElasticConfig esService) {
+        this.esService = esService;
+        int cacheSize = esService.getES_QUERY_CACHE_SIZE();
+        this.queries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Clause>, Query> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Normalize the search parameters
+     *
+     * @param searchParameters channel search parameters
+     * @return the normalized query
+     */
+    public ChannelQuery parse(MultiValueMap<String, String> searchParameters) {
+        List<Clause> clauses = new ArrayList<>();
+        int size = esService.getES_QUERY_SIZE();
+        int from = 0;
+        boolean trackTotalHits = false;
+        Optional<String> searchAfter = Optional.empty();
+        for (Map.Entry<String, List<String>> parameter : searchParameters.entrySet()) {
+            String key = parameter.getKey().trim();
+            boolean isNot = key.endsWith("!");
+            if (isNot) {
+                key = key.substring(0, key.length() - 1);
+            }
+            switch (key) {
+                case "~name":
+                    for (String value : parameter.getValue()) {
+                        clauses.add(Clause.name(split(value)));
+                    }
+                    break;
+                case "~tag":
+                    for (String value : parameter.getValue()) {
+                        clauses.add(Clause.tag(split(value), isNot));
+                    }
+                    break;
+                case "~size":
+                    Optional<String> maxSize = parameter.getValue().stream().max(Comparator.comparing(Integer::valueOf));
+                    if (maxSize.isPresent()) {
+                        size = Integer.parseInt(maxSize.get());
+                    }
+                    break;
+                case "~from":
+                    Optional<String> maxFrom = parameter.getValue().stream().max(Comparator.comparing(Integer::valueOf));
+                    if (maxFrom.isPresent()) {
+                        from = Integer.parseInt(maxFrom.get());
+                    }
+                    break;
+                case "~search_after":
+                    searchAfter = parameter.getValue().stream().findFirst();
+                    break;
+                case "~track_total_hits":
+                    Optional<String> firstTrackTotalHits = parameter.getValue().stream().findFirst();
+                    if (firstTrackTotalHits.isPresent()) {
+                        trackTotalHits = Boolean.parseBoolean(firstTrackTotalHits.get());
+                    }
+                    break;
+                default:
+                    List<String> patterns = new ArrayList<>();
+                    for (String value : parameter.getValue()) {
+                        patterns.addAll(split(value));
+                    }
+                    clauses.add(Clause.property(key, patterns, isNot));
+                    break;
+            }
+        }
+        clauses.sort(Clause.ORDER);
+        return new ChannelQuery(List.copyOf(clauses), size, from, searchAfter, trackTotalHits);
+    }
+
+    /**
+     * Compile the search parameters into an elastic query
+     *
+     * @param searchParameters channel search parameters
+     * @return the elastic query matching the channels
+     */
+    public Query compile(MultiValueMap<String, String> searchParameters) {
+        return compile(parse(searchParameters));
+    }
+
+    /**
+     * Compile the normalized query into an elastic query
+     *
+     * @param channelQuery normalized channel query
+     * @return the elastic query matching the channels
+     */
+    public Query compile(ChannelQuery channelQuery) {
+        return compile(channelQuery.clauses());
+    }
+
+    /**
+     * Compile the query clauses into an elastic query, reusing the cached query if the same clauses
+     * have been compiled before.
+     *
+     * @param clauses normalized query clauses
+     * @return the elastic query matching the channels
+     */
+    public Query compile(List<Clause> clauses) {
+        return queries.computeIfAbsent(clauses, ChannelQueryCompiler::build);
+    }
+
+    private static Query build(List<Clause> clauses) {
+        BoolQuery.Builder boolQuery = new BoolQuery.Builder();
+        for (Clause clause : clauses) {
+            DisMaxQuery.Builder disMaxQuery = new DisMaxQuery.Builder();
+            for (String pattern : clause.patterns()) {
+                switch (clause.type()) {
+                    case NAME:
+                        disMaxQuery.queries(getSingleValueQuery("name", pattern));
+                        break;
+                    case TAG:
+                        disMaxQuery.queries(NestedQuery.of(n -> n.path("tags").query(
+                                getSingleValueQuery("tags.name", pattern)))._toQuery());
+                        break;
+                    case PROPERTY:
+                        BoolQuery bq;
+                        if (clause.not()) {
+                            bq = BoolQuery.of(p -> p.must(getSingleValueQuery("properties.name", clause.name()))
+                                    .mustNot(getSingleValueQuery("properties.value", pattern)));
+                        } else {
+                            bq = BoolQuery.of(p -> p.must(getSingleValueQuery("properties.name", clause.name()))
+                                    .must(getSingleValueQuery("properties.value", pattern)));
+                        }
+                        disMaxQuery.queries(NestedQuery.of(n -> n.path("properties").query(bq._toQuery()))._toQuery());
+                        break;
+                }
+            }
+            if (clause.type() == ClauseType.TAG && clause.not()) {
+                boolQuery.mustNot(disMaxQuery.build()._toQuery());
+            } else {
+                boolQuery.must(disMaxQuery.build()._toQuery());
+            }
+        }
+        return boolQuery.build()._toQuery();
+    }
+
+    private static Query getSingleValueQuery(String name, String pattern) {
+        return WildcardQuery.of(w -> w.field(name).caseInsensitive(true).value(pattern))._toQuery();
+    }
+
+    /**
+     * Split a search parameter value into the patterns it matches, as the search does
+     *
+     * @param value the value of a search parameter, e.g. a,b
+     * @return the patterns of the value
+     */
+    public static List<String> split(String value) {
+        return Arrays.asList(value.split(VALUE_SPLIT_PATTERN));
+    }
+
+    public enum ClauseType {
+        NAME, TAG, PROPERTY
+    }
+
+    /**
+     * A single clause of a channel query, matching any of its patterns.
+     * <p>
+     * Since all the patterns are matched case-insensitively they are kept lower cased, sorted and
+     * without duplicates so equivalent clauses are equal.
+     *
+     * @param type     what the patterns are matched against
+     * @param name     the property name, null for name and tag clauses
+     * @param patterns the wildcard patterns
+     * @param not      true if the clause is negated
+     */
+    public record Clause(ClauseType type, String name, List<String> patterns, boolean not) {
+
+        static final Comparator<Clause> ORDER = Comparator.comparing(Clause::type)
+                .thenComparing(Clause::name, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Clause::not)
+                .thenComparing(clause -> String.join("|", clause.patterns()));
+
+        public Clause {
+            name = name == null ? null : normalize(name);
+            patterns = patterns.stream().map(Clause::normalize).distinct().sorted().toList();
+        }
+
+        public static Clause name(List<String> patterns) {
+            return new Clause(ClauseType.NAME, null, patterns, false);
+        }
+
+        public static Clause tag(List<String> patterns, boolean not) {
+            return new Clause(ClauseType.TAG, null, patterns, not);
+        }
+
+        public static Clause property(String name, List<String> patterns, boolean not) {
+            return new Clause(ClauseType.PROPERTY, name, patterns, not);
+        }
+
+        private static String normalize(String pattern) {
+            return pattern.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * A normalized channel query
+     *
+     * @param clauses        the sorted query clauses, all of which must match
+     * @param size           the number of channels to be returned
+     * @param from           the starting index of the channel list
+     * @param searchAfter    the channel name to start after
+     * @param trackTotalHits true if all the matches should be counted
+     */
+    public record ChannelQuery(List<Clause> clauses, int size, int from, Optional<String> searchAfter,
+                               boolean trackTotalHits) {
+    }
+}
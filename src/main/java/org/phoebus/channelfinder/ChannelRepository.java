@@ -7,32 +7,31 @@ import co.elastic.clients.elasticsearch._types.FieldValue;
 import co.elastic.clients.elasticsearch._types.Refresh;
 import co.elastic.clients.elasticsearch._types.Result;
 import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.aggregations.FiltersBucket;
 import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
-import co.elastic.clients.elasticsearch._types.query_dsl.DisMaxQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.IdsQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.NestedQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
-import co.elastic.clients.elasticsearch._types.query_dsl.WildcardQuery;
-import co.elastic.clients.elasticsearch.core.BulkRequest;
-import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
 import co.elastic.clients.elasticsearch.core.CountRequest;
 import co.elastic.clients.elasticsearch.core.CountResponse;
-import co.elastic.clients.elasticsearch.core.DeleteResponse;
 import co.elastic.clients.elasticsearch.core.ExistsRequest;
 import co.elastic.clients.elasticsearch.core.GetResponse;
-import co.elastic.clients.elasticsearch.core.IndexRequest;
-import co.elastic.clients.elasticsearch.core.IndexResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
 import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.InnerHitsResult;
 import co.elastic.clients.json.JsonData;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.phoebus.channelfinder.ChannelQueryCompiler.ChannelQuery;
 import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Property;
 import org.phoebus.channelfinder.entity.SearchResult;
 import org.phoebus.channelfinder.entity.Tag;
+import org.phoebus.channelfinder.entity.WriteSummary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
@@ -45,12 +44,21 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -62,12 +70,26 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
 
     private static final Logger logger = Logger.getLogger(ChannelRepository.class.getName());
 
+    private static final String INNER_PROPERTIES = "properties";
+    private static final String COUNT_AGGREGATION = "counts";
+    private static final String COUNT_TAG = "tag";
+    private static final String COUNT_PROPERTY = "property";
+
     @Autowired
     ElasticConfig esService;
 
     @Autowired
     @Qualifier("indexClient")
     ElasticsearchClient client;
+
+    @Autowired
+    ChannelQueryCompiler queryCompiler;
+
+    @Autowired
+    ChannelWriteCoalescer writeCoalescer;
+
+    @Autowired
+    BulkIngester bulkIngester;
     
     final ObjectMapper objectMapper = new ObjectMapper()
             .addMixIn(Tag.class, Tag.OnlyTag.class)
@@ -82,15 +104,15 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
     @SuppressWarnings("unchecked")
     public Channel index(Channel channel) {
         try {
-            IndexRequest request = IndexRequest.of(i -> i.index(esService.getES_CHANNEL_INDEX())
+            BulkResponseItem response = writeCoalescer.write(BulkOperation.of(op -> op.index(i -> i
+                    .index(esService.getES_CHANNEL_INDEX())
                     .id(channel.getName())
-                    .document(JsonData.of(channel, new JacksonJsonpMapper(objectMapper)))
-                    .refresh(Refresh.True));
-            IndexResponse response = client.index(request);
+                    .document(JsonData.of(channel, new JacksonJsonpMapper(objectMapper))))));
+            checkItem(response);
             // verify the creation of the tag
-            if (response.result().equals(Result.Created) || response.result().equals(Result.Updated)) {
+            if (isCreatedOrUpdated(response)) {
                 logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.CREATE_CHANNEL, channel.toLog()));
-                return findById(channel.getName()).get();
+                return channel;
             }
         } catch (Exception e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_CHANNEL, channel.toLog());
@@ -107,40 +129,63 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
      * @return the created channels
      */
     public List<Channel> indexAll(List<Channel> channels) {
-        BulkRequest.Builder br = new BulkRequest.Builder();
+        WriteResult result = indexAll(channels, esService.getES_WRITE_REFRESH());
+        return result.failures().isEmpty() ? result.channels() : Collections.emptyList();
+    }
 
-        for (Channel channel : channels) {
-            br.operations(op -> op
-                    .index(idx -> idx
-                            .index(esService.getES_CHANNEL_INDEX())
-                            .id(channel.getName())
-                            .document(JsonData.of(channel, new JacksonJsonpMapper(objectMapper)))
-                    )
-            ).refresh(Refresh.True);
+    /**
+     * create new channels using the given XmlChannels
+     *
+     * @param channels - channels to be created
+     * @param refresh - the refresh policy of the write
+     * @return the created channels and the channels which failed
+     */
+    public WriteResult indexAll(List<Channel> channels, Refresh refresh) {
+        if (channels.isEmpty()) {
+            return new WriteResult(Collections.emptyList(), Collections.emptyMap());
         }
-
-        BulkResponse result = null;
         try {
-            result = client.bulk(br.build());
-            // Log errors, if any
-            if (result.errors()) {
-                logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                for (BulkResponseItem item : result.items()) {
-                    if (item.error() != null) {
-                        logger.log(Level.SEVERE, () -> item.error().reason());
-                    }
-                }
-                // TODO cleanup? or throw exception?
-            } else {
-                return channels;
+            List<BulkIngester.Operation> operations = new ArrayList<>();
+            for (Channel channel : channels) {
+                operations.add(BulkIngester.Operation.index(esService.getES_CHANNEL_INDEX(), channel.getName(), channel, objectMapper));
             }
+            return getWriteResult(channels, bulkIngester.write(operations, refresh));
         } catch (IOException e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_CHANNELS, channels);
             logger.log(Level.SEVERE, message, e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+        }
+    }
 
+    /**
+     * The channels written by a bulk request, and the reason each of the channels which could not be written failed
+     *
+     * @param channels the written channels
+     * @param failures failure reasons by channel name
+     */
+    public record WriteResult(List<Channel> channels, Map<String, String> failures) {
+
+        /**
+         * @return the number of channels written and the failures
+         */
+        public WriteSummary summary() {
+            return new WriteSummary(channels.size(), failures);
         }
-        return Collections.emptyList();
+    }
+
+    private static WriteResult getWriteResult(List<Channel> channels, BulkIngester.BulkResult result) {
+        if (!result.hasFailures()) {
+            return new WriteResult(channels, Collections.emptyMap());
+        }
+        List<Channel> written = new ArrayList<>();
+        for (int i = 0; i < channels.size(); i++) {
+            if (!result.failed(i)) {
+                written.add(channels.get(i));
+            }
+        }
+        Map<String, String> failures = result.failuresById();
+        failures.forEach((name, reason) -> logger.log(Level.SEVERE, () -> MessageFormat.format(TextUtil.BULK_OPERATION_FAILED, name, reason)));
+        return new WriteResult(written, failures);
     }
 
     /**
@@ -152,14 +197,15 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
      */
     public Channel save(String channelName, Channel channel) {
         try {
-            IndexResponse response = client.index(i -> i.index(esService.getES_CHANNEL_INDEX())
+            BulkResponseItem response = writeCoalescer.write(BulkOperation.of(op -> op.index(i -> i
+                    .index(esService.getES_CHANNEL_INDEX())
                     .id(channel.getName())
-                    .document(JsonData.of(channel, new JacksonJsonpMapper(objectMapper)))
-                    .refresh(Refresh.True));
+                    .document(JsonData.of(channel, new JacksonJsonpMapper(objectMapper))))));
+            checkItem(response);
             // verify the creation of the channel
-            if (response.result().equals(Result.Created) || response.result().equals(Result.Updated)) {
+            if (isCreatedOrUpdated(response)) {
                 logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.CREATE_CHANNEL, channel.toLog()));
-                return findById(channel.getName()).get();
+                return channel;
             }
         } catch (Exception e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_CHANNEL, channel.toLog());
@@ -187,15 +233,37 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
     @SuppressWarnings("unchecked")
     @Override
     public <S extends Channel> Iterable<S> saveAll(Iterable<S> channels) {
+        WriteResult result = saveAll(channels, esService.getES_WRITE_REFRESH());
+        return result.failures().isEmpty() ? (Iterable<S>) result.channels() : null;
+    }
+
+    /**
+     * update/save channels using the given XmlChannels, merging them into the existing channels
+     *
+     * @param channels - channels to be saved
+     * @param refresh - the refresh policy of the write
+     * @return the updated/saved channels and the channels which failed
+     */
+    public WriteResult saveAll(Iterable<? extends Channel> channels, Refresh refresh) {
         // Create a list of all channel names
         List<String> ids = StreamSupport.stream(channels.spliterator(), false).map(Channel::getName).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return new WriteResult(Collections.emptyList(), Collections.emptyMap());
+        }
 
         try {
-            Map<String, Channel> existingChannels = findAllById(ids).stream().collect(Collectors.toMap(Channel::getName, c -> c));
+            // a realtime get, so the channels written without a refresh are merged too
+            Map<String, Channel> existingChannels = client.mget(m -> m.index(esService.getES_CHANNEL_INDEX()).ids(ids), Channel.class)
+                    .docs().stream()
+                    .filter(doc -> doc.isResult() && doc.result().found())
+                    .map(doc -> doc.result().source())
+                    .collect(Collectors.toMap(Channel::getName, c -> c, (c1, c2) -> c1));
 
-            BulkRequest.Builder br = new BulkRequest.Builder();
+            List<BulkIngester.Operation> operations = new ArrayList<>();
+            List<Channel> savedChannels = new ArrayList<>();
 
             for (Channel channel : channels) {
+                Channel savedChannel = channel;
                 if (existingChannels.containsKey(channel.getName())) {
                     // merge with existing channel
                     Channel updatedChannel = existingChannels.get(channel.getName());
@@ -203,37 +271,28 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
                         updatedChannel.setOwner(channel.getOwner());
                     updatedChannel.addProperties(channel.getProperties());
                     updatedChannel.addTags(channel.getTags());
-                    br.operations(op -> op.index(i -> i.index(esService.getES_CHANNEL_INDEX())
-                            .id(updatedChannel.getName())
-                            .document(JsonData.of(updatedChannel, new JacksonJsonpMapper(objectMapper)))));
-                } else {
-                    br.operations(op -> op.index(i -> i.index(esService.getES_CHANNEL_INDEX())
-                            .id(channel.getName())
-                            .document(JsonData.of(channel, new JacksonJsonpMapper(objectMapper)))));
+                    savedChannel = updatedChannel;
                 }
-
-            }
-            BulkResponse result = null;
-            result = client.bulk(br.refresh(Refresh.True).build());
-            // Log errors, if any
-            if (result.errors()) {
-                logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                for (BulkResponseItem item : result.items()) {
-                    if (item.error() != null) {
-                        logger.log(Level.SEVERE, () -> item.error().reason());
-                    }
-                }
-                // TODO cleanup? or throw exception?
-            } else {
-                return (Iterable<S>) findAllById(ids);
+                operations.add(BulkIngester.Operation.index(esService.getES_CHANNEL_INDEX(), savedChannel.getName(), savedChannel, objectMapper));
+                savedChannels.add(savedChannel);
             }
+            return getWriteResult(savedChannels, bulkIngester.write(operations, refresh));
         } catch (IOException e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_CHANNELS, channels);
             logger.log(Level.SEVERE, message, e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
 
         }
-        return null;
+    }
+
+    private static void checkItem(BulkResponseItem item) throws IOException {
+        if (item.error() != null) {
+            throw new IOException(item.error().reason());
+        }
+    }
+
+    private static boolean isCreatedOrUpdated(BulkResponseItem item) {
+        return Result.Created.jsonValue().equals(item.result()) || Result.Updated.jsonValue().equals(item.result());
     }
 
     /**
@@ -352,10 +411,12 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
     @Override
     public void deleteById(String channelName) {
         try {
-            DeleteResponse response = client
-                    .delete(i -> i.index(esService.getES_CHANNEL_INDEX()).id(channelName).refresh(Refresh.True));
+            BulkResponseItem response = writeCoalescer.write(BulkOperation.of(op -> op.delete(d -> d
+                    .index(esService.getES_CHANNEL_INDEX())
+                    .id(channelName))));
+            checkItem(response);
             // verify the deletion of the channel
-            if (response.result().equals(Result.Deleted)) {
+            if (Result.Deleted.jsonValue().equals(response.result())) {
                 logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.DELETE_CHANNEL, channelName));
             }
         } catch (ElasticsearchException | IOException e) {
@@ -377,17 +438,23 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
 
     @Override
     public void deleteAll(Iterable<? extends Channel> channels) {
+        deleteAll(channels, esService.getES_WRITE_REFRESH());
+    }
 
-        BulkRequest.Builder br = new BulkRequest.Builder();
+    /**
+     * delete the given channels
+     *
+     * @param channels - channels to be deleted
+     * @param refresh - the refresh policy of the write
+     */
+    public void deleteAll(Iterable<? extends Channel> channels, Refresh refresh) {
+        List<BulkIngester.Operation> operations = new ArrayList<>();
         for (Channel channel : channels) {
-            br.operations(op -> op
-                    . delete(idx -> idx
-                            .index(esService.getES_CHANNEL_INDEX())
-                            .id(channel.getName()))
-                    ).refresh(Refresh.True);
+            operations.add(BulkIngester.Operation.delete(esService.getES_CHANNEL_INDEX(), channel.getName()));
         }
         try {
-            BulkResponse result = client.bulk(br.build());
+            BulkIngester.BulkResult result = bulkIngester.write(operations, refresh);
+            result.failuresById().forEach((name, reason) -> logger.log(Level.WARNING, () -> MessageFormat.format(TextUtil.BULK_OPERATION_FAILED, name, reason)));
         } catch (IOException e) {
             logger.log(Level.WARNING, e.getMessage(), e);
         }
@@ -411,11 +478,11 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
      * @return matching channels
      */
     public SearchResult search(MultiValueMap<String, String> searchParameters) {
-        BuiltQuery builtQuery = getBuiltQuery(searchParameters);
-        Integer finalSize = builtQuery.size;
-        Integer finalFrom = builtQuery.from;
+        ChannelQuery channelQuery = queryCompiler.parse(searchParameters);
+        Integer finalSize = channelQuery.size();
+        Integer finalFrom = channelQuery.from();
 
-        if(builtQuery.size + builtQuery.from > esService.getES_MAX_RESULT_WINDOW_SIZE()) {
+        if(channelQuery.size() + channelQuery.from() > esService.getES_MAX_RESULT_WINDOW_SIZE()) {
             String message = MessageFormat.format(TextUtil.SEARCH_FAILED_CAUSE,
                     searchParameters,
                     "Max search window exceeded, use the " + CFResourceDescriptors.SCROLL_RESOURCE_URI + " api.");
@@ -425,12 +492,12 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
         try {
             SearchRequest.Builder searchBuilder = new SearchRequest.Builder();
             searchBuilder.index(esService.getES_CHANNEL_INDEX())
-                            .query(builtQuery.boolQuery.build()._toQuery())
+                            .query(queryCompiler.compile(channelQuery))
                             .from(finalFrom)
                             .size(finalSize)
-                            .trackTotalHits(builder -> builder.enabled(builtQuery.trackTotalHits))
+                            .trackTotalHits(builder -> builder.enabled(channelQuery.trackTotalHits()))
                             .sort(SortOptions.of(o -> o.field(FieldSort.of(f -> f.field("name")))));
-            builtQuery.searchAfter.ifPresent(s -> searchBuilder.searchAfter(FieldValue.of(s)));
+            channelQuery.searchAfter().ifPresent(s -> searchBuilder.searchAfter(FieldValue.of(s)));
 
             SearchResponse<Channel> response = client.search(searchBuilder.build(),
                                                                 Channel.class
@@ -438,7 +505,7 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
 
             List<Hit<Channel>> hits = response.hits().hits();
             long count = hits.size();
-            if (builtQuery.trackTotalHits) {
+            if (channelQuery.trackTotalHits()) {
                 assert response.hits().total() != null;
                 count = response.hits().total().value();
             }
@@ -450,109 +517,226 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
         }
     }
 
-    private BuiltQuery getBuiltQuery(MultiValueMap<String, String> searchParameters) {
-        BoolQuery.Builder boolQuery = new BoolQuery.Builder();
-        int size = esService.getES_QUERY_SIZE();
-        int from = 0;
-        boolean trackTotalHits = false;
-        Optional<String> searchAfter = Optional.empty();
-        String valueSplitPattern = "[|,;]";
-        for (Map.Entry<String, List<String>> parameter : searchParameters.entrySet()) {
-            String key = parameter.getKey().trim();
-            boolean isNot = key.endsWith("!");
-                if (isNot) {
-                    key = key.substring(0, key.length() - 1);
+    /**
+     * Stream all the channels matching the search parameters to the given consumer, one page at a time.
+     * Unlike {@link #search(MultiValueMap)} the result is not bounded by the max result window, the pages
+     * are fetched in name order using search_after so only a single page is held in memory at any time.
+     * <p>
+     * If ~size is specified it limits the total number of channels streamed, ~from is not supported.
+     *
+     * @param searchParameters channel search parameters
+     * @param consumer consumer called with each page of matching channels
+     * @return the number of channels streamed
+     */
+    public long searchAll(MultiValueMap<String, String> searchParameters, ChannelPageConsumer consumer) {
+        return searchAll(searchParameters, null, consumer);
+    }
+
+    /**
+     * Stream all the channels matching the search parameters as {@link #searchAll(MultiValueMap, ChannelPageConsumer)},
+     * reading only the given fields of the channels
+     *
+     * @param searchParameters channel search parameters
+     * @param fields the fields of the channels to read, e.g. name, null to read the whole channels
+     * @param consumer consumer called with each page of matching channels
+     * @return the number of channels streamed
+     */
+    public long searchAll(MultiValueMap<String, String> searchParameters, List<String> fields,
+                          ChannelPageConsumer consumer) {
+        ChannelQuery channelQuery = queryCompiler.parse(searchParameters);
+        Query query = queryCompiler.compile(channelQuery);
+        long limit = searchParameters.containsKey("~size") ? channelQuery.size() : Long.MAX_VALUE;
+        int pageSize = esService.getES_EXPORT_PAGE_SIZE();
+
+        long count = 0;
+        Optional<String> searchAfter = channelQuery.searchAfter();
+        try {
+            while (count < limit) {
+                int size = (int) Math.min(pageSize, limit - count);
+                SearchRequest.Builder searchBuilder = new SearchRequest.Builder();
+                searchBuilder.index(esService.getES_CHANNEL_INDEX())
+                        .query(query)
+                        .size(size)
+                        .trackTotalHits(builder -> builder.enabled(false))
+                        .sort(SortOptions.of(o -> o.field(FieldSort.of(f -> f.field("name")))));
+                searchAfter.ifPresent(s -> searchBuilder.searchAfter(FieldValue.of(s)));
+                if (fields != null) {
+                    searchBuilder.source(s -> s.filter(f -> f.includes(fields)));
                 }
-            switch (key) {
-                case "~name":
-                    for (String value : parameter.getValue()) {
-                        DisMaxQuery.Builder nameQuery = new DisMaxQuery.Builder();
-                        for (String pattern : value.split(valueSplitPattern)) {
-                            nameQuery.queries(getSingleValueQuery("name", pattern.trim()));
-                        }
-                        boolQuery.must(nameQuery.build()._toQuery());
-                    }
-                    break;
-                case "~tag":
-                    for (String value : parameter.getValue()) {
-                        DisMaxQuery.Builder tagQuery = new DisMaxQuery.Builder();
-                        for (String pattern : value.split(valueSplitPattern)) {
-                            tagQuery.queries(
-                                    NestedQuery.of(n -> n.path("tags").query(
-                                            getSingleValueQuery("tags.name", pattern.trim())))._toQuery());
-                        }
-                        if (isNot) {
-                            boolQuery.mustNot(tagQuery.build()._toQuery());
-                        } else {
-                            boolQuery.must(tagQuery.build()._toQuery());
-                        }
 
-                    }
-                    break;
-                case "~size":
-                    Optional<String> maxSize = parameter.getValue().stream().max(Comparator.comparing(Integer::valueOf));
-                    if (maxSize.isPresent()) {
-                        size = Integer.parseInt(maxSize.get());
-                    }
+                SearchResponse<Channel> response = client.search(searchBuilder.build(), Channel.class);
+                List<Channel> page = response.hits().hits().stream().map(Hit::source).collect(Collectors.toList());
+                if (page.isEmpty()) {
                     break;
-                case "~from":
-                    Optional<String> maxFrom = parameter.getValue().stream().max(Comparator.comparing(Integer::valueOf));
-                    if (maxFrom.isPresent()) {
-                        from = Integer.parseInt(maxFrom.get());
-                    }
-                    break;
-                case "~search_after":
-                    searchAfter = parameter.getValue().stream().findFirst();
+                }
+                consumer.accept(page);
+                count += page.size();
+                if (page.size() < size) {
                     break;
+                }
+                searchAfter = Optional.of(page.get(page.size() - 1).getName());
+            }
+            return count;
+        } catch (ElasticsearchException | IOException e) {
+            String message = MessageFormat.format(TextUtil.SEARCH_FAILED_CAUSE, searchParameters, e.getMessage());
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, e);
+        }
+    }
 
-                case "~track_total_hits":
-                    Optional<String> firstTrackTotalHits = parameter.getValue().stream().findFirst();
-                    if (firstTrackTotalHits.isPresent()) {
-                        trackTotalHits = Boolean.parseBoolean(firstTrackTotalHits.get());
-                    }
-                    break;
-                default:
-                    DisMaxQuery.Builder propertyQuery = new DisMaxQuery.Builder();
-                    for (String value : parameter.getValue()) {
-                        for (String pattern : value.split(valueSplitPattern)) {
-                            String finalKey = key;
-                            BoolQuery bq;
-                            if (isNot) {
-                                bq = BoolQuery.of(p -> p.must(getSingleValueQuery("properties.name", finalKey))
-                                        .mustNot(getSingleValueQuery("properties.value", pattern.trim())));
-                            } else {
-                                bq = BoolQuery.of(p -> p.must(getSingleValueQuery("properties.name", finalKey))
-                                        .must(getSingleValueQuery("properties.value", pattern.trim())));
-                            }
-                            propertyQuery.queries(
-                                    NestedQuery.of(n -> n.path("properties").query(bq._toQuery()))._toQuery()
-                            );
-                        }
+    /**
+     * Callback receiving the pages of channels streamed by {@link #searchAll(MultiValueMap, ChannelPageConsumer)}
+     * and {@link #scanAll(MultiValueMap, Collection, int, int, BooleanSupplier, ChannelPageConsumer)}
+     */
+    @FunctionalInterface
+    public interface ChannelPageConsumer {
+        void accept(List<Channel> channels) throws IOException;
+    }
+
+    /**
+     * Stream all the channels matching the search parameters to the given consumer, one page at a time, reading
+     * a point in time of the channel index split into slices scanned in parallel. The pages are not in name order
+     * and the consumer is called concurrently from the slice threads, so at most one page per slice is held in
+     * memory at any time.
+     * <p>
+     * When properties is not null only the name, the owner and the given properties of the channels are fetched,
+     * the tags and the other properties are left out of the streamed channels.
+     *
+     * @param searchParameters channel search parameters, ~size and ~from are ignored
+     * @param properties names of the properties to fetch, compared ignoring case, null to fetch the whole channels
+     * @param slices number of slices scanned in parallel
+     * @param pageSize number of channels in each page
+     * @param cancelled checked before fetching each page, the scan stops once it returns true
+     * @param consumer consumer called with each page of matching channels
+     * @return the number of channels streamed
+     */
+    public long scanAll(MultiValueMap<String, String> searchParameters, Collection<String> properties,
+                        int slices, int pageSize, BooleanSupplier cancelled, ChannelPageConsumer consumer) {
+        Query query = queryCompiler.compile(queryCompiler.parse(searchParameters));
+        Query scanQuery = properties == null || properties.isEmpty() ? query : withInnerProperties(query, properties);
+        AtomicBoolean failed = new AtomicBoolean();
+        BooleanSupplier stop = () -> failed.get() || cancelled.getAsBoolean();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(slices, runnable -> {
+            Thread thread = new Thread(runnable, "channel-scan-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        String pitId = null;
+        try {
+            pitId = openPointInTime();
+            String scanPitId = pitId;
+            List<Future<Long>> scans = new ArrayList<>();
+            for (int slice = 0; slice < slices; slice++) {
+                int sliceId = slice;
+                scans.add(executor.submit(() -> {
+                    try {
+                        return scanSlice(scanPitId, scanQuery, properties, sliceId, slices, pageSize, stop, consumer);
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
                     }
-                    boolQuery.must(propertyQuery.build()._toQuery());
-                    break;
+                }));
+            }
+            long count = 0;
+            for (Future<Long> scan : scans) {
+                count += scan.get();
+            }
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+            String message = MessageFormat.format(TextUtil.SEARCH_FAILED_CAUSE, searchParameters, e.getMessage());
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, e);
+        } catch (ExecutionException | ElasticsearchException | IOException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            String message = MessageFormat.format(TextUtil.SEARCH_FAILED_CAUSE, searchParameters, cause.getMessage());
+            logger.log(Level.SEVERE, message, cause);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, cause);
+        } finally {
+            executor.shutdownNow();
+            closePointInTime(pitId);
+        }
+    }
+
+    private long scanSlice(String pitId, Query query, Collection<String> properties, int slice, int slices,
+                           int pageSize, BooleanSupplier stop, ChannelPageConsumer consumer) throws IOException {
+        long count = 0;
+        List<FieldValue> searchAfter = null;
+        while (!stop.getAsBoolean()) {
+            SearchRequest.Builder searchBuilder = new SearchRequest.Builder();
+            searchBuilder.query(query)
+                    .size(pageSize)
+                    .trackTotalHits(builder -> builder.enabled(false))
+                    .pit(p -> p.id(pitId).keepAlive(k -> k.time(esService.getES_SCROLL_KEEP_ALIVE())))
+                    .sort(SortOptions.of(o -> o.field(FieldSort.of(f -> f.field("_shard_doc")))));
+            if (slices > 1) {
+                searchBuilder.slice(s -> s.id(String.valueOf(slice)).max(slices));
+            }
+            if (properties != null) {
+                searchBuilder.source(s -> s.filter(f -> f.includes("name", "owner")));
+            }
+            if (searchAfter != null) {
+                searchBuilder.searchAfter(searchAfter);
+            }
+
+            SearchResponse<Channel> response = client.search(searchBuilder.build(), Channel.class);
+            List<Hit<Channel>> hits = response.hits().hits();
+            if (hits.isEmpty()) {
+                break;
             }
+            consumer.accept(hits.stream()
+                    .map(hit -> properties == null ? hit.source() : withInnerProperties(hit))
+                    .collect(Collectors.toList()));
+            count += hits.size();
+            if (hits.size() < pageSize) {
+                break;
+            }
+            searchAfter = hits.get(hits.size() - 1).sort();
         }
-        return new BuiltQuery(boolQuery, size, from, searchAfter, trackTotalHits);
+        return count;
     }
 
-    private static Query getSingleValueQuery(String name, String pattern) {
-        return WildcardQuery.of(w -> w.field(name).caseInsensitive(true).value(pattern))._toQuery();
+    /**
+     * Match the channels of the query and return their given properties as inner hits, the nested query only
+     * selects the properties and does not filter the channels
+     */
+    private static Query withInnerProperties(Query query, Collection<String> properties) {
+        BoolQuery.Builder names = new BoolQuery.Builder();
+        properties.forEach(property -> names.should(TermQuery.of(t -> t.field("properties.name")
+                .value(property)
+                .caseInsensitive(true))._toQuery()));
+        Query nested = NestedQuery.of(n -> n.path("properties")
+                .query(names.build()._toQuery())
+                .innerHits(i -> i.name(INNER_PROPERTIES).size(properties.size())))._toQuery();
+        return BoolQuery.of(b -> b.must(query).should(nested))._toQuery();
     }
 
-    private static class BuiltQuery {
-        public final BoolQuery.Builder boolQuery;
-        public final Integer size;
-        public final Integer from;
-        public final Optional<String> searchAfter;
-        public final boolean trackTotalHits;
+    private static Channel withInnerProperties(Hit<Channel> hit) {
+        Channel channel = hit.source();
+        InnerHitsResult innerHits = hit.innerHits().get(INNER_PROPERTIES);
+        if (innerHits != null) {
+            channel.setProperties(innerHits.hits().hits().stream()
+                    .map(innerHit -> innerHit.source().to(Property.class))
+                    .collect(Collectors.toList()));
+        }
+        return channel;
+    }
 
-        public BuiltQuery(BoolQuery.Builder boolQuery, Integer size, Integer from, Optional<String> searchAfter, boolean trackTotalHits) {
-            this.boolQuery = boolQuery;
-            this.size = size;
-            this.from = from;
-            this.searchAfter = searchAfter;
-            this.trackTotalHits = trackTotalHits;
+    private String openPointInTime() throws IOException {
+        return client.openPointInTime(o -> o.index(esService.getES_CHANNEL_INDEX())
+                .keepAlive(k -> k.time(esService.getES_SCROLL_KEEP_ALIVE()))).id();
+    }
+
+    private void closePointInTime(String pitId) {
+        if (pitId == null) {
+            return;
+        }
+        try {
+            client.closePointInTime(c -> c.id(pitId));
+        } catch (ElasticsearchException | IOException e) {
+            logger.log(Level.WARNING, MessageFormat.format(TextUtil.FAILED_TO_CLOSE_SCROLL, pitId), e);
         }
     }
 
@@ -562,23 +746,9 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
      * @return count of the number of matches to the provided query
      */
     public long count(MultiValueMap<String, String> searchParameters) {
-        BuiltQuery builtQuery = getBuiltQuery(searchParameters);
-
-        try {
-
-            CountRequest.Builder countBuilder = new CountRequest.Builder();
-            countBuilder.index(esService.getES_CHANNEL_INDEX()).query(builtQuery.boolQuery.build()._toQuery());
-            CountResponse response = client.count(countBuilder.build());
-
-            return response.count();
-        } catch (Exception e) {
-            String message = MessageFormat.format(TextUtil.COUNT_FAILED_CAUSE, searchParameters, e.getMessage());
-            logger.log(Level.SEVERE, message, e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, e);
-        }
+        return count(queryCompiler.compile(searchParameters), searchParameters);
     }
 
-
     /**
      * Match count
      * @param propertyName channel search property name
@@ -586,9 +756,8 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
      * @return count of the number of matches to the provided query
      */
     public long countByProperty(String propertyName, String propertyValue) {
-        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
-        params.add(propertyName, propertyValue == null? "*" : propertyValue);
-        return this.count(params);
+        return count(queryCompiler.compile(List.of(propertyClause(propertyName, propertyValue))),
+                propertyName + "=" + propertyValue);
     }
 
     /**
@@ -597,12 +766,96 @@ public class ChannelRepository implements CrudRepository<Channel, String> {
      * @return count of the number of matches to the provided query
      */
     public long countByTag(String tagName) {
-        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
-        params.add("~tag", tagName);
-        return this.count(params);
+        return count(queryCompiler.compile(List.of(tagClause(tagName))), "~tag=" + tagName);
+    }
+
+    /**
+     * The clause of a ~tag search parameter, a value such as a,b matches any of the tags as in a search
+     */
+    private static ChannelQueryCompiler.Clause tagClause(String tagName) {
+        return ChannelQueryCompiler.Clause.tag(ChannelQueryCompiler.split(tagName), false);
     }
 
+    /**
+     * The clause of a property search parameter, a null value matches any value
+     */
+    private static ChannelQueryCompiler.Clause propertyClause(String propertyName, String propertyValue) {
+        return ChannelQueryCompiler.Clause.property(propertyName,
+                propertyValue == null ? List.of("*") : ChannelQueryCompiler.split(propertyValue), false);
+    }
+
+    /**
+     * The number of channels, and of the channels with each of a list of tags and property values
+     *
+     * @param total      the number of channels
+     * @param tags       the number of channels with each tag
+     * @param properties the number of channels with each property value
+     */
+    public record ChannelCounts(long total, List<Long> tags, List<Long> properties) {
+    }
 
+    /**
+     * Count all the channels and the channels matching each tag and property value with a single filters
+     * aggregation instead of a count request each
+     *
+     * @param tagNames       channel search tags
+     * @param propertyValues channel search property names and values, a null value matches any value
+     * @return the number of channels and the counts in the order of the tags and property values
+     */
+    public ChannelCounts countAll(List<String> tagNames, List<String[]> propertyValues) {
+        Map<String, Query> filters = new LinkedHashMap<>();
+        for (int i = 0; i < tagNames.size(); i++) {
+            filters.put(COUNT_TAG + i, queryCompiler.compile(List.of(tagClause(tagNames.get(i)))));
+        }
+        for (int i = 0; i < propertyValues.size(); i++) {
+            String[] propertyValue = propertyValues.get(i);
+            filters.put(COUNT_PROPERTY + i, queryCompiler.compile(
+                    List.of(propertyClause(propertyValue[0], propertyValue[1]))));
+        }
+        try {
+            SearchRequest.Builder searchBuilder = new SearchRequest.Builder()
+                    .index(esService.getES_CHANNEL_INDEX())
+                    .size(0)
+                    .trackTotalHits(builder -> builder.enabled(true));
+            if (!filters.isEmpty()) {
+                searchBuilder.aggregations(COUNT_AGGREGATION,
+                        a -> a.filters(f -> f.filters(b -> b.keyed(filters))));
+            }
+            SearchResponse<Channel> response = client.search(searchBuilder.build(), Channel.class);
+
+            Map<String, FiltersBucket> buckets = filters.isEmpty()
+                    ? Collections.emptyMap()
+                    : response.aggregations().get(COUNT_AGGREGATION).filters().buckets().keyed();
+            List<Long> tagCounts = new ArrayList<>(tagNames.size());
+            for (int i = 0; i < tagNames.size(); i++) {
+                tagCounts.add(buckets.get(COUNT_TAG + i).docCount());
+            }
+            List<Long> propertyCounts = new ArrayList<>(propertyValues.size());
+            for (int i = 0; i < propertyValues.size(); i++) {
+                propertyCounts.add(buckets.get(COUNT_PROPERTY + i).docCount());
+            }
+            long total = response.hits().total() == null ? 0 : response.hits().total().value();
+            return new ChannelCounts(total, tagCounts, propertyCounts);
+        } catch (Exception e) {
+            String message = MessageFormat.format(TextUtil.COUNT_FAILED_CAUSE, filters.keySet(), e.getMessage());
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, e);
+        }
+    }
+
+    private long count(Query query, Object searchParameters) {
+        try {
+            CountRequest.Builder countBuilder = new CountRequest.Builder();
+            countBuilder.index(esService.getES_CHANNEL_INDEX()).query(query);
+            CountResponse response = client.count(countBuilder.build());
+
+            return response.count();
+        } catch (Exception e) {
+            String message = MessageFormat.format(TextUtil.COUNT_FAILED_CAUSE, searchParameters, e.getMessage());
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, e);
+        }
+    }
 
     @Override
     public void deleteAllById(Iterable<? extends String> ids) {
@@ -2,22 +2,25 @@ package org.phoebus.channelfinder;
 
 import static org.phoebus.channelfinder.CFResourceDescriptors.SCROLL_RESOURCE_URI;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
-import java.util.Comparator;
+import java.util.Base64;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch._types.FieldSort;
 import co.elastic.clients.elasticsearch._types.FieldValue;
 import co.elastic.clients.elasticsearch._types.SortOptions;
-import co.elastic.clients.elasticsearch._types.query_dsl.*;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import org.phoebus.channelfinder.ChannelQueryCompiler.ChannelQuery;
 import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Scroll;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +29,7 @@ import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.http.HttpStatus;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -50,6 +54,9 @@ public class ChannelScroll {
     @Qualifier("indexClient")
     ElasticsearchClient client;
 
+    @Autowired
+    ChannelQueryCompiler queryCompiler;
+
     /**
      * GET method for retrieving a collection of Channel instances, based on a
      * multi-parameter query specifying patterns for tags, property values, and
@@ -76,6 +83,16 @@ public class ChannelScroll {
         return search(scrollId, searchParameters);
     }
 
+    /**
+     * DELETE method for releasing the resources held by a scroll which is not read to the end.
+     *
+     * @param scrollId scroll Id
+     */
+    @DeleteMapping("/{scrollId}")
+    public void remove(@PathVariable("scrollId") String scrollId) {
+        close(scrollId);
+    }
+
     /**
      * Search for a list of channels based on their name, tags, and/or properties.
      * Search parameters ~name - The name of the channel ~tags - A list of comma
@@ -83,105 +100,149 @@ public class ChannelScroll {
      * <p>
      * The query result is sorted based on the channel name ~size - The number of
      * channels to be returned ~from - The starting index of the channel list
+     * <p>
+     * A new scroll opens an elastic point in time, so all the following pages are read from the same
+     * snapshot of the index, paging with search_after on the channel name and the _shard_doc tiebreaker.
      *
-     * TODO combine with ChannelRepository code.
      * @param scrollId         scroll ID
      * @param searchParameters - search parameters for scrolling searches
      * @return search scroll
      */
     public Scroll search(String scrollId, MultiValueMap<String, String> searchParameters) {
-        BoolQuery.Builder boolQuery = new BoolQuery.Builder();
-        int size = esService.getES_QUERY_SIZE();
-        int from = 0;
-
-        for (Map.Entry<String, List<String>> parameter : searchParameters.entrySet()) {
-            String key = parameter.getKey().trim();
-            boolean isNot = key.endsWith("!");
-            if (isNot) {
-                key = key.substring(0, key.length() - 1);
-            }
-            switch (key) {
-                case "~name":
-                    for (String value : parameter.getValue()) {
-                        DisMaxQuery.Builder nameQuery = new DisMaxQuery.Builder();
-                        for (String pattern : value.split("[\\|,;]")) {
-                            nameQuery.queries(WildcardQuery.of(w -> w.field("name").value(pattern.trim()))._toQuery());
-                        }
-                        boolQuery.must(nameQuery.build()._toQuery());
-                    }
-                    break;
-                case "~tag":
-                    for (String value : parameter.getValue()) {
-                        DisMaxQuery.Builder tagQuery = new DisMaxQuery.Builder();
-                        for (String pattern : value.split("[\\|,;]")) {
-                            tagQuery.queries(
-                                    NestedQuery.of(n -> n.path("tags").query(
-                                            WildcardQuery.of(w -> w.field("tags.name").value(pattern.trim()))._toQuery()))._toQuery());
-                        }
-                        if (isNot) {
-                            boolQuery.mustNot(tagQuery.build()._toQuery());
-                        } else {
-                            boolQuery.must(tagQuery.build()._toQuery());
-                        }
-
-                    }
-                    break;
-                case "~size":
-                    Optional<String> maxSize = parameter.getValue().stream().max(Comparator.comparing(Integer::valueOf));
-                    if (maxSize.isPresent()) {
-                        size = Integer.parseInt(maxSize.get());
-                    }
-                    break;
-                case "~from":
-                    Optional<String> maxFrom = parameter.getValue().stream().max(Comparator.comparing(Integer::valueOf));
-                    if (maxFrom.isPresent()) {
-                        from = Integer.parseInt(maxFrom.get());
-                    }
-                    break;
-
-                default:
-                    DisMaxQuery.Builder propertyQuery = new DisMaxQuery.Builder();
-                    for (String value : parameter.getValue()) {
-                        for (String pattern : value.split("[\\|,;]")) {
-                            String finalKey = key;
-                            BoolQuery bq;
-                            if (isNot) {
-                                bq = BoolQuery.of(p -> p.must(MatchQuery.of(name -> name.field("properties.name").query(finalKey))._toQuery())
-                                        .mustNot(WildcardQuery.of(val -> val.field("properties.value").value(pattern.trim()))._toQuery()));
-                            } else {
-                                bq = BoolQuery.of(p -> p.must(MatchQuery.of(name -> name.field("properties.name").query(finalKey))._toQuery())
-                                        .must(WildcardQuery.of(val -> val.field("properties.value").value(pattern.trim()))._toQuery()));
-                            }
-                            propertyQuery.queries(
-                                    NestedQuery.of(n -> n.path("properties").query(bq._toQuery()))._toQuery()
-                            );
-                        }
-                    }
-                    boolQuery.must(propertyQuery.build()._toQuery());
-                    break;
-            }
-        }
+        ChannelQuery channelQuery = queryCompiler.parse(searchParameters);
+        int size = channelQuery.size();
+        int from = channelQuery.from();
 
+        ScrollCursor cursor = ScrollCursor.decode(scrollId);
         try {
+            // a new scroll opens a point in time so all the pages come from a single consistent snapshot
+            String pitId = cursor == null ? openPointInTime() : cursor.pitId();
+            Query query = queryCompiler.compile(channelQuery);
             SearchRequest.Builder builder = new SearchRequest.Builder();
-            builder.index(esService.getES_CHANNEL_INDEX())
-                    .query(boolQuery.build()._toQuery())
+            builder.query(query)
                     .from(from)
                     .size(size)
+                    .trackTotalHits(t -> t.enabled(false))
                     .sort(SortOptions.of(o -> o.field(FieldSort.of(f -> f.field("name")))));
-            if(scrollId != null && !scrollId.isEmpty()) {
-                builder.searchAfter(FieldValue.of(scrollId));
+            if (pitId != null) {
+                builder.pit(p -> p.id(pitId).keepAlive(k -> k.time(esService.getES_SCROLL_KEEP_ALIVE())))
+                        .sort(SortOptions.of(o -> o.field(FieldSort.of(f -> f.field("_shard_doc")))));
+            } else {
+                builder.index(esService.getES_CHANNEL_INDEX());
+            }
+            if (cursor != null) {
+                builder.searchAfter(cursor.searchAfter());
             }
             SearchResponse<Channel> response = client.search(builder.build(),
                     Channel.class
             );
             List<Hit<Channel>> hits = response.hits().hits();
-            return new Scroll(!hits.isEmpty() ? hits.get(hits.size()-1).id() : null, hits.stream().map(Hit::source).collect(Collectors.toList()));
+            List<Channel> channels = hits.stream().map(Hit::source).collect(Collectors.toList());
+            if (hits.isEmpty()) {
+                closePointInTime(pitId);
+                return new Scroll(null, channels);
+            }
+            Hit<Channel> last = hits.get(hits.size() - 1);
+            String lastName = last.source().getName();
+            if (pitId == null) {
+                return new Scroll(new ScrollCursor(null, lastName, null).encode(), channels);
+            } else if (hits.size() < size) {
+                // the scroll is exhausted, release the point in time but still allow the client to continue from the last hit
+                closePointInTime(response.pitId() != null ? response.pitId() : pitId);
+                return new Scroll(new ScrollCursor(null, lastName, null).encode(), channels);
+            } else {
+                String nextPitId = response.pitId() != null ? response.pitId() : pitId;
+                return new Scroll(new ScrollCursor(nextPitId, lastName, last.sort().get(1).longValue()).encode(), channels);
+            }
+        } catch (ElasticsearchException e) {
+            if (e.status() == HttpStatus.NOT_FOUND.value() && cursor != null && cursor.pitId() != null) {
+                String message = MessageFormat.format(TextUtil.SCROLL_EXPIRED, scrollId);
+                logger.log(Level.SEVERE, message, e);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, message, e);
+            }
+            String message = MessageFormat.format(TextUtil.SEARCH_FAILED_CAUSE, searchParameters, e.getMessage());
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, e);
         } catch (Exception e) {
             String message = MessageFormat.format(TextUtil.SEARCH_FAILED_CAUSE, searchParameters, e.getMessage());
             logger.log(Level.SEVERE, message, e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, e);
         }
     }
-    
+
+    /**
+     * Release the point in time held by the given scroll. Scrolls which are read to the end are released
+     * automatically, otherwise the point in time is kept until it expires after elasticsearch.scroll.keep.alive
+     *
+     * @param scrollId scroll Id
+     */
+    public void close(String scrollId) {
+        ScrollCursor cursor = ScrollCursor.decode(scrollId);
+        if (cursor != null) {
+            closePointInTime(cursor.pitId());
+        }
+    }
+
+    private String openPointInTime() throws IOException {
+        return client.openPointInTime(o -> o.index(esService.getES_CHANNEL_INDEX())
+                .keepAlive(k -> k.time(esService.getES_SCROLL_KEEP_ALIVE()))).id();
+    }
+
+    private void closePointInTime(String pitId) {
+        if (pitId == null) {
+            return;
+        }
+        try {
+            client.closePointInTime(c -> c.id(pitId));
+        } catch (ElasticsearchException | IOException e) {
+            // the point in time will be released by elastic once the keep alive expires
+            logger.log(Level.WARNING, MessageFormat.format(TextUtil.FAILED_TO_CLOSE_SCROLL, pitId), e);
+        }
+    }
+
+    /**
+     * The position of a scroll, encoded into the scroll id returned to clients.
+     * <p>
+     * pitId is the elastic point in time the scroll is reading from, or null if the scroll continues
+     * against the live index. name and shardDoc are the sort values of the last hit returned.
+     * Scroll ids which can not be decoded are treated as a plain channel name to search after, which
+     * was the format of the scroll ids returned by older versions of the service.
+     */
+    record ScrollCursor(String pitId, String name, Long shardDoc) {
+
+        private static final String SEPARATOR = "|";
+
+        String encode() {
+            String value = (pitId == null ? "" : pitId) + SEPARATOR
+                    + (shardDoc == null ? "" : shardDoc) + SEPARATOR
+                    + name;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<FieldValue> searchAfter() {
+            if (pitId == null) {
+                return List.of(FieldValue.of(name));
+            }
+            return List.of(FieldValue.of(name), FieldValue.of(shardDoc));
+        }
+
+        static ScrollCursor decode(String scrollId) {
+            if (scrollId == null || scrollId.isEmpty()) {
+                return null;
+            }
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(scrollId), StandardCharsets.UTF_8);
+                String[] parts = value.split(Pattern.quote(SEPARATOR), 3);
+                if (parts.length == 3) {
+                    return new ScrollCursor(parts[0].isEmpty() ? null : parts[0],
+                            parts[2],
+                            parts[1].isEmpty() ? null : Long.valueOf(parts[1]));
+                }
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.FINE, () -> "Scroll id " + scrollId + " is not encoded, using it as a channel name");
+            }
+            return new ScrollCursor(null, scrollId, null);
+        }
+    }
+
 }
@@ -0,0 +1,143 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Group commit of the single channel writes.
+ * <p>
+ * Concurrent single document writes are collected for elasticsearch.write.batch.window milliseconds, or until
+ * elasticsearch.write.batch.size writes are pending, and sent to elastic as a single bulk request with the
+ * elasticsearch.write.refresh policy, so a batch is refreshed at most once. Each writer gets back the bulk item
+ * of its own operation.
+ * <p>
+ * The batches are sent one at a time and in order, so the writes to the same channel are applied in the order
+ * they were submitted.
+ */
+@Configuration
+public class ChannelWriteCoalescer {
+
+    private static final Logger logger = Logger.getLogger(ChannelWriteCoalescer.class.getName());
+
+    @Autowired
+    ElasticConfig esService;
+
+    @Autowired
+    @Qualifier("indexClient")
+    ElasticsearchClient client;
+
+    @Autowired
+    WriteCounter writeCounter;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "channel-write-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private List<PendingWrite> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    private record PendingWrite(BulkOperation operation, CompletableFuture<BulkResponseItem> result) {
+    }
+
+    /**
+     * Submit a write to be sent with the next batch
+     *
+     * @param operation the bulk operation
+     * @return the bulk item of the operation, completed once its batch is written
+     */
+    public CompletableFuture<BulkResponseItem> submit(BulkOperation operation) {
+        PendingWrite write = new PendingWrite(operation, new CompletableFuture<>());
+        List<PendingWrite> full = null;
+        synchronized (this) {
+            pending.add(write);
+            if (pending.size() >= esService.getES_WRITE_BATCH_SIZE()) {
+                full = pending;
+                pending = new ArrayList<>();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                flusher.schedule(this::flushPending, esService.getES_WRITE_BATCH_WINDOW(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            List<PendingWrite> batch = full;
+            flusher.execute(() -> flush(batch));
+        }
+        return write.result();
+    }
+
+    /**
+     * Submit a write and wait for its batch to be written
+     *
+     * @param operation the bulk operation
+     * @return the bulk item of the operation
+     * @throws IOException if the batch could not be written
+     */
+    public BulkResponseItem write(BulkOperation operation) throws IOException {
+        try {
+            return submit(operation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            } else if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void flushPending() {
+        List<PendingWrite> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+        flush(batch);
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            BulkResponse response = client.bulk(b -> b
+                    .operations(batch.stream().map(PendingWrite::operation).toList())
+                    .refresh(esService.getES_WRITE_REFRESH()));
+            writeCounter.written();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(response.items().get(i));
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS, e);
+            batch.forEach(write -> write.result().completeExceptionally(e));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // the writes already scheduled are still flushed
+        flusher.shutdown();
+    }
+}
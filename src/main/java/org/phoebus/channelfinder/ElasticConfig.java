@@ -26,6 +26,7 @@ import java.util.logging.Logger;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import co.elastic.clients.elasticsearch._types.Refresh;
 import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
 import co.elastic.clients.elasticsearch.indices.CreateIndexResponse;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
@@ -95,8 +96,42 @@ public class ElasticConfig implements ServletContextListener {
     private String ES_PROPERTY_INDEX;
     @Value("${elasticsearch.channel.index:channelfinder}")
     private String ES_CHANNEL_INDEX;
+    @Value("${elasticsearch.job.index:cf_jobs}")
+    private String ES_JOB_INDEX;
     @Value("${elasticsearch.query.size:10000}")
     private int ES_QUERY_SIZE;
+    @Value("${elasticsearch.export.page.size:1000}")
+    private int ES_EXPORT_PAGE_SIZE;
+    @Value("${elasticsearch.scroll.keep.alive:5m}")
+    private String ES_SCROLL_KEEP_ALIVE;
+    @Value("${elasticsearch.query.cache.size:256}")
+    private int ES_QUERY_CACHE_SIZE;
+    @Value("${elasticsearch.write.batch.window:5}")
+    private long ES_WRITE_BATCH_WINDOW;
+    @Value("${elasticsearch.write.batch.size:500}")
+    private int ES_WRITE_BATCH_SIZE;
+    @Value("${elasticsearch.bulk.max.operations:1000}")
+    private int ES_BULK_MAX_OPERATIONS;
+    @Value("${elasticsearch.bulk.max.bytes:5242880}")
+    private long ES_BULK_MAX_BYTES;
+    @Value("${elasticsearch.bulk.concurrency:2}")
+    private int ES_BULK_CONCURRENCY;
+    @Value("${elasticsearch.bulk.max.retries:3}")
+    private int ES_BULK_MAX_RETRIES;
+    @Value("${elasticsearch.bulk.retry.backoff:100}")
+    private long ES_BULK_RETRY_BACKOFF;
+    @Value("${elasticsearch.cascade.max.passes:3}")
+    private int ES_CASCADE_MAX_PASSES;
+    @Value("${elasticsearch.job.threads:2}")
+    private int ES_JOB_THREADS;
+    @Value("${elasticsearch.job.queue.size:100}")
+    private int ES_JOB_QUEUE_SIZE;
+    @Value("${elasticsearch.job.instance.id:}")
+    private String ES_JOB_INSTANCE_ID;
+    @Value("${elasticsearch.write.refresh:true}")
+    private String ES_WRITE_REFRESH;
+    @Value("${elasticsearch.write.response:full}")
+    private String ES_WRITE_RESPONSE;
 
     public String getES_TAG_INDEX() {
         return this.ES_TAG_INDEX;
@@ -107,12 +142,63 @@ public class ElasticConfig implements ServletContextListener {
     public String getES_CHANNEL_INDEX() {
         return this.ES_CHANNEL_INDEX;
     }
+    public String getES_JOB_INDEX() {
+        return this.ES_JOB_INDEX;
+    }
     public int getES_QUERY_SIZE() {
         return this.ES_QUERY_SIZE;
     }
     public int getES_MAX_RESULT_WINDOW_SIZE() {
         return ES_QUERY_SIZE;
     }
+    public int getES_QUERY_CACHE_SIZE() {
+        return this.ES_QUERY_CACHE_SIZE;
+    }
+    public long getES_WRITE_BATCH_WINDOW() {
+        return this.ES_WRITE_BATCH_WINDOW;
+    }
+    public int getES_WRITE_BATCH_SIZE() {
+        return this.ES_WRITE_BATCH_SIZE;
+    }
+    public int getES_BULK_MAX_OPERATIONS() {
+        return this.ES_BULK_MAX_OPERATIONS;
+    }
+    public long getES_BULK_MAX_BYTES() {
+        return this.ES_BULK_MAX_BYTES;
+    }
+    public int getES_BULK_CONCURRENCY() {
+        return this.ES_BULK_CONCURRENCY;
+    }
+    public int getES_BULK_MAX_RETRIES() {
+        return this.ES_BULK_MAX_RETRIES;
+    }
+    public long getES_BULK_RETRY_BACKOFF() {
+        return this.ES_BULK_RETRY_BACKOFF;
+    }
+    public int getES_CASCADE_MAX_PASSES() {
+        return this.ES_CASCADE_MAX_PASSES;
+    }
+    public int getES_JOB_THREADS() {
+        return this.ES_JOB_THREADS;
+    }
+    public int getES_JOB_QUEUE_SIZE() {
+        return this.ES_JOB_QUEUE_SIZE;
+    }
+    public String getES_JOB_INSTANCE_ID() {
+        return this.ES_JOB_INSTANCE_ID;
+    }
+    public Refresh getES_WRITE_REFRESH() {
+        return WriteOptions.parseRefresh(this.ES_WRITE_REFRESH);
+    }
+    public WriteOptions.ResponseMode getES_WRITE_RESPONSE() {
+        return WriteOptions.parseResponse(this.ES_WRITE_RESPONSE);
+    }
+    public int getES_EXPORT_PAGE_SIZE() {
+        return this.ES_EXPORT_PAGE_SIZE;
+    }
+    public String getES_SCROLL_KEEP_ALIVE() {
+        return this.ES_SCROLL_KEEP_ALIVE;
+    }
 
     ObjectMapper objectMapper = new ObjectMapper()
             .addMixIn(Tag.class, Tag.OnlyTag.class)
@@ -203,6 +289,7 @@ public class ElasticConfig implements ServletContextListener {
         validateIndex(client, ES_CHANNEL_INDEX, "/channel_mapping.json");
         validateIndex(client, ES_TAG_INDEX, "/tag_mapping.json");
         validateIndex(client, ES_PROPERTY_INDEX, "/properties_mapping.json");
+        validateIndex(client, ES_JOB_INDEX, "/job_mapping.json");
     }
 
     private void validateIndex(ElasticsearchClient client, String esIndex, String mapping) {
@@ -0,0 +1,90 @@
+package org.phoebus.channelfinder;
+
+import org.phoebus.channelfinder.AuthorizationService.ROLES;
+import org.phoebus.channelfinder.entity.Job;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.phoebus.channelfinder.CFResourceDescriptors.JOB_RESOURCE_URI;
+
+/**
+ * A rest end point for following the progress of the long running operations run as jobs, and cancelling them.
+ */
+@CrossOrigin
+@RestController
+@RequestMapping(JOB_RESOURCE_URI)
+@EnableAutoConfiguration
+public class JobManager {
+
+    private static final Logger logger = Logger.getLogger(JobManager.class.getName());
+
+    @Autowired
+    JobService jobService;
+
+    @Autowired
+    AuthorizationService authorizationService;
+
+    /**
+     * GET method for retrieving the queued and running jobs and the most recent finished ones.
+     *
+     * @return list of jobs, most recent first
+     */
+    @GetMapping
+    public List<Job> list() {
+        return jobService.list();
+    }
+
+    /**
+     * GET method for retrieving the status of the job with the path parameter <code>jobId</code>
+     *
+     * @param jobId - job id
+     * @return the job
+     */
+    @GetMapping("/{jobId}")
+    public Job read(@PathVariable("jobId") String jobId) {
+        return jobService.get(jobId).orElseThrow(() -> notFound(jobId));
+    }
+
+    /**
+     * DELETE method for cancelling the job with the path parameter <code>jobId</code>, a running job
+     * stops at its next step. Only the user who submitted the job or an admin can cancel it.
+     *
+     * @param jobId - job id
+     * @return the job
+     */
+    @DeleteMapping("/{jobId}")
+    public Job cancel(@PathVariable("jobId") String jobId) {
+        Job job = jobService.get(jobId).orElseThrow(() -> notFound(jobId));
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if(authorizationService.isAuthorizedRole(authentication, ROLES.CF_ADMIN)
+                || Objects.equals(job.getOwner(), authentication.getName())) {
+            return jobService.cancel(jobId).orElseThrow(() -> notFound(jobId));
+        } else {
+            String message = MessageFormat.format(TextUtil.USER_NOT_AUTHORIZED_ON_JOB, jobId);
+            logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.UNAUTHORIZED));
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, message, null);
+        }
+    }
+
+    private static ResponseStatusException notFound(String jobId) {
+        String message = MessageFormat.format(TextUtil.JOB_NOT_FOUND, jobId);
+        logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.NOT_FOUND));
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, message);
+    }
+}
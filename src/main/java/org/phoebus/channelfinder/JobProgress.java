@@ -0,0 +1,52 @@
+package org.phoebus.channelfinder;
+
+/**
+ * Progress reporting and cancellation of a long running operation, see {@link JobService}.
+ * <p>
+ * The operation reports the documents it scanned and modified as it goes, and checks {@link #isCancelled()}
+ * between its steps to stop early.
+ */
+public interface JobProgress {
+
+    /**
+     * Progress of an operation run outside of a job, ignored
+     */
+    JobProgress NONE = new JobProgress() {
+        @Override
+        public void total(long total) {
+        }
+
+        @Override
+        public void scanned(long count) {
+        }
+
+        @Override
+        public void modified(long count) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * @param total the total number of documents to scan, once known
+     */
+    void total(long total);
+
+    /**
+     * @param count number of documents scanned since the last report
+     */
+    void scanned(long count);
+
+    /**
+     * @param count number of documents modified since the last report
+     */
+    void modified(long count);
+
+    /**
+     * @return true if the operation was cancelled and should stop
+     */
+    boolean isCancelled();
+}
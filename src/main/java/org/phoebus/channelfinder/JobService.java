@@ -0,0 +1,400 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import org.phoebus.channelfinder.entity.Job;
+import org.phoebus.channelfinder.entity.Job.State;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs long running operations in the background as jobs, so the request submitting them returns right away.
+ * <p>
+ * The jobs run on a pool of elasticsearch.job.threads threads, at most elasticsearch.job.queue.size jobs wait
+ * for a thread and further submissions are rejected with a 503. The status of each job is stored in the
+ * elasticsearch.job.index index when it starts and ends, and at most once a second in between, so it can
+ * still be read once the job is done or after a restart. Each job records the elasticsearch.job.instance.id of
+ * the service instance running it, by default its host name. The jobs of this instance which were queued or
+ * running when it stopped are marked as failed when it starts again, the jobs of the other instances sharing
+ * the index are left alone.
+ * <p>
+ * A job is cancelled by setting a flag the operation checks between its steps, it is not interrupted.
+ */
+@Configuration
+public class JobService {
+
+    private static final Logger logger = Logger.getLogger(JobService.class.getName());
+
+    // minimum interval between two stores of the status of a running job
+    private static final long PERSIST_INTERVAL = 1000;
+    // number of finished jobs listed
+    private static final int LIST_SIZE = 100;
+
+    /**
+     * An operation run as a job
+     */
+    @FunctionalInterface
+    public interface JobTask {
+
+        /**
+         * @param progress the progress of the job
+         * @throws Exception if the operation failed
+         */
+        void run(JobProgress progress) throws Exception;
+    }
+
+    @Autowired
+    ElasticConfig esService;
+
+    @Autowired
+    @Qualifier("indexClient")
+    ElasticsearchClient client;
+
+    private final Map<String, RunningJob> running = new ConcurrentHashMap<>();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private ThreadPoolExecutor executor;
+    private String instance;
+
+    @PostConstruct
+    void init() {
+        instance = instanceId();
+        int threads = Math.max(1, esService.getES_JOB_THREADS());
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, esService.getES_JOB_QUEUE_SIZE())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private String instanceId() {
+        String id = esService.getES_JOB_INSTANCE_ID();
+        if (id != null && !id.isBlank()) {
+            return id;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            logger.log(Level.WARNING, "Failed to resolve the host name, set elasticsearch.job.instance.id to tell"
+                    + " the jobs of this instance from those of the others", e);
+            return "localhost";
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Mark the jobs left queued or running by a previous run of this instance as failed, once the application is
+     * ready so the job index was created
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void failInterruptedJobs() {
+        try {
+            SearchResponse<Job> response = client.search(s -> s.index(esService.getES_JOB_INDEX())
+                            .query(q -> q.bool(b -> b
+                                    .filter(f -> f.term(t -> t.field("instance").value(instance)))
+                                    .filter(f -> f.terms(t -> t.field("state")
+                                            .terms(v -> v.value(List.of(FieldValue.of(State.QUEUED.name()),
+                                                    FieldValue.of(State.RUNNING.name()))))))))
+                            .size(esService.getES_QUERY_SIZE()),
+                    Job.class);
+            long now = System.currentTimeMillis();
+            for (Hit<Job> hit : response.hits().hits()) {
+                Job job = hit.source();
+                if (job != null && !running.containsKey(job.getId())) {
+                    job.setState(State.FAILED);
+                    job.setFinished(now);
+                    job.setEta(-1);
+                    job.setError(TextUtil.JOB_INTERRUPTED);
+                    persist(job, Refresh.False);
+                }
+            }
+        } catch (ElasticsearchException | IOException e) {
+            logger.log(Level.WARNING, TextUtil.FAILED_TO_RECOVER_JOBS, e);
+        }
+    }
+
+    /**
+     * Submit an operation to run as a job, owned by the current user
+     *
+     * @param type        the kind of operation
+     * @param description what the operation is applied to
+     * @param task        the operation
+     * @return the queued job
+     */
+    public Job submit(String type, String description, JobTask task) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String owner = authentication == null ? null : authentication.getName();
+        Job job = new Job(UUID.randomUUID().toString(), type, description, owner, System.currentTimeMillis());
+        job.setInstance(instance);
+        RunningJob runningJob = new RunningJob(job);
+        running.put(job.getId(), runningJob);
+        persist(runningJob.snapshot(), Refresh.False);
+        try {
+            // run with the security context of the submitter
+            runningJob.future = executor.submit(new DelegatingSecurityContextRunnable(() -> run(runningJob, task)));
+        } catch (RejectedExecutionException e) {
+            String message = MessageFormat.format(TextUtil.JOB_QUEUE_FULL, job.getType());
+            running.remove(job.getId());
+            runningJob.finish(State.FAILED, message);
+            persist(runningJob.snapshot(), Refresh.False);
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, message, null);
+        }
+        logger.log(Level.INFO, () -> MessageFormat.format(TextUtil.JOB_SUBMITTED, job));
+        return runningJob.snapshot();
+    }
+
+    private void run(RunningJob runningJob, JobTask task) {
+        if (!runningJob.start()) {
+            // cancelled while queued
+            return;
+        }
+        persist(runningJob.snapshot(), Refresh.False);
+        try {
+            task.run(runningJob);
+            runningJob.finish(runningJob.isCancelled() ? State.CANCELLED : State.SUCCEEDED, null);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, MessageFormat.format(TextUtil.JOB_FAILED, runningJob.id()), e);
+            String error = e instanceof ResponseStatusException statusException ? statusException.getReason() : e.getMessage();
+            runningJob.finish(runningJob.isCancelled() ? State.CANCELLED : State.FAILED, String.valueOf(error));
+        } finally {
+            // searchable before it is no longer listed from memory
+            persist(runningJob.snapshot(), Refresh.WaitFor);
+            running.remove(runningJob.id());
+            logger.log(Level.INFO, () -> MessageFormat.format(TextUtil.JOB_COMPLETED, runningJob.snapshot()));
+        }
+    }
+
+    /**
+     * @param id job id
+     * @return the job with the given id, if any
+     */
+    public Optional<Job> get(String id) {
+        RunningJob runningJob = running.get(id);
+        if (runningJob != null) {
+            return Optional.of(runningJob.snapshot());
+        }
+        try {
+            GetResponse<Job> response = client.get(g -> g.index(esService.getES_JOB_INDEX()).id(id), Job.class);
+            return response.found() ? Optional.ofNullable(response.source()) : Optional.empty();
+        } catch (ElasticsearchException | IOException e) {
+            String message = MessageFormat.format(TextUtil.FAILED_TO_FIND_JOB, id);
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+        }
+    }
+
+    /**
+     * @return the queued and running jobs and the most recent finished ones, most recent first
+     */
+    public List<Job> list() {
+        Map<String, Job> jobs = new LinkedHashMap<>();
+        try {
+            SearchResponse<Job> response = client.search(s -> s.index(esService.getES_JOB_INDEX())
+                            .sort(o -> o.field(f -> f.field("created").order(SortOrder.Desc)))
+                            .size(LIST_SIZE),
+                    Job.class);
+            response.hits().hits().stream()
+                    .map(Hit::source)
+                    .forEach(job -> jobs.put(job.getId(), job));
+        } catch (ElasticsearchException | IOException e) {
+            String message = TextUtil.FAILED_TO_LIST_JOBS;
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+        }
+        // the stored status of the running jobs may be up to a second old
+        running.values().forEach(runningJob -> jobs.put(runningJob.id(), runningJob.snapshot()));
+        List<Job> list = new ArrayList<>(jobs.values());
+        list.sort(Comparator.comparingLong(Job::getCreated).reversed());
+        return list;
+    }
+
+    /**
+     * Cancel a queued or running job, a running job stops at its next step
+     *
+     * @param id job id
+     * @return the job, if any
+     */
+    public Optional<Job> cancel(String id) {
+        RunningJob runningJob = running.get(id);
+        if (runningJob == null) {
+            return get(id);
+        }
+        if (runningJob.cancel()) {
+            // never started, the executor drops it
+            Future<?> future = runningJob.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            running.remove(id);
+            persist(runningJob.snapshot(), Refresh.WaitFor);
+        }
+        logger.log(Level.INFO, () -> MessageFormat.format(TextUtil.JOB_CANCELLED, id));
+        return Optional.of(runningJob.snapshot());
+    }
+
+    private void persist(Job job, Refresh refresh) {
+        try {
+            client.index(i -> i.index(esService.getES_JOB_INDEX()).id(job.getId()).document(job).refresh(refresh));
+        } catch (ElasticsearchException | IOException e) {
+            logger.log(Level.WARNING, MessageFormat.format(TextUtil.FAILED_TO_PERSIST_JOB, job.getId()), e);
+        }
+    }
+
+    /**
+     * The status of a submitted job, updated by the operation through its {@link JobProgress}
+     */
+    private final class RunningJob implements JobProgress {
+
+        private final Job job;
+        private volatile boolean cancelled = false;
+        private volatile Future<?> future;
+        private long lastPersisted;
+
+        RunningJob(Job job) {
+            this.job = job;
+        }
+
+        String id() {
+            return job.getId();
+        }
+
+        synchronized Job snapshot() {
+            updateRate();
+            return job.copy();
+        }
+
+        /**
+         * @return false if the job was cancelled before it started
+         */
+        synchronized boolean start() {
+            if (job.getState() != State.QUEUED) {
+                return false;
+            }
+            job.setState(State.RUNNING);
+            job.setStarted(System.currentTimeMillis());
+            lastPersisted = job.getStarted();
+            return true;
+        }
+
+        synchronized void finish(State state, String error) {
+            job.setState(state);
+            job.setFinished(System.currentTimeMillis());
+            job.setError(error);
+            updateRate();
+        }
+
+        /**
+         * @return true if the job was still queued and is now cancelled
+         */
+        synchronized boolean cancel() {
+            cancelled = true;
+            if (job.getState() == State.QUEUED) {
+                finish(State.CANCELLED, null);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void total(long total) {
+            synchronized (this) {
+                job.setTotal(total);
+            }
+            progressed();
+        }
+
+        @Override
+        public void scanned(long count) {
+            synchronized (this) {
+                job.setScanned(job.getScanned() + count);
+            }
+            progressed();
+        }
+
+        @Override
+        public void modified(long count) {
+            synchronized (this) {
+                job.setModified(job.getModified() + count);
+            }
+            progressed();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void updateRate() {
+            if (job.getStarted() == 0) {
+                return;
+            }
+            long end = job.getFinished() > 0 ? job.getFinished() : System.currentTimeMillis();
+            double seconds = (end - job.getStarted()) / 1000.0;
+            if (seconds > 0) {
+                job.setRate(job.getScanned() / seconds);
+            }
+            if (job.getState().isDone()) {
+                job.setEta(0);
+            } else if (job.getTotal() >= 0 && job.getRate() > 0) {
+                job.setEta((long) Math.ceil(Math.max(0, job.getTotal() - job.getScanned()) / job.getRate()));
+            }
+        }
+
+        private void progressed() {
+            Job snapshot = null;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (now - lastPersisted >= PERSIST_INTERVAL) {
+                    lastPersisted = now;
+                    snapshot = snapshot();
+                }
+            }
+            if (snapshot != null) {
+                persist(snapshot, Refresh.False);
+            }
+        }
+    }
+}
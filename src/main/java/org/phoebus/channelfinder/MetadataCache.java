@@ -0,0 +1,240 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.query_dsl.MatchAllQuery;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import org.phoebus.channelfinder.entity.Property;
+import org.phoebus.channelfinder.entity.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In memory cache of the owners of all the tags and properties, used to validate channel writes and set the
+ * owners of their tags and properties without a round trip to elastic for each of them.
+ * <p>
+ * The cache is loaded at startup and kept up to date by the {@link TagRepository} and {@link PropertyRepository}
+ * writes. Names which are not in the cache are looked up in elastic, so tags and properties created by other
+ * instances sharing the same indices are found, and the whole cache is reloaded every
+ * elasticsearch.metadata.cache.refresh milliseconds to drop the ones they deleted.
+ * <p>
+ * The tags and properties listed from the cache may therefore miss the writes of other instances for up to
+ * elasticsearch.metadata.cache.refresh milliseconds. Until the cache is loaded, {@link #isLoaded()} is false and the
+ * callers list the tags and properties from elastic instead.
+ */
+@Configuration
+public class MetadataCache {
+
+    private static final Logger logger = Logger.getLogger(MetadataCache.class.getName());
+
+    @Autowired
+    ElasticConfig esService;
+
+    @Autowired
+    @Qualifier("indexClient")
+    ElasticsearchClient client;
+
+    private volatile Map<String, String> tagOwners = new ConcurrentHashMap<>();
+    private volatile Map<String, String> propertyOwners = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    /**
+     * Reload all the tags and properties from elastic, logging any failure. Used for the tags and properties
+     * written directly to elastic and to drop the ones deleted by other instances.
+     */
+    @PostConstruct
+    @Scheduled(initialDelayString = "${elasticsearch.metadata.cache.refresh:60000}",
+            fixedDelayString = "${elasticsearch.metadata.cache.refresh:60000}")
+    public void refresh() {
+        try {
+            reload();
+        } catch (ElasticsearchException | IOException e) {
+            logger.log(Level.WARNING, TextUtil.FAILED_TO_LOAD_METADATA, e);
+        }
+    }
+
+    /**
+     * Reload all the tags and properties from elastic
+     *
+     * @throws IOException if the tags or properties could not be read
+     */
+    public synchronized void reload() throws IOException {
+        Map<String, String> tags = new ConcurrentHashMap<>();
+        for (Tag tag : findAll(esService.getES_TAG_INDEX(), Tag.class)) {
+            tags.put(tag.getName(), Objects.toString(tag.getOwner(), ""));
+        }
+        Map<String, String> properties = new ConcurrentHashMap<>();
+        for (Property property : findAll(esService.getES_PROPERTY_INDEX(), Property.class)) {
+            properties.put(property.getName(), Objects.toString(property.getOwner(), ""));
+        }
+        tagOwners = tags;
+        propertyOwners = properties;
+        loaded = true;
+    }
+
+    /**
+     * @return true once all the tags and properties were loaded from elastic, false while the startup load failed
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    private <T> Iterable<T> findAll(String index, Class<T> type) throws IOException {
+        SearchResponse<T> response = client.search(s -> s.index(index)
+                        .query(new MatchAllQuery.Builder().build()._toQuery())
+                        .size(esService.getES_QUERY_SIZE()),
+                type);
+        return response.hits().hits().stream().map(Hit::source).toList();
+    }
+
+    /**
+     * Find the owner of a tag
+     *
+     * @param tagName tag name
+     * @return the tag owner, empty if the tag does not exist
+     */
+    public Optional<String> getTagOwner(String tagName) {
+        return getOwner(tagOwners, tagName, esService.getES_TAG_INDEX(), Tag.class, Tag::getOwner);
+    }
+
+    /**
+     * Find the owner of a property
+     *
+     * @param propertyName property name
+     * @return the property owner, empty if the property does not exist
+     */
+    public Optional<String> getPropertyOwner(String propertyName) {
+        return getOwner(propertyOwners, propertyName, esService.getES_PROPERTY_INDEX(), Property.class, Property::getOwner);
+    }
+
+    /**
+     * @param tagName tag name
+     * @return true if the tag exists
+     */
+    public boolean containsTag(String tagName) {
+        return getTagOwner(tagName).isPresent();
+    }
+
+    /**
+     * @param propertyName property name
+     * @return true if the property exists
+     */
+    public boolean containsProperty(String propertyName) {
+        return getPropertyOwner(propertyName).isPresent();
+    }
+
+    /**
+     * @return the number of tags
+     */
+    public int tagCount() {
+        return tagOwners.size();
+    }
+
+    /**
+     * @return the number of properties
+     */
+    public int propertyCount() {
+        return propertyOwners.size();
+    }
+
+    /**
+     * @return all the tags, without their channels, sorted by name
+     */
+    public Iterable<Tag> getTags() {
+        return tagOwners.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> new Tag(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    /**
+     * @return all the properties, without their channels, sorted by name
+     */
+    public Iterable<Property> getProperties() {
+        return propertyOwners.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> new Property(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    /**
+     * Record a tag written to elastic
+     *
+     * @param tagName tag name
+     * @param owner tag owner
+     */
+    public synchronized void putTag(String tagName, String owner) {
+        tagOwners.put(tagName, Objects.toString(owner, ""));
+    }
+
+    /**
+     * Record a tag deleted from elastic
+     *
+     * @param tagName tag name
+     */
+    public synchronized void removeTag(String tagName) {
+        tagOwners.remove(tagName);
+    }
+
+    /**
+     * Record a property written to elastic
+     *
+     * @param propertyName property name
+     * @param owner property owner
+     */
+    public synchronized void putProperty(String propertyName, String owner) {
+        propertyOwners.put(propertyName, Objects.toString(owner, ""));
+    }
+
+    /**
+     * Record a property deleted from elastic
+     *
+     * @param propertyName property name
+     */
+    public synchronized void removeProperty(String propertyName) {
+        propertyOwners.remove(propertyName);
+    }
+
+    private <T> Optional<String> getOwner(Map<String, String> owners, String name, String index, Class<T> type,
+                                          Function<T, String> owner) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        String cached = owners.get(name);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        try {
+            GetResponse<T> response = client.get(g -> g.index(index).id(name), type);
+            if (response.found() && response.source() != null) {
+                String found = Objects.toString(owner.apply(response.source()), "");
+                synchronized (this) {
+                    owners.putIfAbsent(name, found);
+                }
+                return Optional.of(found);
+            }
+            return Optional.empty();
+        } catch (ElasticsearchException | IOException e) {
+            String message = MessageFormat.format(TextUtil.FAILED_TO_FIND_METADATA, name, index);
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.ScriptLanguage;
+import co.elastic.clients.elasticsearch._types.SlicesCalculation;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.UpdateByQueryResponse;
+import co.elastic.clients.elasticsearch.tasks.GetTasksResponse;
+import co.elastic.clients.json.JsonData;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes a deleted tag or property from all the channels, or renames it on all of them, inside elastic.
+ * <p>
+ * The cascade is a single update by query running a stored painless script on the matching channels, split
+ * into automatically sized slices processed in parallel, so the channels never go through the service.
+ * Channels updated concurrently are skipped and picked up by the next pass, up to
+ * elasticsearch.cascade.max.passes passes. Each pass runs as an elastic task polled up to every second, so a job
+ * running the cascade reports its progress while a pass runs and cancels the task once the job is cancelled.
+ */
+@Configuration
+public class MetadataCascade {
+
+    private static final Logger logger = Logger.getLogger(MetadataCascade.class.getName());
+
+    static final String REMOVE_TAG_SCRIPT = "channelfinder-remove-tag";
+    static final String REMOVE_PROPERTY_SCRIPT = "channelfinder-remove-property";
+    static final String RENAME_TAG_SCRIPT = "channelfinder-rename-tag";
+    static final String RENAME_PROPERTY_SCRIPT = "channelfinder-rename-property";
+
+    // milliseconds between two reads of the status of a pass, doubled from the first up to the maximum so a short
+    // pass is not delayed
+    private static final long FIRST_POLL_INTERVAL = 10;
+    private static final long MAX_POLL_INTERVAL = 1000;
+
+    /**
+     * @param field the nested field, tags or properties
+     * @return a script removing the entries named params.name
+     */
+    private static String removeSource(String field) {
+        return "def entries = ctx._source." + field + ";"
+                + " if (entries == null || !entries.removeIf(e -> params.name.equalsIgnoreCase(e.name))) { ctx.op = 'noop'; }";
+    }
+
+    /**
+     * @param field the nested field, tags or properties
+     * @return a script renaming the entries named params.name to params.to and setting their owner to params.owner,
+     * replacing any entry already named params.to, the property values are kept
+     */
+    private static String renameSource(String field) {
+        return "def entries = ctx._source." + field + ";"
+                + " boolean found = false;"
+                + " if (entries != null) { for (e in entries) { if (params.name.equalsIgnoreCase(e.name)) { found = true; } } }"
+                + " if (found) {"
+                + " entries.removeIf(e -> params.to.equalsIgnoreCase(e.name) && !params.name.equalsIgnoreCase(e.name));"
+                + " for (e in entries) { if (params.name.equalsIgnoreCase(e.name)) { e.name = params.to; e.owner = params.owner; } }"
+                + " } else { ctx.op = 'noop'; }";
+    }
+
+    @Autowired
+    ElasticConfig esService;
+
+    @Autowired
+    @Qualifier("indexClient")
+    ElasticsearchClient client;
+
+    @Autowired
+    WriteCounter writeCounter;
+
+    @Autowired
+    ChannelQueryCompiler queryCompiler;
+
+    private volatile boolean scriptsStored = false;
+
+    /**
+     * Store the cascade scripts, logging any failure, they are stored again before the next cascade if this failed.
+     */
+    @PostConstruct
+    void init() {
+        try {
+            storeScripts();
+        } catch (ElasticsearchException | IOException e) {
+            logger.log(Level.WARNING, TextUtil.FAILED_TO_STORE_CASCADE_SCRIPTS, e);
+        }
+    }
+
+    private synchronized void storeScripts() throws IOException {
+        if (scriptsStored) {
+            return;
+        }
+        storeScript(REMOVE_TAG_SCRIPT, removeSource("tags"));
+        storeScript(REMOVE_PROPERTY_SCRIPT, removeSource("properties"));
+        storeScript(RENAME_TAG_SCRIPT, renameSource("tags"));
+        storeScript(RENAME_PROPERTY_SCRIPT, renameSource("properties"));
+        scriptsStored = true;
+    }
+
+    private void storeScript(String id, String source) throws IOException {
+        client.putScript(p -> p.id(id).script(s -> s.lang(ScriptLanguage.Painless).source(source)));
+    }
+
+    /**
+     * Remove the tag from all the channels
+     *
+     * @param tagName tag name
+     * @return the number of channels updated
+     * @throws IOException if the channels could not be updated
+     */
+    public long removeTag(String tagName) throws IOException {
+        return removeTag(tagName, JobProgress.NONE);
+    }
+
+    /**
+     * Remove the tag from all the channels, reporting the progress
+     *
+     * @param tagName  tag name
+     * @param progress progress of the job running the cascade
+     * @return the number of channels updated
+     * @throws IOException if the channels could not be updated
+     */
+    public long removeTag(String tagName, JobProgress progress) throws IOException {
+        return cascade(REMOVE_TAG_SCRIPT, tagName, Map.of(), tagQuery(tagName), progress);
+    }
+
+    /**
+     * Rename the tag on all the channels, setting its new owner
+     *
+     * @param tagName current tag name
+     * @param newName new tag name
+     * @param owner   new tag owner
+     * @return the number of channels updated
+     * @throws IOException if the channels could not be updated
+     */
+    public long renameTag(String tagName, String newName, String owner) throws IOException {
+        return cascade(RENAME_TAG_SCRIPT, tagName, renameParams(newName, owner), tagQuery(tagName), JobProgress.NONE);
+    }
+
+    /**
+     * Remove the property from all the channels
+     *
+     * @param propertyName property name
+     * @return the number of channels updated
+     * @throws IOException if the channels could not be updated
+     */
+    public long removeProperty(String propertyName) throws IOException {
+        return removeProperty(propertyName, JobProgress.NONE);
+    }
+
+    /**
+     * Remove the property from all the channels, reporting the progress
+     *
+     * @param propertyName property name
+     * @param progress     progress of the job running the cascade
+     * @return the number of channels updated
+     * @throws IOException if the channels could not be updated
+     */
+    public long removeProperty(String propertyName, JobProgress progress) throws IOException {
+        return cascade(REMOVE_PROPERTY_SCRIPT, propertyName, Map.of(), propertyQuery(propertyName), progress);
+    }
+
+    /**
+     * Rename the property on all the channels, setting its new owner and keeping its values
+     *
+     * @param propertyName current property name
+     * @param newName      new property name
+     * @param owner        new property owner
+     * @return the number of channels updated
+     * @throws IOException if the channels could not be updated
+     */
+    public long renameProperty(String propertyName, String newName, String owner) throws IOException {
+        return cascade(RENAME_PROPERTY_SCRIPT, propertyName, renameParams(newName, owner), propertyQuery(propertyName), JobProgress.NONE);
+    }
+
+    private Query tagQuery(String tagName) {
+        return queryCompiler.compile(List.of(ChannelQueryCompiler.Clause.tag(List.of(tagName), false)));
+    }
+
+    private Query propertyQuery(String propertyName) {
+        return queryCompiler.compile(List.of(ChannelQueryCompiler.Clause.property(propertyName, List.of("*"), false)));
+    }
+
+    private static Map<String, JsonData> renameParams(String newName, String owner) {
+        return Map.of("to", JsonData.of(newName), "owner", JsonData.of(Objects.toString(owner, "")));
+    }
+
+    private long cascade(String script, String name, Map<String, JsonData> extraParams, Query query,
+                         JobProgress progress) throws IOException {
+        Map<String, JsonData> params = new HashMap<>(extraParams);
+        params.put("name", JsonData.of(name));
+        storeScripts();
+        // update by query only supports an immediate refresh or none
+        boolean refresh = esService.getES_WRITE_REFRESH() != Refresh.False;
+        long updated = 0;
+        for (int pass = 1; pass <= Math.max(1, esService.getES_CASCADE_MAX_PASSES()); pass++) {
+            if (progress.isCancelled()) {
+                return updated;
+            }
+            String task = client.updateByQuery(u -> u.index(esService.getES_CHANNEL_INDEX())
+                    .query(query)
+                    .script(s -> s.stored(st -> st.id(script).params(params)))
+                    .slices(sl -> sl.computed(SlicesCalculation.Auto))
+                    .conflicts(Conflicts.Proceed)
+                    .refresh(refresh)
+                    .waitForCompletion(false)).task();
+            PassProgress passProgress = new PassProgress(progress, pass == 1);
+            UpdateByQueryResponse response;
+            try {
+                response = await(task, passProgress);
+            } finally {
+                writeCounter.written();
+            }
+            if (response == null) {
+                // cancelled while the pass was running
+                return updated + passProgress.updated;
+            }
+            if (!response.failures().isEmpty()) {
+                String message = MessageFormat.format(TextUtil.CASCADE_FAILED, script, name, response.failures().size(),
+                        response.failures().get(0).cause().reason());
+                throw new IOException(message);
+            }
+            passProgress.report(response.total(), response.updated(), response.noops());
+            long passUpdated = passProgress.updated;
+            long conflicts = Objects.requireNonNullElse(response.versionConflicts(), 0L);
+            updated += passUpdated;
+            int currentPass = pass;
+            logger.log(Level.INFO, () -> MessageFormat.format(TextUtil.CASCADE_PROGRESS, script, name, currentPass,
+                    response.total(), passUpdated, conflicts, response.took()));
+            if (conflicts == 0) {
+                return updated;
+            }
+        }
+        logger.log(Level.WARNING, () -> MessageFormat.format(TextUtil.CASCADE_INCOMPLETE, script, name));
+        return updated;
+    }
+
+    /**
+     * Wait for the update by query task, reporting its progress, and cancel it once the job is cancelled
+     *
+     * @return the result of the task, null if it was cancelled
+     */
+    private UpdateByQueryResponse await(String task, PassProgress passProgress) throws IOException {
+        long interval = FIRST_POLL_INTERVAL;
+        try {
+            while (true) {
+                GetTasksResponse status = client.tasks().get(g -> g.taskId(task));
+                if (status.completed()) {
+                    if (status.error() != null) {
+                        throw new IOException("The cascade task " + task + " failed: " + status.error().reason());
+                    }
+                    return status.response().deserialize(UpdateByQueryResponse._DESERIALIZER, client._jsonpMapper());
+                }
+                if (status.task().status() != null) {
+                    JsonObject counts = status.task().status().toJson(client._jsonpMapper()).asJsonObject();
+                    passProgress.report(count(counts, "total"), count(counts, "updated"), count(counts, "noops"));
+                }
+                if (passProgress.progress.isCancelled()) {
+                    client.tasks().cancel(c -> c.taskId(task));
+                    return null;
+                }
+                Thread.sleep(interval);
+                interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            client.tasks().cancel(c -> c.taskId(task));
+            throw new InterruptedIOException("Interrupted while waiting for the cascade task " + task);
+        }
+    }
+
+    private static Long count(JsonObject counts, String field) {
+        JsonNumber count = counts.getJsonNumber(field);
+        return count == null ? null : count.longValue();
+    }
+
+    /**
+     * The counts of a pass reported to the job so far, the job is sent the increments
+     */
+    private static final class PassProgress {
+
+        private final JobProgress progress;
+        private final boolean first;
+        private boolean totalReported = false;
+        private long updated = 0;
+        private long noops = 0;
+
+        private PassProgress(JobProgress progress, boolean first) {
+            this.progress = progress;
+            this.first = first;
+        }
+
+        private void report(Long total, Long updated, Long noops) {
+            // the total of the later passes only counts the channels left in conflict
+            if (first && !totalReported && total != null && total > 0) {
+                progress.total(total);
+                totalReported = true;
+            }
+            long updatedBy = Math.max(0, Objects.requireNonNullElse(updated, 0L) - this.updated);
+            long noopsBy = Math.max(0, Objects.requireNonNullElse(noops, 0L) - this.noops);
+            if (updatedBy + noopsBy > 0) {
+                progress.scanned(updatedBy + noopsBy);
+                progress.modified(updatedBy);
+                this.updated += updatedBy;
+                this.noops += noopsBy;
+            }
+        }
+    }
+}
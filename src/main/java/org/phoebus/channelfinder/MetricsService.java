@@ -9,13 +9,21 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Publishes the channel, tag and property counts, and the number of channels with each of the metrics.tags and
+ * metrics.properties, as gauges.
+ * <p>
+ * Every metrics.update.period milliseconds the counts of channels are read with a single filters aggregation, see
+ * {@link ChannelRepository#countAll(List, List)}, and the numbers of tags and properties are taken from the
+ * {@link MetadataCache}. The gauges read the last snapshot, so a scrape does not send any request to elastic.
+ */
 @Service
 @PropertySource(value = "classpath:application.properties")
 public class MetricsService {
@@ -31,12 +39,23 @@ public class MetricsService {
     private static final String METRIC_DESCRIPTION_CHANNEL_COUNT =
             "Count of channels with specific property with and specific value";
     private final ChannelRepository channelRepository;
-    private final PropertyRepository propertyRepository;
-    private final TagRepository tagRepository;
+    private final MetadataCache metadataCache;
     private final MeterRegistry meterRegistry;
 
     MultiGauge channelCounts;
 
+    /**
+     * The counts read by the last update
+     *
+     * @param channels   the number of channels
+     * @param properties the number of properties
+     * @param tags       the number of tags
+     */
+    private record Snapshot(long channels, long properties, long tags) {
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(0, 0, 0);
+
     @Value("${metrics.tags}")
     private String[] tags;
 
@@ -46,24 +65,22 @@ public class MetricsService {
     @Autowired
     public MetricsService(
             final ChannelRepository channelRepository,
-            final PropertyRepository propertyRepository,
-            final TagRepository tagRepository,
+            final MetadataCache metadataCache,
             final MeterRegistry meterRegistry) {
         this.channelRepository = channelRepository;
-        this.propertyRepository = propertyRepository;
-        this.tagRepository = tagRepository;
+        this.metadataCache = metadataCache;
         this.meterRegistry = meterRegistry;
         registerGaugeMetrics();
     }
 
     private void registerGaugeMetrics() {
-        Gauge.builder(CF_TOTAL_CHANNEL_COUNT, () -> channelRepository.count(new LinkedMultiValueMap<>()))
+        Gauge.builder(CF_TOTAL_CHANNEL_COUNT, this, service -> service.snapshot.channels())
                 .description(METRIC_DESCRIPTION_TOTAL_CHANNEL_COUNT)
                 .register(meterRegistry);
-        Gauge.builder(CF_PROPERTY_COUNT, propertyRepository::count)
+        Gauge.builder(CF_PROPERTY_COUNT, this, service -> service.snapshot.properties())
                 .description(METRIC_DESCRIPTION_PROPERTY_COUNT)
                 .register(meterRegistry);
-        Gauge.builder(CF_TAG_COUNT, tagRepository::count)
+        Gauge.builder(CF_TAG_COUNT, this, service -> service.snapshot.tags())
                 .description(METRIC_DESCRIPTION_TAG_COUNT)
                 .register(meterRegistry);
         channelCounts = MultiGauge.builder(CF_CHANNEL_COUNT)
@@ -72,31 +89,38 @@ public class MetricsService {
                 .register(meterRegistry);
     }
 
-    @Scheduled(fixedRate = 5000)
+    @Scheduled(fixedRateString = "${metrics.update.period:5000}")
     public void updateMetrics() {
         logger.log(
                 Level.FINER,
                 () -> "Updating metrics for properties " + Arrays.deepToString(properties) + " and tags " + Arrays.toString(tags));
+        List<String> tagNames = Arrays.stream(tags).filter(tag -> !tag.isBlank()).toList();
+        List<String[]> propertyValues = Arrays.asList(properties);
+        ChannelRepository.ChannelCounts counts = channelRepository.countAll(tagNames, propertyValues);
+
         ArrayList<MultiGauge.Row<?>> rows = new ArrayList<>();
 
         // Add tags
-        for (String tag: tags) {
-            long count = channelRepository.countByTag(tag);
-            rows.add(MultiGauge.Row.of(Tags.of("tag", tag), count ));
+        for (int i = 0; i < tagNames.size(); i++) {
+            String tag = tagNames.get(i);
+            long count = counts.tags().get(i);
+            rows.add(MultiGauge.Row.of(Tags.of("tag", tag), count));
             logger.log(
                     Level.FINER,
                     () -> "Updating metrics for tag " + tag + " to " + count);
         }
 
         // Add properties
-        for (String[] propertyValue: properties) {
-            long count = channelRepository.countByProperty(propertyValue[0], propertyValue[1]);
+        for (int i = 0; i < propertyValues.size(); i++) {
+            String[] propertyValue = propertyValues.get(i);
+            long count = counts.properties().get(i);
             rows.add(MultiGauge.Row.of(Tags.of(propertyValue[0], propertyValue[1]), count));
             logger.log(
                     Level.FINER,
                     () -> "Updating metrics for property " + propertyValue[0]  + ":" + propertyValue[1] + " to " + count);
         }
 
+        snapshot = new Snapshot(counts.total(), metadataCache.propertyCount(), metadataCache.tagCount());
         channelCounts.register(rows, true);
     }
 }
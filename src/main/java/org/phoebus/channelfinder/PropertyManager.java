@@ -16,6 +16,7 @@ import java.util.logging.Logger;
 import com.google.common.collect.Lists;
 import org.phoebus.channelfinder.AuthorizationService.ROLES;
 import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Job;
 import org.phoebus.channelfinder.entity.Property;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -54,6 +55,12 @@ public class PropertyManager {
     @Autowired
     AuthorizationService authorizationService;
 
+    @Autowired
+    MetadataCache metadataCache;
+
+    @Autowired
+    JobService jobService;
+
     /**
      * GET method for retrieving the list of properties in the database.
      *
@@ -61,7 +68,8 @@ public class PropertyManager {
      */
     @GetMapping
     public Iterable<Property> list() {
-        return propertyRepository.findAll();
+        // the cache may not be loaded yet if elastic was not available at startup
+        return metadataCache.isLoaded() ? metadataCache.getProperties() : propertyRepository.findAll();
     }
 
     /**
@@ -262,6 +270,8 @@ public class PropertyManager {
      * <code>propertyName</code>, adding it to all channels identified by the payload structure
      * <code>property</code>. Setting the owner attribute in the XML root element is
      * mandatory. Values for the properties are taken from the payload.
+     * If the payload names a different property, the property is renamed on all its channels inside elastic,
+     * keeping their values, and only the channels in the payload are returned.
      *
      * @param propertyName - name of property to be updated
      * @param property - a Property instance with the list of channels to add the property <code>propertyName</code> to
@@ -289,26 +299,25 @@ public class PropertyManager {
         }
 
         List<Channel> chans = new ArrayList<>();
-        Optional<Property> existingProperty = propertyRepository.findById(propertyName,true);
-        Property newProperty;
+        Optional<Property> existingProperty = propertyRepository.findById(propertyName);
+        Property updatedProperty;
         if(existingProperty.isPresent()) {
             checkPropertyAuthorization(existingProperty);
-            chans = existingProperty.get().getChannels();
-            newProperty = existingProperty.get();
-            newProperty.setOwner(property.getOwner());
-            // Is an existing channel being renamed
+            // Is an existing property being renamed
             if (!property.getName().equalsIgnoreCase(existingProperty.get().getName())) {
-                // Since this is a rename operation we will need to remove the old channel.
-                propertyRepository.deleteById(existingProperty.get().getName());
-                newProperty.setName(property.getName());
+                // the property is renamed on all its channels inside elastic, only the payload channels are returned
+                updatedProperty = propertyRepository.rename(existingProperty.get().getName(), property);
+            } else {
+                chans = propertyRepository.findById(propertyName, true).map(Property::getChannels).orElse(chans);
+                Property newProperty = existingProperty.get();
+                newProperty.setOwner(property.getOwner());
+                updatedProperty = propertyRepository.save(newProperty);
             }
         } else {
-            newProperty = property;
+            // update property
+            updatedProperty = propertyRepository.save(property);
         }
 
-        // update property
-        Property updatedProperty = propertyRepository.save(newProperty);
-
         // update channels of existing property
         if(!chans.isEmpty()) {
             List<Channel> chanList = new ArrayList<>();
@@ -341,7 +350,7 @@ public class PropertyManager {
                 chan.setTags(new ArrayList<>());
                 for(Property prop: chan.getProperties())
                 {
-                    if(prop.getName().equals(propertyName))
+                    if(prop.getName().equalsIgnoreCase(updatedProperty.getName()))
                         p = prop;
                 }
                 chan.setProperties(Collections.singletonList(p));
@@ -451,8 +460,21 @@ public class PropertyManager {
      *
      * @param propertyName - name of property to remove
      */
+    public void remove(String propertyName) {
+        remove(propertyName, false);
+    }
+
+    /**
+     * DELETE method for deleting the property identified by the path parameter
+     * <code>propertyName</code> from all channels.
+     *
+     * @param propertyName - name of property to remove
+     * @param async - async=true removes the property from the channels in a background job
+     * @return the job removing the property from the channels when async, nothing otherwise
+     */
     @DeleteMapping("/{propertyName}")
-    public void remove(@PathVariable("propertyName") String propertyName) {
+    public Job remove(@PathVariable("propertyName") String propertyName,
+                      @RequestParam(value = "async", required = false, defaultValue = "false") boolean async) {
         // check if authorized role
         if(authorizationService.isAuthorizedRole(SecurityContextHolder.getContext().getAuthentication(), ROLES.CF_PROPERTY)) {
             Optional<Property> existingProperty = propertyRepository.findById(propertyName);
@@ -460,7 +482,12 @@ public class PropertyManager {
                 // check if authorized owner
                 if(authorizationService.isAuthorizedOwner(SecurityContextHolder.getContext().getAuthentication(), existingProperty.get())) {
                     // delete property
+                    if(async) {
+                        return jobService.submit("delete-property", propertyName,
+                                progress -> propertyRepository.deleteById(propertyName, progress));
+                    }
                     propertyRepository.deleteById(propertyName);
+                    return null;
                 } else {
                     String message = MessageFormat.format(TextUtil.USER_NOT_AUTHORIZED_ON_PROPERTY, propertyName);
                     logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.UNAUTHORIZED));
@@ -2,6 +2,7 @@ package org.phoebus.channelfinder;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -10,13 +11,10 @@ import java.util.stream.StreamSupport;
 
 import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch._types.FieldSort;
-import co.elastic.clients.elasticsearch._types.Refresh;
 import co.elastic.clients.elasticsearch._types.Result;
 import co.elastic.clients.elasticsearch._types.SortOptions;
 import co.elastic.clients.elasticsearch._types.query_dsl.IdsQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.MatchAllQuery;
-import co.elastic.clients.elasticsearch.core.BulkRequest;
-import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.CountRequest;
 import co.elastic.clients.elasticsearch.core.CountResponse;
 import co.elastic.clients.elasticsearch.core.DeleteResponse;
@@ -26,12 +24,10 @@ import co.elastic.clients.elasticsearch.core.IndexRequest;
 import co.elastic.clients.elasticsearch.core.IndexResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
-import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.json.JsonData;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import org.phoebus.channelfinder.entity.Property.OnlyNameOwnerProperty;
-import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Property;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -41,6 +37,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Repository;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import org.springframework.util.LinkedMultiValueMap;
@@ -57,12 +54,24 @@ public class PropertyRepository implements CrudRepository<Property, String> {
     @Qualifier("indexClient")
     ElasticsearchClient client;
 
+    @Autowired
+    WriteCounter writeCounter;
+
     @Autowired
     ElasticConfig esService;
 
     @Autowired
     ChannelRepository channelRepository;
 
+    @Autowired
+    MetadataCache metadataCache;
+
+    @Autowired
+    BulkIngester bulkIngester;
+
+    @Autowired
+    MetadataCascade metadataCascade;
+
     ObjectMapper objectMapper = new ObjectMapper().addMixIn(Property.class, OnlyNameOwnerProperty.class);
 
     /**
@@ -82,36 +91,40 @@ public class PropertyRepository implements CrudRepository<Property, String> {
      * @return the created properties
      */
     public List<Property> indexAll(List<Property> properties) {
-        BulkRequest.Builder br = new BulkRequest.Builder();
-        for (Property property : properties) {
-            br.operations(op -> op
-                    .index(idx -> idx
-                                    .index(esService.getES_PROPERTY_INDEX())
-                                    .id(property.getName())
-                                    .document(JsonData.of(property, new JacksonJsonpMapper(objectMapper)))
-                    )
-            );
-        }
+        return writeAll(properties, TextUtil.FAILED_TO_INDEX_PROPERTIES);
+    }
+
+    /**
+     * write the properties as bounded bulk requests
+     *
+     * @param properties - properties to be written
+     * @param failedMessage - message reporting the properties which could not be written
+     * @return the written properties
+     * @throws ResponseStatusException listing the properties which could not be written
+     */
+    private List<Property> writeAll(List<? extends Property> properties, String failedMessage) {
         try {
-            BulkResponse result  = client.bulk(br.refresh(Refresh.True).build());
-            // Log errors, if any
-            if (result.errors()) {
-                logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                for (BulkResponseItem item : result.items()) {
-                    if (item.error() != null) {
-                        logger.log(Level.SEVERE, () -> item.error().reason());
-                    }
+            List<BulkIngester.Operation> operations = new ArrayList<>();
+            for (Property property : properties) {
+                operations.add(BulkIngester.Operation.index(esService.getES_PROPERTY_INDEX(), property.getName(), property, objectMapper));
+            }
+            BulkIngester.BulkResult result = bulkIngester.write(operations, esService.getES_WRITE_REFRESH());
+            for (int i = 0; i < properties.size(); i++) {
+                if (!result.failed(i)) {
+                    metadataCache.putProperty(properties.get(i).getName(), properties.get(i).getOwner());
                 }
-            } else {
-                return findAllById(properties.stream().map(Property::getName).toList());
             }
+            if (result.hasFailures()) {
+                String message = MessageFormat.format(failedMessage, result.failuresById());
+                logger.log(Level.SEVERE, message);
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+            }
+            return properties.stream().map(PropertyRepository::asStored).toList();
         } catch (IOException e) {
-            String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_PROPERTIES, properties);
+            String message = MessageFormat.format(failedMessage, properties);
             logger.log(Level.SEVERE, message, e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
-
         }
-        return null;
     }
 
     /**
@@ -128,13 +141,15 @@ public class PropertyRepository implements CrudRepository<Property, String> {
             IndexRequest request = IndexRequest.of(i -> i.index(esService.getES_PROPERTY_INDEX())
                     .id(propertyName)
                     .document(JsonData.of(property, new JacksonJsonpMapper(objectMapper)))
-                    .refresh(Refresh.True));
+                    .refresh(esService.getES_WRITE_REFRESH()));
 
             IndexResponse response = client.index(request);
+            writeCounter.written();
             // verify the creation of the tag
             if (response.result().equals(Result.Created) || response.result().equals(Result.Updated)) {
                 logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.CREATE_PROPERTY, property.toLog()));
-                return (S) findById(propertyName).get();
+                metadataCache.putProperty(propertyName, property.getOwner());
+                return (S) asStored(property);
             }
         } catch (Exception e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_PROPERTY, property.toLog());
@@ -162,37 +177,7 @@ public class PropertyRepository implements CrudRepository<Property, String> {
     @SuppressWarnings("unchecked")
     @Override
     public <S extends Property> Iterable<S> saveAll(Iterable<S> properties) {
-        List<String> ids = StreamSupport.stream(properties.spliterator(), false)
-                .map(Property::getName).toList();
-
-        BulkRequest.Builder br = new BulkRequest.Builder();
-
-        for (Property property : properties) {
-            br.operations(op -> op.index(i -> i.index(esService.getES_PROPERTY_INDEX())
-                    .id(property.getName())
-                    .document(JsonData.of(property, new JacksonJsonpMapper(objectMapper)))));
-        }
-
-        try {
-            BulkResponse result = client.bulk(br.refresh(Refresh.True).build());
-            // Log errors, if any
-            if (result.errors()) {
-                logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                for (BulkResponseItem item : result.items()) {
-                    if (item.error() != null) {
-                        logger.log(Level.SEVERE, () -> item.error().reason());
-                    }
-                }
-                // TODO cleanup? or throw exception?
-            } else {
-                return (Iterable<S>) findAllById(ids);
-            }
-        } catch (IOException e) {
-            String message = MessageFormat.format(TextUtil.FAILED_TO_UPDATE_SAVE_PROPERTIES, properties);
-            logger.log(Level.SEVERE, message, e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
-        }
-        return null;
+        return (Iterable<S>) writeAll(Lists.newArrayList(properties), TextUtil.FAILED_TO_UPDATE_SAVE_PROPERTIES);
     }
 
     /**
@@ -272,6 +257,16 @@ public class PropertyRepository implements CrudRepository<Property, String> {
         }
     }
 
+    /**
+     * The property as it is indexed, without its channels, returned from the writes instead of reading it back
+     *
+     * @param property written property
+     * @return a copy of the property without its channels
+     */
+    private static Property asStored(Property property) {
+        return new Property(property.getName(), property.getOwner(), property.getValue());
+    }
+
     /**
      * find properties using the given property ids
      *
@@ -310,6 +305,31 @@ public class PropertyRepository implements CrudRepository<Property, String> {
         }
     }
 
+    /**
+     * rename the property on all the channels inside elastic, keeping their values.
+     * The new property is written first and the old one deleted last, so every property referenced by a channel exists
+     * throughout the rename.
+     *
+     * @param propertyName - current name of the property
+     * @param property - the property with its new name and owner
+     * @return the renamed property
+     */
+    public Property rename(String propertyName, Property property) {
+        Property renamedProperty = save(property.getName(), asStored(property));
+        try {
+            long updated = metadataCascade.renameProperty(propertyName, property.getName(), property.getOwner());
+            logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.RENAMED_PROPERTY_ON_CHANNELS, propertyName, property.getName(), updated));
+            client.delete(d -> d.index(esService.getES_PROPERTY_INDEX()).id(propertyName).refresh(esService.getES_WRITE_REFRESH()));
+            writeCounter.written();
+            metadataCache.removeProperty(propertyName);
+            return renamedProperty;
+        } catch (ElasticsearchException | IOException e) {
+            String message = MessageFormat.format(TextUtil.FAILED_TO_RENAME_PROPERTY, propertyName, property.getName());
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+        }
+    }
+
     /**
      * delete the given property by property name
      *
@@ -317,50 +337,28 @@ public class PropertyRepository implements CrudRepository<Property, String> {
      */
     @Override
     public void deleteById(String propertyName) {
+        deleteById(propertyName, JobProgress.NONE);
+    }
+
+    /**
+     * delete the given property by property name, reporting the progress of its removal from the channels
+     *
+     * @param propertyName - name of property to be deleted
+     * @param progress - progress of the job deleting the property
+     */
+    public void deleteById(String propertyName, JobProgress progress) {
         try {
             DeleteResponse response = client
-                    .delete(i -> i.index(esService.getES_PROPERTY_INDEX()).id(propertyName).refresh(Refresh.True));
+                    .delete(i -> i.index(esService.getES_PROPERTY_INDEX()).id(propertyName).refresh(esService.getES_WRITE_REFRESH()));
+            writeCounter.written();
             // verify the deletion of the property
             if (response.result().equals(Result.Deleted)) {
                 logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.DELETE_PROPERTY, propertyName));
             }
-
-            // Remove the Property from Channels
-            BulkRequest.Builder br = new BulkRequest.Builder().refresh(Refresh.True);
-            MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
-            params.add(propertyName, "*");
-            List<Channel> channels = channelRepository.search(params).channels();
-            while (channels.size() > 0) {
-                for (Channel channel : channels) {
-                    channel.removeProperty(
-                            channel.getProperties().stream().filter(prop -> propertyName.equalsIgnoreCase(prop.getName())).findAny().get());
-                    br.operations(op -> op.update(
-                            u -> u.index(esService.getES_CHANNEL_INDEX())
-                                    .id(channel.getName())
-                                    .action(a -> a.doc(channel))));
-                }
-                try {
-                    br.refresh(Refresh.True);
-                    BulkResponse result = client.bulk(br.build());
-                    // Log errors, if any
-                    if (result.errors()) {
-                        logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                        for (BulkResponseItem item : result.items()) {
-                            if (item.error() != null) {
-                                logger.log(Level.SEVERE, () -> item.error().reason());
-                            }
-                        }
-                    } else {
-                    }
-                } catch (IOException e) {
-                    String message = MessageFormat.format(TextUtil.FAILED_TO_DELETE_PROPERTY, propertyName);
-                    logger.log(Level.SEVERE, message, e);
-                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
-
-                }
-                params.set("~search_after", channels.get(channels.size() - 1).getName());
-                channels = channelRepository.search(params).channels();
-            }
+            metadataCache.removeProperty(propertyName);
+            // remove the property from the channels inside elastic
+            long updated = metadataCascade.removeProperty(propertyName, progress);
+            logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.REMOVED_PROPERTY_FROM_CHANNELS, propertyName, updated));
         } catch (ElasticsearchException | IOException e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_DELETE_PROPERTY, propertyName);
             logger.log(Level.SEVERE, message, e);
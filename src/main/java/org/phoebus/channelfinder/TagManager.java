@@ -17,6 +17,7 @@ import java.util.stream.StreamSupport;
 import com.google.common.collect.Lists;
 import org.phoebus.channelfinder.AuthorizationService.ROLES;
 import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Job;
 import org.phoebus.channelfinder.entity.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -52,6 +53,12 @@ public class TagManager {
     @Autowired
     AuthorizationService authorizationService;
 
+    @Autowired
+    MetadataCache metadataCache;
+
+    @Autowired
+    JobService jobService;
+
     /**
      * GET method for retrieving the list of tags in the database.
      *
@@ -59,7 +66,8 @@ public class TagManager {
      */
     @GetMapping
     public Iterable<Tag> list() {
-        return tagRepository.findAll();
+        // the cache may not be loaded yet if elastic was not available at startup
+        return metadataCache.isLoaded() ? metadataCache.getTags() : tagRepository.findAll();
     }
 
     /**
@@ -280,6 +288,8 @@ public class TagManager {
      * <code>name</code>, adding it to all channels identified by the channels inside
      * the payload structure <code>data</code>. Setting the owner attribute in the XML
      * root element is mandatory.
+     * If the payload names a different tag, the tag is renamed on all its channels inside elastic and only
+     * the channels in the payload are returned.
      * 
      * TODO: Optimize the bulk channel update
      *
@@ -303,31 +313,30 @@ public class TagManager {
                 throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, message, null);
             }
             List<Channel> channels = new ArrayList<>();
-            Optional<Tag> existingTag = tagRepository.findById(tagName,true);
+            Optional<Tag> existingTag = tagRepository.findById(tagName);
 
-            Tag newTag;
+            Tag updatedTag;
             if(existingTag.isPresent()) {
                 if(!authorizationService.isAuthorizedOwner(SecurityContextHolder.getContext().getAuthentication(), existingTag.get())) {
                     String message = MessageFormat.format(TextUtil.USER_NOT_AUTHORIZED_ON_TAG, existingTag.get().toLog());
                     logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.UNAUTHORIZED));
                     throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, message, null);
                 } 
-                channels = existingTag.get().getChannels();
-                newTag = existingTag.get();
-                newTag.setOwner(tag.getOwner());
                 // Is an existing tag being renamed
                 if (!tag.getName().equalsIgnoreCase(existingTag.get().getName())) {
-                    // Since this is a rename operation we will need to remove the old channel.
-                    tagRepository.deleteById(existingTag.get().getName());
-                    newTag.setName(tag.getName());
+                    // the tag is renamed on all its channels inside elastic, only the payload channels are returned
+                    updatedTag = tagRepository.rename(existingTag.get().getName(), tag);
+                } else {
+                    channels = tagRepository.findById(tagName, true).map(Tag::getChannels).orElse(channels);
+                    Tag newTag = existingTag.get();
+                    newTag.setOwner(tag.getOwner());
+                    updatedTag = tagRepository.save(newTag);
                 }
             } else {
-                newTag = tag;
+                // update tag
+                updatedTag = tagRepository.save(tag);
             }
 
-            // update tag
-            Tag updatedTag = tagRepository.save(newTag);
-
             // update channels of existing tag
             if(!channels.isEmpty()) {
                 channels.forEach(chan -> chan.addTag(updatedTag));
@@ -428,8 +437,21 @@ public class TagManager {
      *
      * @param tagName - name of tag to remove
      */
+    public void remove(String tagName) {
+        remove(tagName, false);
+    }
+
+    /**
+     * DELETE method for deleting the tag identified by the path parameter
+     * <code>tagName</code> from all channels.
+     *
+     * @param tagName - name of tag to remove
+     * @param async - async=true removes the tag from the channels in a background job
+     * @return the job removing the tag from the channels when async, nothing otherwise
+     */
     @DeleteMapping("/{tagName}")
-    public void remove(@PathVariable("tagName") String tagName) {
+    public Job remove(@PathVariable("tagName") String tagName,
+                      @RequestParam(value = "async", required = false, defaultValue = "false") boolean async) {
         // check if authorized role
         if(authorizationService.isAuthorizedRole(SecurityContextHolder.getContext().getAuthentication(), ROLES.CF_TAG)) {
             Optional<Tag> existingTag = tagRepository.findById(tagName);
@@ -437,7 +459,12 @@ public class TagManager {
                 // check if authorized owner
                 if(authorizationService.isAuthorizedOwner(SecurityContextHolder.getContext().getAuthentication(), existingTag.get())) {
                     // delete tag
+                    if(async) {
+                        return jobService.submit("delete-tag", tagName,
+                                progress -> tagRepository.deleteById(tagName, progress));
+                    }
                     tagRepository.deleteById(tagName);
+                    return null;
                 } else {
                     String message = MessageFormat.format(TextUtil.USER_NOT_AUTHORIZED_ON_TAG, tagName);
                     logger.log(Level.SEVERE, message, new ResponseStatusException(HttpStatus.UNAUTHORIZED));
@@ -2,7 +2,7 @@ package org.phoebus.channelfinder;
 
 import java.io.IOException;
 import java.text.MessageFormat;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -11,12 +11,9 @@ import java.util.stream.StreamSupport;
 
 import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch._types.FieldSort;
-import co.elastic.clients.elasticsearch._types.Refresh;
 import co.elastic.clients.elasticsearch._types.Result;
 import co.elastic.clients.elasticsearch._types.SortOptions;
 import co.elastic.clients.elasticsearch._types.query_dsl.IdsQuery;
-import co.elastic.clients.elasticsearch.core.BulkRequest;
-import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.CountRequest;
 import co.elastic.clients.elasticsearch.core.CountResponse;
 import co.elastic.clients.elasticsearch.core.DeleteResponse;
@@ -25,10 +22,8 @@ import co.elastic.clients.elasticsearch.core.GetResponse;
 import co.elastic.clients.elasticsearch.core.IndexResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
-import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.json.JsonData;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
-import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Tag;
 import org.phoebus.channelfinder.entity.Tag.OnlyTag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +37,7 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.query_dsl.MatchAllQuery;
@@ -61,9 +57,21 @@ public class TagRepository implements CrudRepository<Tag, String> {
     @Qualifier("indexClient")
     ElasticsearchClient client;
 
+    @Autowired
+    WriteCounter writeCounter;
+
     @Autowired
     ChannelRepository channelRepository;
 
+    @Autowired
+    MetadataCache metadataCache;
+
+    @Autowired
+    BulkIngester bulkIngester;
+
+    @Autowired
+    MetadataCascade metadataCascade;
+
     ObjectMapper objectMapper = new ObjectMapper().addMixIn(Tag.class, OnlyTag.class);
 
     /**
@@ -84,34 +92,39 @@ public class TagRepository implements CrudRepository<Tag, String> {
      * @return the created tags
      */
     public List<Tag> indexAll(List<Tag> tags) {
-        BulkRequest.Builder br = new BulkRequest.Builder();
-        for (Tag tag : tags) {
-            br.operations(op -> op
-                    .index(idx -> idx
-                            .index(esService.getES_TAG_INDEX())
-                            .id(tag.getName())
-                            .document(JsonData.of(tag, new JacksonJsonpMapper(objectMapper)))));
-        }
+        return writeAll(tags);
+    }
+
+    /**
+     * write the tags as bounded bulk requests
+     *
+     * @param tags - tags to be written
+     * @return the written tags
+     * @throws ResponseStatusException listing the tags which could not be written
+     */
+    private List<Tag> writeAll(List<? extends Tag> tags) {
         try {
-            BulkResponse result  = client.bulk(br.refresh(Refresh.True).build());
-            // Log errors, if any
-            if (result.errors()) {
-                logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                for (BulkResponseItem item : result.items()) {
-                    if (item.error() != null) {
-                        logger.log(Level.SEVERE, () -> item.error().reason());
-                    }
+            List<BulkIngester.Operation> operations = new ArrayList<>();
+            for (Tag tag : tags) {
+                operations.add(BulkIngester.Operation.index(esService.getES_TAG_INDEX(), tag.getName(), tag, objectMapper));
+            }
+            BulkIngester.BulkResult result = bulkIngester.write(operations, esService.getES_WRITE_REFRESH());
+            for (int i = 0; i < tags.size(); i++) {
+                if (!result.failed(i)) {
+                    metadataCache.putTag(tags.get(i).getName(), tags.get(i).getOwner());
                 }
-                // TODO cleanup? or throw exception?
-            } else {
-                return findAllById(tags.stream().map(Tag::getName).toList());
             }
+            if (result.hasFailures()) {
+                String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_TAGS, result.failuresById());
+                logger.log(Level.SEVERE, message);
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+            }
+            return tags.stream().map(TagRepository::asStored).toList();
         } catch (IOException e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_TAGS, tags);
             logger.log(Level.SEVERE, message, e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
         }
-        return Collections.emptyList();
     }
 
     /**
@@ -129,11 +142,12 @@ public class TagRepository implements CrudRepository<Tag, String> {
                     .index(i -> i.index(esService.getES_TAG_INDEX())
                             .id(tagName)
                             .document(JsonData.of(tag, new JacksonJsonpMapper(objectMapper)))
-                            .refresh(Refresh.True));
+                            .refresh(esService.getES_WRITE_REFRESH()));
             // verify the creation of the tag
             if (response.result().equals(Result.Created) || response.result().equals(Result.Updated)) {
                 logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.CREATE_TAG, tag.toLog()));
-                return (S) findById(tagName).get();
+                metadataCache.putTag(tagName, tag.getOwner());
+                return (S) asStored(tag);
             }
         } catch (ElasticsearchException | IOException e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_UPDATE_SAVE_TAG, tag.toLog());
@@ -158,43 +172,7 @@ public class TagRepository implements CrudRepository<Tag, String> {
     @SuppressWarnings("unchecked")
     @Override
     public <S extends Tag> Iterable<S> saveAll(Iterable<S> tags) {
-
-        BulkRequest.Builder br = new BulkRequest.Builder();
-        for (Tag tag : tags) {
-            br.operations(op -> op
-                    .index(idx -> idx
-                            .index(esService.getES_TAG_INDEX())
-                            .id(tag.getName())
-                            .document(JsonData.of(tag, new JacksonJsonpMapper(objectMapper)))
-                    )
-            );
-        }
-
-        BulkResponse result = null;
-        try {
-            result = client.bulk(br.refresh(Refresh.True).build());
-            // Log errors, if any
-            if (result.errors()) {
-                logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                for (BulkResponseItem item : result.items()) {
-                    if (item.error() != null) {
-                        logger.log(Level.SEVERE, () -> item.error().reason());
-                    }
-                }
-                // TODO cleanup? or throw exception?
-            } else {
-                return (Iterable<S>) findAllById(
-                        StreamSupport.stream(tags.spliterator(), false)
-                                .map(Tag::getName)
-                                .toList());
-            }
-        } catch (IOException e) {
-            String message = MessageFormat.format(TextUtil.FAILED_TO_INDEX_TAGS, tags);
-            logger.log(Level.SEVERE, message, e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
-
-        }
-        return null;
+        return (Iterable<S>) writeAll(Lists.newArrayList(tags));
     }
 
     /**
@@ -274,6 +252,16 @@ public class TagRepository implements CrudRepository<Tag, String> {
         }
     }
 
+    /**
+     * The tag as it is indexed, without its channels, returned from the writes instead of reading it back
+     *
+     * @param tag written tag
+     * @return a copy of the tag without its channels
+     */
+    private static Tag asStored(Tag tag) {
+        return new Tag(tag.getName(), tag.getOwner());
+    }
+
     /**
      * find tags using the given tags ids
      * 
@@ -311,6 +299,31 @@ public class TagRepository implements CrudRepository<Tag, String> {
         }
     }
 
+    /**
+     * rename the tag on all the channels inside elastic.
+     * The new tag is written first and the old one deleted last, so every tag referenced by a channel exists
+     * throughout the rename.
+     *
+     * @param tagName - current name of the tag
+     * @param tag - the tag with its new name and owner
+     * @return the renamed tag
+     */
+    public Tag rename(String tagName, Tag tag) {
+        Tag renamedTag = save(tag.getName(), asStored(tag));
+        try {
+            long updated = metadataCascade.renameTag(tagName, tag.getName(), tag.getOwner());
+            logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.RENAMED_TAG_ON_CHANNELS, tagName, tag.getName(), updated));
+            client.delete(d -> d.index(esService.getES_TAG_INDEX()).id(tagName).refresh(esService.getES_WRITE_REFRESH()));
+            writeCounter.written();
+            metadataCache.removeTag(tagName);
+            return renamedTag;
+        } catch (ElasticsearchException | IOException e) {
+            String message = MessageFormat.format(TextUtil.FAILED_TO_RENAME_TAG, tagName, tag.getName());
+            logger.log(Level.SEVERE, message, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+        }
+    }
+
     /**
      * delete the given tag by tag name
      * 
@@ -318,49 +331,29 @@ public class TagRepository implements CrudRepository<Tag, String> {
      */
     @Override
     public void deleteById(String tagName) {
+        deleteById(tagName, JobProgress.NONE);
+    }
+
+    /**
+     * delete the given tag by tag name, reporting the progress of its removal from the channels
+     *
+     * @param tagName - name of tag to be deleted
+     * @param progress - progress of the job deleting the tag
+     */
+    public void deleteById(String tagName, JobProgress progress) {
         try {
 
             DeleteResponse response = client
-                    .delete(i -> i.index(esService.getES_TAG_INDEX()).id(tagName).refresh(Refresh.True));
+                    .delete(i -> i.index(esService.getES_TAG_INDEX()).id(tagName).refresh(esService.getES_WRITE_REFRESH()));
+            writeCounter.written();
             // verify the deletion of the tag
             if (response.result().equals(Result.Deleted)) {
                 logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.DELETE_TAG, tagName));
             }
-            BulkRequest.Builder br = new BulkRequest.Builder().refresh(Refresh.True);
-            MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
-            params.add("~tag", tagName);
-            List<Channel> channels = channelRepository.search(params).channels();
-            while (!channels.isEmpty()) {
-
-                for (Channel channel : channels) {
-                    // Or
-                    channel.removeTag(channel.getTags().stream().filter(tag -> tagName.equalsIgnoreCase(tag.getName())).findAny().get());
-                    br.operations(op -> op.update(
-                            u -> u.index(esService.getES_CHANNEL_INDEX())
-                                    .id(channel.getName())
-                                    .action(a -> a.doc(channel))));
-                }
-                try {
-                    BulkResponse result = client.bulk(br.build());
-                    // Log errors, if any
-                    if (result.errors()) {
-                        logger.log(Level.SEVERE, TextUtil.BULK_HAD_ERRORS);
-                        for (BulkResponseItem item : result.items()) {
-                            if (item.error() != null) {
-                                logger.log(Level.SEVERE, () -> item.error().reason());
-                            }
-                        }
-                    }
-                } catch (IOException e) {
-                    String message = MessageFormat.format(TextUtil.FAILED_TO_DELETE_TAG, tagName);
-                    logger.log(Level.SEVERE, message, e);
-                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, null);
-
-                }
-                params.set("~search_after", channels.get(channels.size() - 1).getName());
-                channels = channelRepository.search(params).channels();
-            }
-            
+            metadataCache.removeTag(tagName);
+            // remove the tag from the channels inside elastic
+            long updated = metadataCascade.removeTag(tagName, progress);
+            logger.log(Level.CONFIG, () -> MessageFormat.format(TextUtil.REMOVED_TAG_FROM_CHANNELS, tagName, updated));
         } catch (ElasticsearchException | IOException e) {
             String message = MessageFormat.format(TextUtil.FAILED_TO_DELETE_TAG, tagName);
             logger.log(Level.SEVERE, message, e);
@@ -22,10 +22,52 @@ public class TextUtil {
     public static final String PAYLOAD_PROPERTY_DOES_NOT_MATCH_URI_OR_HAS_BAD_VALUE = "The payload property {0} does not match uri name or has a bad value";
 
     public static final String BULK_HAD_ERRORS            = "Bulk had errors";
+    public static final String BULK_FAILED_OPERATIONS     = "Bulk failed to write {0} of {1} operations";
+    public static final String BULK_OPERATION_FAILED      = "Bulk operation on {0} failed: {1}";
+    public static final String CASCADE_PROGRESS           = "Cascade {0} {1} pass {2}: {3} channels matched, {4} updated, {5} version conflicts in {6} ms";
+    public static final String CASCADE_INCOMPLETE         = "Cascade {0} {1} still had version conflicts after the last pass";
+    public static final String CASCADE_FAILED             = "Cascade {0} {1} failed on {2} channels: {3}";
+    public static final String FAILED_TO_STORE_CASCADE_SCRIPTS = "Failed to store the cascade scripts";
+    public static final String BULK_REJECTED_RETRY        = "Bulk rejected {0} operations, retrying in {1} ms";
     public static final String CREATED_INDEX_ACKNOWLEDGED = "Created index {0} acknowledged {1}";
     public static final String UPDATE_INDEX_ACKNOWLEDGED  = "Updated index {0} acknowledged {1}";
     public static final String DELETE_ALL_NOT_SUPPORTED   = "Delete all is not supported.";
     public static final String FAILED_TO_CREATE_INDEX     = "Failed to create index {0}";
+    public static final String FAILED_TO_LOAD_METADATA    = "Failed to load the tag and property cache";
+    public static final String FAILED_TO_FIND_METADATA    = "Failed to find {0} in index {1}";
+    public static final String INVALID_WRITE_OPTIONS      = "Invalid write options refresh={0} response={1}, expected refresh=true|wait_for|false and response=full|summary|none";
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static final String SCROLL_EXPIRED                           = "The scroll {0} has expired or was closed";
+    public static final String FAILED_TO_CLOSE_SCROLL                   = "Failed to close point in time {0}";
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static final String JOB_SUBMITTED                            = "Submitted job {0}";
+    public static final String JOB_COMPLETED                            = "Completed job {0}";
+    public static final String JOB_CANCELLED                            = "Cancelled job {0}";
+    public static final String JOB_FAILED                               = "Job {0} failed";
+    public static final String JOB_INTERRUPTED                          = "Interrupted by a restart of the service";
+    public static final String JOB_QUEUE_FULL                           = "Too many jobs are queued, the {0} job was rejected";
+    public static final String JOB_NOT_FOUND                            = "The job {0} does not exist";
+    public static final String FAILED_TO_FIND_JOB                       = "Failed to find job {0}";
+    public static final String FAILED_TO_LIST_JOBS                      = "Failed to list the jobs";
+    public static final String FAILED_TO_PERSIST_JOB                    = "Failed to store the status of job {0}";
+    public static final String FAILED_TO_RECOVER_JOBS                   = "Failed to mark the jobs interrupted by a restart as failed";
+    public static final String USER_NOT_AUTHORIZED_ON_JOB               = "User does not have the proper authorization to cancel this job {0}";
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static final String RPC_QUEUE_FULL                           = "Too many {0} requests are queued, the request was rejected";
+    public static final String RPC_TIMEOUT                              = "The {0} request did not complete within {1} ms";
+    public static final String RPC_SIZE_EXCEEDED                        = "The requested size {0} exceeds the maximum {1}, page with _from or _search_after";
+    public static final String RPC_INVALID_SIZE                         = "The requested size {0} is not a positive number";
+    public static final String RPC_UNKNOWN_OPERATION                    = "Unknown operation {0}, expected query, count, names, tags or properties";
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static final String PROCESSOR_QUEUE_FULL                     = "The channels were written but the processors did not catch up within {0} ms, {1} channels were not sent to them";
 
     // ----------------------------------------------------------------------------------------------------
 
@@ -43,9 +85,14 @@ public class TextUtil {
     public static final String DELETE_CHANNEL                           = "Delete channel {0}";
     public static final String DELETE_PROPERTY                          = "Delete property {0}";
     public static final String DELETE_TAG                               = "Delete tag {0}";
+    public static final String REMOVED_TAG_FROM_CHANNELS                = "Removed tag {0} from {1} channels";
+    public static final String REMOVED_PROPERTY_FROM_CHANNELS           = "Removed property {0} from {1} channels";
+    public static final String RENAMED_TAG_ON_CHANNELS                  = "Renamed tag {0} to {1} on {2} channels";
+    public static final String RENAMED_PROPERTY_ON_CHANNELS             = "Renamed property {0} to {1} on {2} channels";
 
     public static final String FIND_ALL_CHANNELS_NOT_SUPPORTED          = "Find all is not supported. It could return hundreds of thousands of channels.";
     public static final String FIND_CHANNEL                             = "Find channel {0}";
+    public static final String EXPORT_CHANNELS                          = "Exported channels for {0}, {1} channels in {2}ms";
 
     public static final String FAILED_TO_INDEX_CHANNEL                  = "Failed to index channel {0}";
     public static final String FAILED_TO_INDEX_CHANNELS                 = "Failed to index channels {0}";
@@ -75,6 +122,7 @@ public class TextUtil {
     public static final String FAILED_TO_FIND_ALL_PROPERTIES            = "Failed to find all properties";
     public static final String FAILED_TO_CHECK_IF_PROPERTY_EXISTS       = "Failed to check if property exists {0}";
     public static final String FAILED_TO_DELETE_PROPERTY                = "Failed to delete property {0}";
+    public static final String FAILED_TO_RENAME_PROPERTY                = "Failed to rename property {0} to {1}";
 
     public static final String USER_NOT_AUTHORIZED_ON_PROPERTY          = "User does not have the proper authorization to perform an operation on this property {0}";
     public static final String USER_NOT_AUTHORIZED_ON_PROPERTIES        = "User does not have the proper authorization to perform an operation on these properties {0}";
@@ -95,6 +143,7 @@ public class TextUtil {
     public static final String FAILED_TO_FIND_ALL_TAGS                  = "Failed to find all tags";
     public static final String FAILED_TO_CHECK_IF_TAG_EXISTS            = "Failed to check if tag exists {0}";
     public static final String FAILED_TO_DELETE_TAG                     = "Failed to delete tag {0}";
+    public static final String FAILED_TO_RENAME_TAG                     = "Failed to rename tag {0} to {1}";
 
     public static final String USER_NOT_AUTHORIZED_ON_TAG               = "User does not have the proper authorization to perform an operation on this tag {0}";
     public static final String USER_NOT_AUTHORIZED_ON_TAGS              = "User does not have the proper authorization to perform an operation on these tags {0}";
@@ -0,0 +1,33 @@
+package org.phoebus.channelfinder;
+
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the writes to the channel, tag and property indices made by this instance, so the values derived from
+ * the indices, such as the channel counts, are only read again after they may have changed.
+ * <p>
+ * Every request writing to these indices records itself once it succeeded: the {@link BulkIngester} and
+ * {@link ChannelWriteCoalescer} bulk requests, the single tag and property writes and deletes, and each update by
+ * query pass of the {@link MetadataCascade}.
+ */
+@Configuration
+public class WriteCounter {
+
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * Record a successful write
+     */
+    public void written() {
+        writes.incrementAndGet();
+    }
+
+    /**
+     * @return the number of successful writes since the start
+     */
+    public long count() {
+        return writes.get();
+    }
+}
@@ -0,0 +1,61 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch._types.Refresh;
+
+import java.util.Locale;
+
+/**
+ * How a write waits for elastic and what it returns to the client.
+ * <p>
+ * refresh - true forces a refresh so the write is immediately searchable, wait_for waits for the next scheduled
+ * refresh and false returns as soon as the write is durable.
+ * <p>
+ * response - full returns the written channels, summary only the number written and the failures, none nothing.
+ *
+ * @param refresh  the elastic refresh policy of the write
+ * @param response what is returned to the client
+ */
+public record WriteOptions(Refresh refresh, ResponseMode response) {
+
+    public enum ResponseMode {
+        FULL, SUMMARY, NONE
+    }
+
+    /**
+     * Parse the write options of a request, using the server defaults for the ones not specified
+     *
+     * @param refresh  refresh=true|wait_for|false, may be null
+     * @param response response=full|summary|none, may be null
+     * @param esService server configuration
+     * @return the write options
+     * @throws IllegalArgumentException if either of the options is not valid
+     */
+    public static WriteOptions of(String refresh, String response, ElasticConfig esService) {
+        return new WriteOptions(
+                refresh == null ? esService.getES_WRITE_REFRESH() : parseRefresh(refresh),
+                response == null ? esService.getES_WRITE_RESPONSE() : parseResponse(response));
+    }
+
+    /**
+     * @param value true|wait_for|false
+     * @return the elastic refresh policy
+     * @throws IllegalArgumentException if the value is not a refresh policy
+     */
+    public static Refresh parseRefresh(String value) {
+        for (Refresh refresh : Refresh.values()) {
+            if (refresh.jsonValue().equalsIgnoreCase(value.trim())) {
+                return refresh;
+            }
+        }
+        throw new IllegalArgumentException(value);
+    }
+
+    /**
+     * @param value full|summary|none
+     * @return the response mode
+     * @throws IllegalArgumentException if the value is not a response mode
+     */
+    public static ResponseMode parseResponse(String value) {
+        return ResponseMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
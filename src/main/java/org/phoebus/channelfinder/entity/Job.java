@@ -0,0 +1,207 @@
+package org.phoebus.channelfinder.entity;
+
+/**
+ * The status of a long running operation run in the background, as returned by the jobs resource.
+ * <p>
+ * The times are in milliseconds since the epoch, the rate in documents per second and the eta in seconds.
+ * The total, rate and eta are -1 while they are unknown.
+ */
+public class Job {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isDone() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private String id;
+    private String type;
+    private String description;
+    private String owner;
+    private String instance;
+    private State state = State.QUEUED;
+    private long created;
+    private long started;
+    private long finished;
+    private long total = -1;
+    private long scanned;
+    private long modified;
+    private double rate = -1;
+    private long eta = -1;
+    private String error;
+
+    /**
+     * Creates a new instance of Job.
+     */
+    public Job() {
+    }
+
+    /**
+     * Creates a new queued Job.
+     *
+     * @param id          job id
+     * @param type        the kind of operation
+     * @param description what the operation is applied to
+     * @param owner       the user who submitted the job
+     * @param created     submission time
+     */
+    public Job(String id, String type, String description, String owner, long created) {
+        this.id = id;
+        this.type = type;
+        this.description = description;
+        this.owner = owner;
+        this.created = created;
+    }
+
+    /**
+     * @return a copy of this job
+     */
+    public Job copy() {
+        Job copy = new Job(id, type, description, owner, created);
+        copy.instance = instance;
+        copy.state = state;
+        copy.started = started;
+        copy.finished = finished;
+        copy.total = total;
+        copy.scanned = scanned;
+        copy.modified = modified;
+        copy.rate = rate;
+        copy.eta = eta;
+        copy.error = error;
+        return copy;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public String getInstance() {
+        return instance;
+    }
+
+    public void setInstance(String instance) {
+        this.instance = instance;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    public void setStarted(long started) {
+        this.started = started;
+    }
+
+    public long getFinished() {
+        return finished;
+    }
+
+    public void setFinished(long finished) {
+        this.finished = finished;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getScanned() {
+        return scanned;
+    }
+
+    public void setScanned(long scanned) {
+        this.scanned = scanned;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public void setModified(long modified) {
+        this.modified = modified;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public long getEta() {
+        return eta;
+    }
+
+    public void setEta(long eta) {
+        this.eta = eta;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "Job{" +
+                "id='" + id + '\'' +
+                ", type='" + type + '\'' +
+                ", description='" + description + '\'' +
+                ", state=" + state +
+                ", scanned=" + scanned +
+                ", modified=" + modified +
+                '}';
+    }
+}
@@ -0,0 +1,12 @@
+package org.phoebus.channelfinder.entity;
+
+import java.util.Map;
+
+/**
+ * The outcome of a bulk write, returned instead of the written channels when the client asks for a summary.
+ *
+ * @param count    the number of channels written
+ * @param failures the reason each of the channels which could not be written failed, by channel name
+ */
+public record WriteSummary(long count, Map<String, String> failures) {
+}
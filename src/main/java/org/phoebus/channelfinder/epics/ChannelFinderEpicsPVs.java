@@ -0,0 +1,185 @@
+package org.phoebus.channelfinder.epics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.epics.pva.data.PVALong;
+import org.epics.pva.data.PVAStructure;
+import org.epics.pva.server.ServerPV;
+import org.phoebus.channelfinder.ChannelRepository;
+import org.phoebus.channelfinder.MetadataCache;
+import org.phoebus.channelfinder.WriteCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes the channel counts and a change counter as NTScalar pvs on the pva server of the
+ * {@link ChannelFinderEpicsService}, so clients monitor them instead of polling the service.
+ * <p>
+ * With the default epics.pvs.prefix of cfService: the pvs are
+ * <ul>
+ * <li>cfService:channelCount, cfService:tagCount and cfService:propertyCount, the number of channels, tags and
+ * properties</li>
+ * <li>cfService:channelCount:tag:{tag} for each tag of metrics.tags</li>
+ * <li>cfService:channelCount:{property}:{value} for each property value of metrics.properties</li>
+ * <li>cfService:changes, the number of writes to the channel, tag and property indices made by this instance, see
+ * {@link WriteCounter}</li>
+ * </ul>
+ * <p>
+ * Every epics.pvs.update.period milliseconds the counts are read again if there were writes since the last update,
+ * or at the latest every epics.pvs.max.age milliseconds to follow the writes of other instances sharing the same
+ * indices. An update which failed is tried again on the next period. The channel counts are read with a single aggregation, see
+ * {@link ChannelRepository#countAll(List, List)}, and the numbers of tags and properties are taken from the
+ * {@link MetadataCache}. Only the pvs whose value changed are posted to their monitors.
+ */
+@Service
+public class ChannelFinderEpicsPVs {
+
+    private static final Logger logger = Logger.getLogger(ChannelFinderEpicsPVs.class.getName());
+
+    private static final String NT_SCALAR = "epics:nt/NTScalar:1.0";
+
+    @Autowired
+    ChannelFinderEpicsService epicsService;
+
+    @Autowired
+    ChannelRepository channelRepository;
+
+    @Autowired
+    MetadataCache metadataCache;
+
+    @Autowired
+    WriteCounter writeCounter;
+
+    @Value("${epics.pvs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${epics.pvs.prefix:cfService:}")
+    private String prefix;
+
+    @Value("${epics.pvs.max.age:60000}")
+    private long maxAge;
+
+    @Value("${metrics.tags}")
+    private String[] tags;
+
+    @Value("#{${metrics.properties:{{'pvStatus', 'Active'}, {'pvStatus', 'Inactive'}}}}")
+    private String[][] properties;
+
+    private final List<String> tagNames = new ArrayList<>();
+    private final List<String[]> propertyValues = new ArrayList<>();
+    private final Map<String, ServerPV> pvs = new HashMap<>();
+    private final Map<String, Long> values = new HashMap<>();
+
+    private long lastChanges = -1;
+    private long lastUpdate = 0;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        for (String tag : tags) {
+            if (!tag.isBlank()) {
+                tagNames.add(tag);
+            }
+        }
+        propertyValues.addAll(List.of(properties));
+
+        List<String> names = new ArrayList<>(List.of(changesPV(), channelCountPV(), tagCountPV(), propertyCountPV()));
+        tagNames.forEach(tag -> names.add(tagPV(tag)));
+        propertyValues.forEach(propertyValue -> names.add(propertyPV(propertyValue)));
+        for (String name : names) {
+            pvs.put(name, epicsService.server.createPV(name, scalar(name, 0)));
+        }
+        logger.log(Level.INFO, () -> "Publishing the pvs " + names);
+    }
+
+    @PreDestroy
+    void close() {
+        pvs.values().forEach(ServerPV::close);
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${epics.pvs.update.period:1000}")
+    void scheduledUpdate() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            update(System.currentTimeMillis());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to update the channelfinder pvs", e);
+        }
+    }
+
+    /**
+     * Post the change counter, and the counts which changed if there were changes or the counts are too old.
+     * The update is only recorded once all the counts were posted, so a failed update is tried again.
+     *
+     * @param now the current time
+     * @throws Exception if the counts could not be read or a pv could not be updated
+     */
+    synchronized void update(long now) throws Exception {
+        long changes = writeCounter.count();
+        post(changesPV(), changes);
+        if (changes == lastChanges && now - lastUpdate < maxAge) {
+            return;
+        }
+        ChannelRepository.ChannelCounts counts = channelRepository.countAll(tagNames, propertyValues);
+        post(channelCountPV(), counts.total());
+        post(tagCountPV(), metadataCache.tagCount());
+        post(propertyCountPV(), metadataCache.propertyCount());
+        for (int i = 0; i < tagNames.size(); i++) {
+            post(tagPV(tagNames.get(i)), counts.tags().get(i));
+        }
+        for (int i = 0; i < propertyValues.size(); i++) {
+            post(propertyPV(propertyValues.get(i)), counts.properties().get(i));
+        }
+        lastChanges = changes;
+        lastUpdate = now;
+    }
+
+    private void post(String name, long value) throws Exception {
+        Long previous = values.put(name, value);
+        if (previous == null || previous != value) {
+            pvs.get(name).update(scalar(name, value));
+        }
+    }
+
+    private String changesPV() {
+        return prefix + "changes";
+    }
+
+    private String channelCountPV() {
+        return prefix + "channelCount";
+    }
+
+    private String tagCountPV() {
+        return prefix + "tagCount";
+    }
+
+    private String propertyCountPV() {
+        return prefix + "propertyCount";
+    }
+
+    private String tagPV(String tag) {
+        return prefix + "channelCount:tag:" + tag;
+    }
+
+    private String propertyPV(String[] propertyValue) {
+        return prefix + "channelCount:" + propertyValue[0] + ":" + propertyValue[1];
+    }
+
+    private static PVAStructure scalar(String name, long value) {
+        return new PVAStructure(name, NT_SCALAR, new PVALong("value", false, value));
+    }
+}
@@ -1,27 +1,38 @@
 package org.phoebus.channelfinder.epics;
 
-import java.util.Arrays;
-import java.util.HashMap;
+import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
-import org.epics.pva.data.PVABoolArray;
-import org.epics.pva.data.PVAStringArray;
+import org.epics.pva.data.PVALong;
 import org.epics.pva.data.PVAStructure;
 import org.epics.pva.data.nt.MustBeArrayException;
 import org.epics.pva.data.nt.NotValueException;
-import org.epics.pva.data.nt.PVATable;
 import org.epics.pva.data.nt.PVAURI;
 import org.epics.pva.server.RPCService;
 import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Property;
+import org.phoebus.channelfinder.entity.Tag;
 import org.phoebus.channelfinder.ChannelRepository;
+import org.phoebus.channelfinder.MetadataCache;
+import org.phoebus.channelfinder.TextUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
@@ -29,6 +40,11 @@ import org.springframework.util.MultiValueMap;
 import org.epics.pva.server.PVAServer;
 import org.epics.pva.server.ServerPV;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 /**
  * A pva RPC service for channelfinder
  * <p>
@@ -39,6 +55,29 @@ import org.epics.pva.server.ServerPV;
  * Result:
  * <p>
  * The service returns the result as an NTTable pvStructure.
+ * <p>
+ * The _op query parameter selects a lighter operation:
+ * <ul>
+ * <li>query, the default, returns the matching channels with a column per property and tag</li>
+ * <li>count returns the number of matching channels as an NTScalar long</li>
+ * <li>names returns only the channelName column of the matching channels</li>
+ * <li>tags and properties return the name and owner columns of all the tags or properties</li>
+ * </ul>
+ * Any other operation is rejected as an invalid argument, like an invalid _size.
+ * <p>
+ * The channels are returned sorted by name. To page through a large result, request _size channels and pass the
+ * name of the last channel of each page as _search_after of the next request, the last page holds fewer than _size
+ * channels. The count operation gives the number of channels to expect.
+ * <p>
+ * The queries run on a pool of epics.rpc.threads threads instead of the threads of the pva server, at most
+ * epics.rpc.queue.size queries wait for a thread and further queries are rejected. A query not completed within
+ * epics.rpc.timeout milliseconds is interrupted and fails. A query returns at most epics.rpc.max.size channels,
+ * larger results are read in pages with _size and either _from or _search_after, the name of the last channel of
+ * the previous page.
+ * <p>
+ * The running and queued queries, the time the queries waited for a thread, their latency and the rejected
+ * queries are published as the cf.epics.rpc.active, cf.epics.rpc.queued, cf.epics.rpc.wait, cf.epics.rpc.latency
+ * and cf.epics.rpc.rejected metrics.
  * 
  * @author Kunal Shroff
  *
@@ -53,22 +92,73 @@ public class ChannelFinderEpicsService {
 
     public static final String COLUMN_CHANNEL_NAME = "channelName";
     public static final String COLUMN_OWNER = "owner";
+    public static final String COLUMN_NAME = "name";
+
+    public static final String OPERATION_QUERY = "query";
+    public static final String OPERATION_COUNT = "count";
+    public static final String OPERATION_NAMES = "names";
+    public static final String OPERATION_TAGS = "tags";
+    public static final String OPERATION_PROPERTIES = "properties";
+
+    private static final String NT_SCALAR = "epics:nt/NTScalar:1.0";
+
+    public static final String CF_EPICS_RPC_ACTIVE = "cf.epics.rpc.active";
+    public static final String CF_EPICS_RPC_QUEUED = "cf.epics.rpc.queued";
+    public static final String CF_EPICS_RPC_WAIT = "cf.epics.rpc.wait";
+    public static final String CF_EPICS_RPC_LATENCY = "cf.epics.rpc.latency";
+    public static final String CF_EPICS_RPC_REJECTED = "cf.epics.rpc.rejected";
 
     @Autowired
     ChannelRepository repository;
 
+    @Autowired
+    MetadataCache metadataCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${epics.rpc.threads:4}")
+    private int rpcThreads;
+
+    @Value("${epics.rpc.queue.size:100}")
+    private int rpcQueueSize;
+
+    @Value("${epics.rpc.timeout:30000}")
+    private long rpcTimeout;
+
+    @Value("${epics.rpc.max.size:10000}")
+    private int rpcMaxSize;
+
     PVAServer server;
     ServerPV serverPV;
 
+    private ThreadPoolExecutor executor;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
     @PostConstruct
     public void init() throws Exception {
 
         logger.log(Level.INFO, "Launching the epics rpc channelfinder service: " + SERVICE_DESC);
 
+        int threads = Math.max(1, rpcThreads);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, rpcQueueSize)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "epics-rpc-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder(CF_EPICS_RPC_ACTIVE, executor, ThreadPoolExecutor::getActiveCount)
+                .description("Number of " + SERVICE_DESC + " requests running")
+                .register(meterRegistry);
+        Gauge.builder(CF_EPICS_RPC_QUEUED, executor, e -> e.getQueue().size())
+                .description("Number of " + SERVICE_DESC + " requests waiting for a thread")
+                .register(meterRegistry);
+
         server = new PVAServer();
 
         logger.log(Level.INFO, SERVICE_DESC + " initializing...");
-        ChannelFinderServiceImpl service = new ChannelFinderServiceImpl(repository);
+        ChannelFinderServiceImpl service = new ChannelFinderServiceImpl();
         serverPV = server.createPV(SERVICE_DESC, service);
         logger.log(Level.INFO, SERVICE_DESC + " is operational.");
 
@@ -81,38 +171,85 @@ public class ChannelFinderEpicsService {
         logger.info("Shutting down service " + SERVICE_DESC);
         serverPV.close();
         server.close();
+        executor.shutdownNow();
         logger.info(SERVICE_DESC + " Shutdown complete.");
     }
 
-    private static class ChannelFinderServiceImpl implements RPCService {
-
+    private class ChannelFinderServiceImpl implements RPCService {
 
-        private final ChannelRepository repository;
+        private final Timer wait = Timer.builder(CF_EPICS_RPC_WAIT)
+                .description("Time the " + SERVICE_DESC + " requests waited for a thread")
+                .register(meterRegistry);
+        private final Timer latency = Timer.builder(CF_EPICS_RPC_LATENCY)
+                .description("Time taken to run the " + SERVICE_DESC + " requests")
+                .register(meterRegistry);
+        private final Counter queueFull = rejected("queue_full");
+        private final Counter timedOut = rejected("timeout");
 
-        public ChannelFinderServiceImpl(ChannelRepository repository) {
-            this.repository = repository;
+        public ChannelFinderServiceImpl() {
             logger.log(Level.INFO, "start");
         }
 
+        private Counter rejected(String reason) {
+            return Counter.builder(CF_EPICS_RPC_REJECTED)
+                    .description("Number of " + SERVICE_DESC + " requests rejected or timed out")
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Run the query on the rpc executor, waiting at most epics.rpc.timeout milliseconds for its result
+         */
         @Override
         public PVAStructure call(PVAStructure args) throws Exception {
             logger.log(Level.FINE, args::toString);
-            HandlerQuery query = new HandlerQuery(args, repository);
-            return query.run();
+            long queued = System.nanoTime();
+            Future<PVAStructure> future;
+            try {
+                future = executor.submit(() -> {
+                    wait.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+                    return latency.recordCallable(() -> new HandlerQuery(args, repository, metadataCache, rpcMaxSize).run());
+                });
+            } catch (RejectedExecutionException e) {
+                queueFull.increment();
+                String message = MessageFormat.format(TextUtil.RPC_QUEUE_FULL, SERVICE_DESC);
+                logger.log(Level.WARNING, message, e);
+                throw new IllegalStateException(message);
+            }
+            try {
+                return future.get(rpcTimeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timedOut.increment();
+                String message = MessageFormat.format(TextUtil.RPC_TIMEOUT, SERVICE_DESC, rpcTimeout);
+                logger.log(Level.WARNING, message);
+                throw new TimeoutException(message);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
         }
 
         private static class HandlerQuery  {
 
             private final PVAStructure args;
             private final ChannelRepository channelRepository;
+            private final MetadataCache metadataCache;
+            private final int maxSize;
 
-            public HandlerQuery(PVAStructure args, ChannelRepository channelRepository) {
+            public HandlerQuery(PVAStructure args, ChannelRepository channelRepository, MetadataCache metadataCache,
+                                int maxSize) {
                 this.args = args;
                 this.channelRepository = channelRepository;
+                this.metadataCache = metadataCache;
+                this.maxSize = maxSize;
             }
 
             public PVAStructure run() throws MustBeArrayException {
 
+                String operation = OPERATION_QUERY;
                 MultiValueMap<String, String> searchParameters = new LinkedMultiValueMap<>();
                 PVAURI uri = PVAURI.fromStructure(args);
                 Map<String, String> query;
@@ -133,11 +270,17 @@ public class ChannelFinderEpicsService {
                             searchParameters.put("~tag", List.of(value));
                             break;
                         case "_size":
-                            searchParameters.put("~size", List.of(value));
+                            searchParameters.put("~size", List.of(String.valueOf(checkSize(value))));
                             break;
                         case "_from":
                             searchParameters.put("~from", List.of(value));
                             break;
+                        case "_search_after":
+                            searchParameters.put("~search_after", List.of(value));
+                            break;
+                        case "_op":
+                            operation = value;
+                            break;
                         default:
                             searchParameters.put(parameter, List.of(value));
                             break;
@@ -145,51 +288,97 @@ public class ChannelFinderEpicsService {
                     }
                 }
 
-                List<Channel> result = channelRepository.search(searchParameters).channels();
-
-                final Map<String, List<String>> channelTable = new HashMap<>();
-                final Map<String, List<String>> channelPropertyTable = new HashMap<>();
-                final Map<String, boolean[]> channelTagTable = new HashMap<>();
-                channelTable.put(COLUMN_CHANNEL_NAME, Arrays.asList(new String[result.size()]));
-                channelTable.put(COLUMN_OWNER, Arrays.asList(new String[result.size()]));
-
-                AtomicInteger counter = new AtomicInteger(0);
+                switch (operation) {
+                case OPERATION_QUERY:
+                    return query(searchParameters);
+                case OPERATION_COUNT:
+                    return count(searchParameters);
+                case OPERATION_NAMES:
+                    return names(searchParameters);
+                case OPERATION_TAGS:
+                    return catalog(metadataCache.getTags(), Tag::getName, Tag::getOwner);
+                case OPERATION_PROPERTIES:
+                    return catalog(metadataCache.getProperties(), Property::getName, Property::getOwner);
+                default:
+                    throw new IllegalArgumentException(MessageFormat.format(TextUtil.RPC_UNKNOWN_OPERATION, operation));
+                }
+            }
 
-                result.forEach(ch -> {
+            private PVAStructure query(MultiValueMap<String, String> searchParameters) throws MustBeArrayException {
+                searchParameters.putIfAbsent("~size", List.of(String.valueOf(maxSize)));
+
+                ChannelTableBuilder table;
+                if (searchParameters.containsKey("~from")) {
+                    List<Channel> result = channelRepository.search(searchParameters).channels();
+                    table = new ChannelTableBuilder(result.size()).add(result);
+                } else {
+                    // stream the pages into the table instead of holding the whole result
+                    ChannelTableBuilder pages = new ChannelTableBuilder(0);
+                    channelRepository.searchAll(searchParameters, pages::add);
+                    table = pages;
+                }
 
-                    int index = counter.getAndIncrement();
+                logger.log(Level.FINE, () -> "Returning " + table.size() + " channels");
+                return table.build(SERVICE_DESC);
+            }
 
-                    channelTable.get(COLUMN_CHANNEL_NAME).set(index, ch.getName());
-                    channelTable.get(COLUMN_OWNER).set(index, ch.getOwner());
+            /**
+             * @return an NTScalar holding the number of matching channels, the paging parameters are ignored
+             */
+            private PVAStructure count(MultiValueMap<String, String> searchParameters) {
+                searchParameters.remove("~size");
+                searchParameters.remove("~from");
+                searchParameters.remove("~search_after");
+                return new PVAStructure(SERVICE_DESC, NT_SCALAR,
+                        new PVALong("value", false, channelRepository.count(searchParameters)));
+            }
 
-                    ch.getTags().forEach(t -> {
-                        if (!channelTagTable.containsKey(t.getName())) {
-                            channelTagTable.put(t.getName(), new boolean[result.size()]);
-                        }
-                        channelTagTable.get(t.getName())[index] = true;
-                    });
+            /**
+             * @return an NTTable with the single channelName column, only the names are read from elastic
+             */
+            private PVAStructure names(MultiValueMap<String, String> searchParameters) throws MustBeArrayException {
+                searchParameters.putIfAbsent("~size", List.of(String.valueOf(maxSize)));
+
+                List<String> names = new ArrayList<>();
+                if (searchParameters.containsKey("~from")) {
+                    channelRepository.search(searchParameters).channels().forEach(channel -> names.add(channel.getName()));
+                } else {
+                    channelRepository.searchAll(searchParameters, List.of("name"),
+                            channels -> channels.forEach(channel -> names.add(channel.getName())));
+                }
+                return ChannelTableBuilder.stringTable(SERVICE_DESC, List.of(COLUMN_CHANNEL_NAME),
+                        names.toArray(String[]::new));
+            }
 
-                    ch.getProperties().forEach(prop -> {
-                        if (!channelPropertyTable.containsKey(prop.getName())) {
-                            channelPropertyTable.put(prop.getName(), Arrays.asList(new String[result.size()]));
-                        }
-                        channelPropertyTable.get(prop.getName()).set(index, prop.getValue());
-                    });
+            /**
+             * @return an NTTable with the name and owner columns of the tags or properties
+             */
+            private <T> PVAStructure catalog(Iterable<T> entries, Function<T, String> name, Function<T, String> owner)
+                    throws MustBeArrayException {
+                List<String> names = new ArrayList<>();
+                List<String> owners = new ArrayList<>();
+                entries.forEach(entry -> {
+                    names.add(name.apply(entry));
+                    owners.add(owner.apply(entry));
                 });
-                PVATable.PVATableBuilder ntTableBuilder = PVATable.PVATableBuilder.aPVATable().name(SERVICE_DESC);
-
-                channelTable.keySet().forEach(name ->
-                    ntTableBuilder.addColumn(new PVAStringArray(name, channelTable.get(name).toArray(String[]::new)))
-                );
-                channelPropertyTable.keySet().forEach(name ->
-                        ntTableBuilder.addColumn(new PVAStringArray(name, channelPropertyTable.get(name).toArray(String[]::new)))
-                );
-                channelTagTable.keySet().forEach(name ->
-                        ntTableBuilder.addColumn(new PVABoolArray(name, channelTagTable.get(name)))
-                );
-
-                logger.log(Level.FINE, ntTableBuilder::toString);
-                return ntTableBuilder.build();
+                return ChannelTableBuilder.stringTable(SERVICE_DESC, List.of(COLUMN_NAME, COLUMN_OWNER),
+                        names.toArray(String[]::new), owners.toArray(String[]::new));
+            }
+
+            private int checkSize(String value) {
+                int size;
+                try {
+                    size = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(MessageFormat.format(TextUtil.RPC_INVALID_SIZE, value));
+                }
+                if (size <= 0) {
+                    throw new IllegalArgumentException(MessageFormat.format(TextUtil.RPC_INVALID_SIZE, value));
+                }
+                if (size > maxSize) {
+                    throw new IllegalArgumentException(MessageFormat.format(TextUtil.RPC_SIZE_EXCEEDED, size, maxSize));
+                }
+                return size;
             }
         }
 
@@ -0,0 +1,150 @@
+package org.phoebus.channelfinder.epics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.epics.pva.data.PVABoolArray;
+import org.epics.pva.data.PVAStringArray;
+import org.epics.pva.data.PVAStructure;
+import org.epics.pva.data.nt.MustBeArrayException;
+import org.epics.pva.data.nt.PVATable;
+import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Property;
+import org.phoebus.channelfinder.entity.Tag;
+
+/**
+ * Builds the NTTable returned by the pva RPC service one column array per field, with a row per channel.
+ * <p>
+ * The channel name and owner columns and a column per property are string arrays, the property columns hold null
+ * for the channels without the property. A column per tag is a boolean array. The column of a tag or property is
+ * looked up once per channel and its array is filled in place, the arrays grow as pages of channels are added and
+ * are handed to the table without being copied when the number of channels was known up front.
+ */
+final class ChannelTableBuilder {
+
+    private int rows = 0;
+    private int capacity;
+    private String[] names;
+    private String[] owners;
+
+    private final Map<String, Integer> propertyColumns = new HashMap<>();
+    private final List<String> propertyNames = new ArrayList<>();
+    private final List<String[]> propertyValues = new ArrayList<>();
+
+    private final Map<String, Integer> tagColumns = new HashMap<>();
+    private final List<String> tagNames = new ArrayList<>();
+    private final List<boolean[]> tagValues = new ArrayList<>();
+
+    /**
+     * @param capacity the expected number of channels
+     */
+    ChannelTableBuilder(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.names = new String[this.capacity];
+        this.owners = new String[this.capacity];
+    }
+
+    /**
+     * Add a row for each channel of a page
+     *
+     * @param channels the channels
+     * @return this builder
+     */
+    ChannelTableBuilder add(List<Channel> channels) {
+        ensureCapacity(rows + channels.size());
+        for (Channel channel : channels) {
+            int row = rows++;
+            names[row] = channel.getName();
+            owners[row] = channel.getOwner();
+            for (Property property : channel.getProperties()) {
+                propertyValues.get(propertyColumn(property.getName()))[row] = property.getValue();
+            }
+            for (Tag tag : channel.getTags()) {
+                tagValues.get(tagColumn(tag.getName()))[row] = true;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of channels added
+     */
+    int size() {
+        return rows;
+    }
+
+    /**
+     * @param name the name of the table
+     * @return the table of the channels added
+     * @throws MustBeArrayException if a column is not an array
+     */
+    PVAStructure build(String name) throws MustBeArrayException {
+        PVATable.PVATableBuilder table = PVATable.PVATableBuilder.aPVATable().name(name);
+        table.addColumn(new PVAStringArray(ChannelFinderEpicsService.COLUMN_CHANNEL_NAME, trim(names)));
+        table.addColumn(new PVAStringArray(ChannelFinderEpicsService.COLUMN_OWNER, trim(owners)));
+        for (int column = 0; column < propertyNames.size(); column++) {
+            table.addColumn(new PVAStringArray(propertyNames.get(column), trim(propertyValues.get(column))));
+        }
+        for (int column = 0; column < tagNames.size(); column++) {
+            boolean[] values = tagValues.get(column);
+            table.addColumn(new PVABoolArray(tagNames.get(column),
+                    values.length == rows ? values : Arrays.copyOf(values, rows)));
+        }
+        return table.build();
+    }
+
+    /**
+     * @param name    the name of the table
+     * @param labels  the names of the columns
+     * @param columns the values of the columns, all of the same length
+     * @return a table of string columns
+     * @throws MustBeArrayException if a column is not an array
+     */
+    static PVAStructure stringTable(String name, List<String> labels, String[]... columns) throws MustBeArrayException {
+        PVATable.PVATableBuilder table = PVATable.PVATableBuilder.aPVATable().name(name);
+        for (int column = 0; column < columns.length; column++) {
+            table.addColumn(new PVAStringArray(labels.get(column), columns[column]));
+        }
+        return table.build();
+    }
+
+    private int propertyColumn(String property) {
+        Integer column = propertyColumns.get(property);
+        if (column == null) {
+            column = propertyNames.size();
+            propertyColumns.put(property, column);
+            propertyNames.add(property);
+            propertyValues.add(new String[capacity]);
+        }
+        return column;
+    }
+
+    private int tagColumn(String tag) {
+        Integer column = tagColumns.get(tag);
+        if (column == null) {
+            column = tagNames.size();
+            tagColumns.put(tag, column);
+            tagNames.add(tag);
+            tagValues.add(new boolean[capacity]);
+        }
+        return column;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+        capacity = Math.max(required, capacity * 2);
+        names = Arrays.copyOf(names, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+        propertyValues.replaceAll(values -> Arrays.copyOf(values, capacity));
+        tagValues.replaceAll(values -> Arrays.copyOf(values, capacity));
+    }
+
+    private String[] trim(String[] values) {
+        return values.length == rows ? values : Arrays.copyOf(values, rows);
+    }
+}
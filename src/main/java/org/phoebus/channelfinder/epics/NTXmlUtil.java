@@ -10,15 +10,25 @@ import org.phoebus.channelfinder.entity.Property;
 import org.phoebus.channelfinder.entity.Tag;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
 
 import static org.phoebus.channelfinder.epics.ChannelFinderEpicsService.COLUMN_CHANNEL_NAME;
 import static org.phoebus.channelfinder.epics.ChannelFinderEpicsService.COLUMN_OWNER;
 
+/**
+ * Converts the NTTable returned by the channelfinder v4 service to channels.
+ * <p>
+ * The conversion keeps no state outside of the table it reads, so results can be converted concurrently. The
+ * columns are read once, the tag and property lists of each channel are sized from the row before they are
+ * filled, and all the tags and properties of a column share the column label as their name.
+ */
 public class NTXmlUtil {
+
+    private NTXmlUtil() {
+    }
+
     /**
      * A helper method to convert the result of the channelfinder v4 service
      * to a list of {@link Channel}
@@ -26,48 +36,110 @@ public class NTXmlUtil {
      * @param result - NTTable returned by the channelfinder service
      * @return list of channels
      */
-    public static synchronized List<Channel> parse(PVAStructure result) {
-        PVATable table = PVATable.fromStructure(result);
+    public static List<Channel> parse(PVAStructure result) {
+        Columns columns = new Columns(result);
+        List<Channel> channels = new ArrayList<>(columns.rows);
+        for (int row = 0; row < columns.rows; row++) {
+            channels.add(columns.channel(row));
+        }
+        return channels;
+    }
 
-        List<String> names = Arrays.asList(table.getLabels().get());
-        List<Channel> channels = new ArrayList<>();
+    /**
+     * Convert the result of the channelfinder v4 service one channel at a time, so the caller can process a large
+     * result without holding all of its channels
+     *
+     * @param result - NTTable returned by the channelfinder service
+     * @return an iterator creating each channel of the table when it is reached
+     */
+    public static Iterator<Channel> iterator(PVAStructure result) {
+        Columns columns = new Columns(result);
+        return new Iterator<>() {
+            private int row = 0;
 
-        if (names.contains(COLUMN_CHANNEL_NAME)) {
-            PVAStringArray array = table.getColumn(COLUMN_CHANNEL_NAME);
-            Arrays.stream(array.get()).forEach(c -> channels.add(new Channel(c)));
-        }
+            @Override
+            public boolean hasNext() {
+                return row < columns.rows;
+            }
 
-        if (names.contains(COLUMN_OWNER)) {
-            PVAStringArray array = table.getColumn(COLUMN_OWNER);
-            List<Optional<String>> owners =
-                    Arrays.stream(array.get()).map(Optional::ofNullable).collect(Collectors.toList());
-            for (int i = 0; i < channels.size(); i++) {
-                if (owners.get(i).isPresent())
-                    channels.get(i).setOwner(owners.get(i).get());
+            @Override
+            public Channel next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return columns.channel(row++);
             }
+        };
+    }
+
+    /**
+     * The columns of a result table, with the property and tag columns split once for all the rows
+     */
+    private static final class Columns {
+
+        private final int rows;
+        private final String[] names;
+        private final String[] owners;
+        private final List<String> propertyNames = new ArrayList<>();
+        private final List<String[]> propertyValues = new ArrayList<>();
+        private final List<String> tagNames = new ArrayList<>();
+        private final List<boolean[]> tagValues = new ArrayList<>();
+
+        private Columns(PVAStructure result) {
+            PVATable table = PVATable.fromStructure(result);
+            String[] labels = table.getLabels().get();
+
+            String[] channelNames = null;
+            String[] channelOwners = null;
+            for (String label : labels) {
+                PVAData column = table.getColumn(label);
+                if (label.equals(COLUMN_CHANNEL_NAME)) {
+                    channelNames = ((PVAStringArray) column).get();
+                } else if (label.equals(COLUMN_OWNER)) {
+                    channelOwners = ((PVAStringArray) column).get();
+                } else if (column instanceof PVABoolArray tags) {
+                    tagNames.add(label);
+                    tagValues.add(tags.get());
+                } else if (column instanceof PVAStringArray properties) {
+                    propertyNames.add(label);
+                    propertyValues.add(properties.get());
+                }
+            }
+            this.names = channelNames == null ? new String[0] : channelNames;
+            this.owners = channelOwners;
+            this.rows = this.names.length;
         }
 
-        for (String name : names) {
-            if (!name.equals(COLUMN_CHANNEL_NAME) && !name.equals(COLUMN_OWNER)) {
-                PVAData pvaData = table.getColumn(name);
+        private Channel channel(int row) {
+            int propertyCount = 0;
+            for (String[] values : propertyValues) {
+                if (row < values.length && values[row] != null) {
+                    propertyCount++;
+                }
+            }
+            int tagCount = 0;
+            for (boolean[] values : tagValues) {
+                if (row < values.length && values[row]) {
+                    tagCount++;
+                }
+            }
 
-                if (pvaData.getClass().equals(PVABoolArray.class)) {
-                    boolean[] array = ((PVABoolArray) pvaData).get();
-                    for (int i = 0; i < array.length; i++) {
-                        if (array[i]) {
-                            channels.get(i).getTags().add(new Tag(name));
-                        }
-                    }
-                } else if (pvaData.getClass().equals(PVAStringArray.class)) {
-                    String[] array = ((PVAStringArray) pvaData).get();
-                    for (int i = 0; i < array.length; i++) {
-                        if (array[i] != null) {
-                            channels.get(i).getProperties().add(new Property(name, null, array[i]));
-                        }
-                    }
+            List<Property> properties = new ArrayList<>(propertyCount);
+            for (int column = 0; column < propertyValues.size() && properties.size() < propertyCount; column++) {
+                String[] values = propertyValues.get(column);
+                if (row < values.length && values[row] != null) {
+                    properties.add(new Property(propertyNames.get(column), null, values[row]));
                 }
             }
+            List<Tag> tags = new ArrayList<>(tagCount);
+            for (int column = 0; column < tagValues.size() && tags.size() < tagCount; column++) {
+                boolean[] values = tagValues.get(column);
+                if (row < values.length && values[row]) {
+                    tags.add(new Tag(tagNames.get(column)));
+                }
+            }
+            String owner = owners != null && row < owners.length ? owners[row] : null;
+            return new Channel(names[row], owner, properties, tags);
         }
-        return channels;
     }
 }
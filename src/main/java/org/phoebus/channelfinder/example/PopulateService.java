@@ -10,6 +10,7 @@ import co.elastic.clients.elasticsearch.core.bulk.IndexOperation;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.phoebus.channelfinder.ElasticConfig;
+import org.phoebus.channelfinder.MetadataCache;
 import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Property;
 import org.phoebus.channelfinder.entity.Tag;
@@ -110,6 +111,9 @@ public class PopulateService {
     @Qualifier("indexClient")
     ElasticsearchClient client;
 
+    @Autowired
+    MetadataCache metadataCache;
+
 
     public static final ObjectMapper mapper = new ObjectMapper();
 
@@ -181,6 +185,7 @@ public class PopulateService {
         } catch (IOException e) {
             logger.log(Level.WARNING, e.getMessage(), e);
         }
+        metadataCache.refresh();
     }
 
     public synchronized void createDB(int cells) {
@@ -215,6 +220,7 @@ public class PopulateService {
         br.refresh(Refresh.True);
 
         checkBulkResponse(br);
+        metadataCache.refresh();
         logger.log(Level.INFO, "completed populating");
     }
 
@@ -324,6 +330,7 @@ public class PopulateService {
         } catch (IOException ex) {
             logger.log(Level.WARNING, "Failed to initialize property ", ex);
         }
+        metadataCache.refresh();
     }
     private Collection<Channel> insertSRCell(String cell) {
         String loc = "storage ring";
@@ -5,14 +5,23 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Property;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 import java.net.URI;
 import java.time.Duration;
@@ -21,9 +30,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -36,6 +49,17 @@ import static com.fasterxml.jackson.annotation.JsonInclude.Include;
  * monitor the sampling rate defined in seconds
  * <p>
  * e.g. archive=monitor@1.0
+ * <p>
+ * The policy list of each archiver is cached for aa.policy.cache.ttl milliseconds. The archive status of the pvs
+ * is cached for aa.status.cache.ttl milliseconds and updated with the archive, pause and resume requests sent by
+ * this processor, so the pvs with a cached status are configured without asking the archiver for their status.
+ * <p>
+ * The requests to the archivers are sent without blocking, the pv lists are split in chunks of aa.chunk.size pvs
+ * sent in the request body, and the failed requests are retried aa.retries times with an exponential backoff.
+ * <p>
+ * A request still failing after its retries only skips its pvs on that archiver, the other archivers are still
+ * configured. The failures are logged and counted in the cf.processor.aa.failures metric tagged with the archiver
+ * url and the request.
  */
 @Configuration
 public class AAChannelProcessor implements ChannelProcessor {
@@ -44,12 +68,17 @@ public class AAChannelProcessor implements ChannelProcessor {
     private static final String MGMT_RESOURCE = "/mgmt/bpl";
     private static final String POLICY_RESOURCE = MGMT_RESOURCE + "/getPolicyList";
     private static final String PV_STATUS_RESOURCE = MGMT_RESOURCE + "/getPVStatus";
+    public static final String CF_PROCESSOR_AA_FAILURES = "cf.processor.aa.failures";
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final String PV_STATUS_PROPERTY_NAME = "pvStatus"; // Matches in recsync
     private static final String PV_STATUS_INACTIVE = "Inactive";
     public static final String PV_STATUS_ACTIVE = "Active";
+    private static final String BEING_ARCHIVED = "Being archived";
+    private static final String PAUSED = "Paused";
     private final WebClient client = WebClient.create();
+    @Autowired
+    private MeterRegistry meterRegistry;
     @Value("${aa.enabled:true}")
     private boolean aaEnabled;
     @Value("#{${aa.urls:{'default': 'http://localhost:17665'}}}")
@@ -64,6 +93,39 @@ public class AAChannelProcessor implements ChannelProcessor {
     private String archiverPropertyName;
     @Value("${aa.auto_pause:pvStatus,archive}")
     private List<String> autoPauseOptions;
+    @Value("${aa.policy.cache.ttl:300000}")
+    private long policyCacheTtl;
+    @Value("${aa.status.cache.ttl:300000}")
+    private long statusCacheTtl;
+    @Value("${aa.status.cache.size:100000}")
+    private int statusCacheSize;
+    @Value("${aa.chunk.size:1000}")
+    private int chunkSize;
+    @Value("${aa.parallelism:4}")
+    private int parallelism;
+    @Value("${aa.retries:3}")
+    private int retries;
+    @Value("${aa.retry.backoff:500}")
+    private long retryBackoff;
+
+    private record Cached<T>(T value, long expires) {
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expires;
+        }
+    }
+
+    private record StatusKey(String archiverURL, String pv) {
+    }
+
+    // policy lists by archiver url
+    private final Map<String, Cached<List<String>>> policyCache = new ConcurrentHashMap<>();
+    // archive status by archiver url and pv, least recently used first
+    private final Map<StatusKey, Cached<String>> statusCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StatusKey, Cached<String>> eldest) {
+            return size() > statusCacheSize;
+        }
+    };
 
     @Override
     public boolean enabled() {
@@ -80,11 +142,28 @@ public class AAChannelProcessor implements ChannelProcessor {
         return "AAChannelProcessor: ProcessProperties " + processorProperties;
     }
 
+    /**
+     * Only the archive, archiver and, when pausing on it, pvStatus properties change the archiver configuration
+     *
+     * @return the properties read by the processor
+     */
+    @Override
+    public Set<String> watchedProperties() {
+        Set<String> properties = new HashSet<>(List.of(archivePropertyName, archiverPropertyName));
+        if (autoPauseOptions.contains(PV_STATUS_PROPERTY_NAME)) {
+            properties.add(PV_STATUS_PROPERTY_NAME);
+        }
+        return properties;
+    }
+
     /**
      * Processes a list of channels through the archiver workflow.
      * First the status of each pv is checked against the archiver.
      * If the pv is not being archived and is not paused then the pv will be submitted to be archived.
      * If the pvStatus auto pause is set, then the pv will be auto pause resumed as well.
+     * <p>
+     * The archivers and the chunks of aa.chunk.size pvs are handled concurrently, with at most aa.parallelism
+     * requests in flight for each step.
      *
      * @param channels List of channels
      * @return Return number of channels processed
@@ -92,15 +171,70 @@ public class AAChannelProcessor implements ChannelProcessor {
      */
     @Override
     public long process(List<Channel> channels) throws JsonProcessingException {
+        return process(channels, chunkSize, true);
+    }
+
+    /**
+     * Compare the channels with the pvs held by the archivers and archive, pause or resume the pvs which drifted.
+     * Unlike {@link #process(List)} the archive status of every pv is asked to the archivers, the cached status
+     * is ignored and replaced by the status returned.
+     *
+     * @param channels        List of channels
+     * @param statusChunkSize the number of pvs in each status request
+     * @return the number of pvs archived, paused or resumed
+     */
+    long reconcile(List<Channel> channels, int statusChunkSize) {
+        return process(channels, statusChunkSize, false);
+    }
+
+    /**
+     * @return the search parameters matching the channels this processor acts on, all the channels when pausing
+     * the channels without the archive property
+     */
+    MultiValueMap<String, String> reconcileQuery() {
+        MultiValueMap<String, String> searchParameters = new LinkedMultiValueMap<>();
+        if (autoPauseOptions.contains(archivePropertyName)) {
+            searchParameters.add("~name", "*");
+        } else {
+            searchParameters.add(archivePropertyName, "*");
+        }
+        return searchParameters;
+    }
+
+    private long process(List<Channel> channels, int statusChunkSize, boolean useCachedStatus) {
         if (channels.isEmpty()) {
             return 0;
         }
 
+        Long count = getAAsPolicies(aaURLs)
+                .flatMap(policyLists -> {
+                    Map<String, List<ArchivePV>> aaArchivePVS = getArchivePVs(channels, policyLists);
+                    return Flux.fromIterable(aaArchivePVS.entrySet())
+                            .flatMap(e -> {
+                                String archiverURL = aaURLs.get(e.getKey());
+                                Map<String, ArchivePV> archivePVSList = e.getValue().stream()
+                                        .collect(Collectors.toMap(archivePV -> archivePV.pv, archivePV -> archivePV));
+                                return getArchiveActions(archivePVSList, archiverURL, statusChunkSize, useCachedStatus)
+                                        .flatMap(archiveActionArchivePVMap -> configureAA(archiveActionArchivePVMap, archiverURL))
+                                        .onErrorResume(error -> {
+                                            // skip this archiver, the others are still configured
+                                            failed("configure", archiverURL, error);
+                                            return Mono.just(0L);
+                                        });
+                            }, parallelism)
+                            .reduce(0L, Long::sum);
+                })
+                .block();
+        long finalCount = count == null ? 0 : count;
+        logger.log(Level.INFO, () -> String.format("Configured %s channels.", finalCount));
+        return finalCount;
+    }
+
+    private Map<String, List<ArchivePV>> getArchivePVs(List<Channel> channels, Map<String, List<String>> policyLists) {
         Map<String, List<ArchivePV>> aaArchivePVS = new HashMap<>(); // AA identifier, ArchivePV
         for (String alias : aaURLs.keySet()) {
             aaArchivePVS.put(alias, new ArrayList<>());
         }
-        Map<String, List<String>> policyLists = getAAsPolicies(aaURLs);
 
         logger.log(Level.INFO, "Get channelfinder properties for aa processor.");
         channels.forEach(channel -> {
@@ -119,18 +253,7 @@ public class AAChannelProcessor implements ChannelProcessor {
                         .add(createArchivePV(List.of(), channel, "", PV_STATUS_INACTIVE)));
             }
         });
-        long count = 0;
-        for (Map.Entry<String, List<ArchivePV>> e : aaArchivePVS.entrySet()) {
-            String archiverURL = aaURLs.get(e.getKey());
-            Map<String, ArchivePV> archivePVSList =
-                    e.getValue().stream().collect(Collectors.toMap(archivePV -> archivePV.pv, archivePV -> archivePV));
-            Map<ArchiveAction, List<ArchivePV>> archiveActionArchivePVMap =
-                    getArchiveActions(archivePVSList, archiverURL);
-            count += configureAA(archiveActionArchivePVMap, archiverURL);
-        }
-        long finalCount = count;
-        logger.log(Level.INFO, () -> String.format("Configured %s channels.", finalCount));
-        return finalCount;
+        return aaArchivePVS;
     }
 
     private void addChannelChange(Channel channel, Map<String, List<ArchivePV>> aaArchivePVS, Map<String, List<String>> policyLists, Optional<Property> archiveProperty) {
@@ -155,12 +278,12 @@ public class AAChannelProcessor implements ChannelProcessor {
     }
 
     private ArchiveAction pickArchiveAction(String archiveStatus, String pvStatus) {
-        if (archiveStatus.equals("Being archived") && (pvStatus.equals(PV_STATUS_INACTIVE))) {
+        if (archiveStatus.equals(BEING_ARCHIVED) && (pvStatus.equals(PV_STATUS_INACTIVE))) {
             return ArchiveAction.PAUSE;
-        } else if (archiveStatus.equals("Paused") && (pvStatus.equals(PV_STATUS_ACTIVE))) {
+        } else if (archiveStatus.equals(PAUSED) && (pvStatus.equals(PV_STATUS_ACTIVE))) {
             return ArchiveAction.RESUME;
-        } else if (!archiveStatus.equals("Being archived")
-                && !archiveStatus.equals("Paused")
+        } else if (!archiveStatus.equals(BEING_ARCHIVED)
+                && !archiveStatus.equals(PAUSED)
                 && pvStatus.equals(PV_STATUS_ACTIVE)) { // If archive status anything else
             return ArchiveAction.ARCHIVE;
         }
@@ -168,10 +291,10 @@ public class AAChannelProcessor implements ChannelProcessor {
         return ArchiveAction.NONE;
     }
 
-    private Map<ArchiveAction, List<ArchivePV>> getArchiveActions(
-            Map<String, ArchivePV> archivePVS, String archiverURL) {
+    private Mono<Map<ArchiveAction, List<ArchivePV>>> getArchiveActions(
+            Map<String, ArchivePV> archivePVS, String archiverURL, int statusChunkSize, boolean useCachedStatus) {
         if (StringUtils.isEmpty(archiverURL)) {
-            return Map.of();
+            return Mono.just(Map.of());
         }
 
         logger.log(Level.INFO, () -> String.format("Get archiver status in archiver %s", archiverURL));
@@ -180,43 +303,56 @@ public class AAChannelProcessor implements ChannelProcessor {
         Arrays.stream(ArchiveAction.values()).forEach(archiveAction -> result.put(archiveAction, new ArrayList<>()));
         // Don't request to archive an empty list.
         if (archivePVS.isEmpty()) {
-            return result;
-        }
-
-        try {
-            URI pvStatusURI = UriComponentsBuilder.fromUri(URI.create(archiverURL + PV_STATUS_RESOURCE))
-                    .queryParam("pv", archivePVS.keySet())
-                    .build()
-                    .toUri();
-
-            String response = client.post()
-                    .uri(pvStatusURI)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(Duration.of(10, ChronoUnit.SECONDS))
-                    .block();
-
-            // Structure of response is
-            // [{"pvName":"PV:1", "status":"Paused", ... }, {"pvName": "PV:2"}, {"status": "Being archived"}, ...}, ...
-            // ]
-
-            objectMapper
-                    .readValue(response, new TypeReference<List<Map<String, String>>>() {})
-                    .forEach(archivePVStatusJsonMap -> {
-                        String archiveStatus = archivePVStatusJsonMap.get("status");
-                        String pvName = archivePVStatusJsonMap.get("pvName");
-                        String pvStatus = archivePVS.get(pvName).getPvStatus();
-                        ArchiveAction action = pickArchiveAction(archiveStatus, pvStatus);
-                        result.get(action).add(archivePVS.get(pvName));
-                    });
-            return result;
-
-        } catch (JsonProcessingException e) {
-            // problem collecting policies from AA, so warn and return empty list
-            logger.log(Level.WARNING, () -> "Could not get AA pv Status list: " + e.getMessage());
-            return result;
+            return Mono.just(result);
         }
+
+        // pvs with a cached status skip the archiver
+        List<String> unknownPVs = new ArrayList<>();
+        archivePVS.forEach((pvName, archivePV) -> {
+            String archiveStatus = useCachedStatus ? getCachedStatus(archiverURL, pvName) : null;
+            if (archiveStatus != null) {
+                result.get(pickArchiveAction(archiveStatus, archivePV.getPvStatus())).add(archivePV);
+            } else {
+                unknownPVs.add(pvName);
+            }
+        });
+
+        // Structure of response is
+        // [{"pvName":"PV:1", "status":"Paused", ... }, {"pvName": "PV:2"}, {"status": "Being archived"}, ...}, ...
+        // ]
+        return Flux.fromIterable(Lists.partition(unknownPVs, Math.max(1, statusChunkSize)))
+                .flatMap(chunk -> getPVStatus(archiverURL, chunk), parallelism)
+                .doOnNext(archivePVStatusJsonMap -> {
+                    String archiveStatus = archivePVStatusJsonMap.get("status");
+                    String pvName = archivePVStatusJsonMap.get("pvName");
+                    String pvStatus = archivePVS.get(pvName).getPvStatus();
+                    cacheStatus(archiverURL, pvName, archiveStatus);
+                    ArchiveAction action = pickArchiveAction(archiveStatus, pvStatus);
+                    result.get(action).add(archivePVS.get(pvName));
+                })
+                .then(Mono.just(result));
+    }
+
+    /**
+     * Get the status of a chunk of pvs, the pv names are sent in the request body
+     */
+    private Flux<Map<String, String>> getPVStatus(String archiverURL, List<String> pvNames) {
+        return client.post()
+                .uri(URI.create(archiverURL + PV_STATUS_RESOURCE))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(pvNames)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.of(10, ChronoUnit.SECONDS))
+                .retryWhen(retrySpec())
+                .flatMap(response -> Mono.fromCallable(() ->
+                        objectMapper.readValue(response, new TypeReference<List<Map<String, String>>>() {})))
+                .onErrorResume(e -> {
+                    // problem reading the status from AA, so warn and skip these pvs
+                    failed("getPVStatus", archiverURL, e);
+                    return Mono.empty();
+                })
+                .flatMapMany(Flux::fromIterable);
     }
 
     private ArchivePV createArchivePV(
@@ -232,97 +368,147 @@ public class AAChannelProcessor implements ChannelProcessor {
         return newArchiverPV;
     }
 
-    private long configureAA(Map<ArchiveAction, List<ArchivePV>> archivePVS, String aaURL)
-            throws JsonProcessingException {
+    private Mono<Long> configureAA(Map<ArchiveAction, List<ArchivePV>> archivePVS, String aaURL) {
         logger.log(Level.INFO, () -> String.format("Configure PVs %s in %s", archivePVS.toString(), aaURL));
-        long count = 0;
         // Don't request to archive an empty list.
         if (archivePVS.isEmpty()) {
-            return count;
-        }
-        if (!archivePVS.get(ArchiveAction.ARCHIVE).isEmpty()) {
-            logger.log(
-                    Level.INFO,
-                    () -> "Submitting to be archived "
-                            + archivePVS.get(ArchiveAction.ARCHIVE).size() + " pvs");
-            submitAction(
-                    objectMapper.writeValueAsString(archivePVS.get(ArchiveAction.ARCHIVE)),
-                    ArchiveAction.ARCHIVE.endpoint,
-                    aaURL);
-            count += archivePVS.get(ArchiveAction.ARCHIVE).size();
-        }
-        if (!archivePVS.get(ArchiveAction.PAUSE).isEmpty()) {
-            logger.log(
-                    Level.INFO,
-                    () -> "Submitting to be paused "
-                            + archivePVS.get(ArchiveAction.PAUSE).size() + " pvs");
-            submitAction(
-                    objectMapper.writeValueAsString(archivePVS.get(ArchiveAction.PAUSE).stream()
-                            .map(ArchivePV::getPv)
-                            .collect(Collectors.toList())),
-                    ArchiveAction.PAUSE.endpoint,
-                    aaURL);
-            count += archivePVS.get(ArchiveAction.PAUSE).size();
-        }
-        if (!archivePVS.get(ArchiveAction.RESUME).isEmpty()) {
-            logger.log(
-                    Level.INFO,
-                    () -> "Submitting to be resumed "
-                            + archivePVS.get(ArchiveAction.RESUME).size() + " pvs");
-            submitAction(
-                    objectMapper.writeValueAsString(archivePVS.get(ArchiveAction.RESUME).stream()
-                            .map(ArchivePV::getPv)
-                            .collect(Collectors.toList())),
-                    ArchiveAction.RESUME.endpoint,
-                    aaURL);
-            count += archivePVS.get(ArchiveAction.RESUME).size();
-        }
-        return count;
+            return Mono.just(0L);
+        }
+        List<Map.Entry<ArchiveAction, List<ArchivePV>>> requests = new ArrayList<>();
+        for (ArchiveAction action : List.of(ArchiveAction.ARCHIVE, ArchiveAction.PAUSE, ArchiveAction.RESUME)) {
+            List<ArchivePV> actionPVs = archivePVS.get(action);
+            if (!actionPVs.isEmpty()) {
+                logger.log(Level.INFO, () -> "Submitting to " + action + " " + actionPVs.size() + " pvs");
+                Lists.partition(actionPVs, Math.max(1, chunkSize)).forEach(chunk -> requests.add(Map.entry(action, chunk)));
+            }
+        }
+        return Flux.fromIterable(requests)
+                .flatMap(request -> submitAction(request.getKey(), request.getValue(), aaURL), parallelism)
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Submit the action for a chunk of pvs, the archive requests hold the sampling parameters and the pause and
+     * resume requests the pv names
+     *
+     * @return the number of pvs submitted
+     */
+    private Mono<Long> submitAction(ArchiveAction action, List<ArchivePV> archivePVS, String aaURL) {
+        return Mono.fromCallable(() -> action == ArchiveAction.ARCHIVE
+                        ? objectMapper.writeValueAsString(archivePVS)
+                        : objectMapper.writeValueAsString(archivePVS.stream().map(ArchivePV::getPv).collect(Collectors.toList())))
+                .flatMap(values -> client.post()
+                        .uri(URI.create(aaURL + MGMT_RESOURCE + action.endpoint))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(values)
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .timeout(Duration.of(10, ChronoUnit.SECONDS))
+                        .retryWhen(retrySpec())
+                        .defaultIfEmpty(""))
+                .map(response -> {
+                    logger.log(Level.FINE, () -> response);
+                    updateCachedStatus(aaURL, archivePVS, action == ArchiveAction.PAUSE ? PAUSED : BEING_ARCHIVED);
+                    return (long) archivePVS.size();
+                })
+                .onErrorResume(e -> {
+                    logger.log(Level.FINE, () -> String.format("Failed to submit %s to %s on %s", archivePVS, action.endpoint, aaURL));
+                    failed(action.endpoint.substring(1), aaURL, e);
+                    updateCachedStatus(aaURL, archivePVS, null);
+                    return Mono.just((long) archivePVS.size());
+                });
+    }
+
+    /**
+     * Retry the requests failing with a server error, a timeout or a connection error after an exponential
+     * backoff starting at aa.retry.backoff milliseconds, at most aa.retries times
+     */
+    private Retry retrySpec() {
+        return Retry.backoff(retries, Duration.ofMillis(retryBackoff))
+                .filter(e -> !(e instanceof WebClientResponseException response && response.getStatusCode().is4xxClientError()))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    /**
+     * Log and count a request to an archiver which failed after its retries
+     */
+    private void failed(String request, String archiverURL, Throwable e) {
+        logger.log(Level.WARNING, String.format("Failed %s request to %s", request, archiverURL), e);
+        Counter.builder(CF_PROCESSOR_AA_FAILURES)
+                .description("Number of requests to the archivers which failed after their retries")
+                .tags("archiver", archiverURL, "request", request)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private String getCachedStatus(String archiverURL, String pv) {
+        if (statusCacheTtl <= 0) {
+            return null;
+        }
+        synchronized (statusCache) {
+            Cached<String> cached = statusCache.get(new StatusKey(archiverURL, pv));
+            return cached == null || cached.isExpired() ? null : cached.value();
+        }
     }
 
-    private void submitAction(String values, String endpoint, String aaURL) {
-        try {
-            String response = client.post()
-                    .uri(URI.create(aaURL + MGMT_RESOURCE + endpoint))
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(values)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(Duration.of(10, ChronoUnit.SECONDS))
-                    .block();
-            logger.log(Level.FINE, () -> response);
-
-        } catch (Exception e) {
-            logger.log(Level.WARNING, String.format("Failed to submit %s to %s on %s", values, endpoint, aaURL), e);
+    private void cacheStatus(String archiverURL, String pv, String archiveStatus) {
+        if (statusCacheTtl <= 0 || archiveStatus == null) {
+            return;
+        }
+        synchronized (statusCache) {
+            statusCache.put(new StatusKey(archiverURL, pv),
+                    new Cached<>(archiveStatus, System.currentTimeMillis() + statusCacheTtl));
         }
     }
 
-    private Map<String, List<String>> getAAsPolicies(Map<String, String> aaURLs) {
-        Map<String, List<String>> result = new HashMap<>();
-        for (Map.Entry<String, String> aa : aaURLs.entrySet()) {
-            result.put(aa.getKey(), getAAPolicies(aa.getValue()));
+    /**
+     * Record the status the pvs are expected to have after a request was submitted for them, or forget their
+     * status if the request failed
+     */
+    private void updateCachedStatus(String archiverURL, List<ArchivePV> archivePVS, String archiveStatus) {
+        if (archiveStatus != null) {
+            archivePVS.forEach(archivePV -> cacheStatus(archiverURL, archivePV.getPv(), archiveStatus));
+        } else {
+            synchronized (statusCache) {
+                archivePVS.forEach(archivePV -> statusCache.remove(new StatusKey(archiverURL, archivePV.getPv())));
+            }
         }
-        return result;
     }
 
-    private List<String> getAAPolicies(String aaURL) {
+    private Mono<Map<String, List<String>>> getAAsPolicies(Map<String, String> aaURLs) {
+        return Flux.fromIterable(aaURLs.entrySet())
+                .flatMap(aa -> getAAPolicies(aa.getValue()).map(policies -> Map.entry(aa.getKey(), policies)), parallelism)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private Mono<List<String>> getAAPolicies(String aaURL) {
         if (StringUtils.isEmpty(aaURL)) {
-            return List.of();
-        }
-        try {
-            String response = client.get()
-                    .uri(URI.create(aaURL + POLICY_RESOURCE))
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(Duration.of(10, ChronoUnit.SECONDS))
-                    .block();
-            Map<String, String> policyMap = objectMapper.readValue(response, Map.class);
-            return new ArrayList<>(policyMap.keySet());
-        } catch (Exception e) {
-            // problem collecting policies from AA, so warn and return empty list
-            logger.log(Level.WARNING, "Could not get AA policies list: " + e.getMessage());
-            return List.of();
+            return Mono.just(List.of());
+        }
+        Cached<List<String>> cached = policyCache.get(aaURL);
+        if (cached != null && !cached.isExpired()) {
+            return Mono.just(cached.value());
         }
+        return client.get()
+                .uri(URI.create(aaURL + POLICY_RESOURCE))
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.of(10, ChronoUnit.SECONDS))
+                .retryWhen(retrySpec())
+                .flatMap(response -> Mono.fromCallable(() -> objectMapper.readValue(response, Map.class)))
+                .map(policyMap -> {
+                    List<String> policies = new ArrayList<String>(policyMap.keySet());
+                    if (policyCacheTtl > 0) {
+                        policyCache.put(aaURL, new Cached<>(policies, System.currentTimeMillis() + policyCacheTtl));
+                    }
+                    return policies;
+                })
+                .onErrorResume(e -> {
+                    // problem collecting policies from AA, so warn and return empty list
+                    failed("getPolicyList", aaURL, e);
+                    return Mono.just(List.of());
+                })
+                .defaultIfEmpty(List.of());
     }
 
     enum ArchiveAction {
@@ -0,0 +1,206 @@
+package org.phoebus.channelfinder.processors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.phoebus.channelfinder.ChannelRepository;
+import org.phoebus.channelfinder.entity.Channel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reconciles the archive properties of the channels with the pvs held by the archivers of aa.urls, so the pvs
+ * which drifted, for example after an archiver was restored from a backup or configured by hand, are archived,
+ * paused or resumed again without reprocessing all the channels at once.
+ * <p>
+ * Every aa.reconcile.interval milliseconds the next channels in name order are checked with
+ * {@link AAChannelProcessor#reconcile(List, int)}, asking the archivers for the status of aa.reconcile.chunk.size
+ * pvs per request. The number of channels checked at each step spreads a pass over all the channels across
+ * aa.reconcile.period milliseconds, bounded by aa.reconcile.max.rate channels per second, and a pass does not start
+ * before aa.reconcile.period milliseconds after the previous one started.
+ * <p>
+ * The cursor of the pass is saved in aa.reconcile.cursor.file after each step, so a pass interrupted by a restart
+ * continues where it stopped. Without a file the pass starts over after a restart.
+ * <p>
+ * The steps run on their own thread rather than on the shared scheduler, since a step waits for the archivers.
+ */
+@Service
+public class AAReconciler {
+
+    private static final Logger logger = Logger.getLogger(AAReconciler.class.getName());
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    AAChannelProcessor aaChannelProcessor;
+
+    @Autowired
+    ChannelRepository channelRepository;
+
+    @Value("${aa.reconcile.enabled:false}")
+    private boolean enabled;
+    @Value("${aa.reconcile.interval:60000}")
+    private long interval;
+    @Value("${aa.reconcile.period:86400000}")
+    private long period;
+    @Value("${aa.reconcile.max.rate:100}")
+    private int maxRate;
+    @Value("${aa.reconcile.chunk.size:5000}")
+    private int chunkSize;
+    @Value("${aa.reconcile.cursor.file:}")
+    private String cursorFile;
+
+    private Cursor cursor;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "aa-reconciler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The progress of a reconciliation pass
+     *
+     * @param after      the name of the last channel checked, null before the first step of a pass
+     * @param started    the time the pass started, 0 if no pass started yet
+     * @param total      the number of channels to check when the pass started
+     * @param checked    the number of channels checked
+     * @param fixed      the number of pvs archived, paused or resumed
+     * @param completed  the time the pass completed, 0 while it runs
+     */
+    public record Cursor(String after, long started, long total, long checked, long fixed, long completed) {
+
+        static final Cursor NONE = new Cursor(null, 0, 0, 0, 0, 0);
+
+        boolean running() {
+            return started > 0 && completed == 0;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::scheduledStep, Math.max(1, interval), Math.max(1, interval),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    void scheduledStep() {
+        if (!enabled || !aaChannelProcessor.enabled()) {
+            return;
+        }
+        try {
+            step(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to reconcile the archivers", e);
+        }
+    }
+
+    /**
+     * @return the progress of the current or last reconciliation pass
+     */
+    public synchronized Cursor status() {
+        return loadCursor();
+    }
+
+    /**
+     * Check the next channels of the current pass, or start a new pass once the previous one is due
+     *
+     * @param now the current time
+     * @return the progress of the pass after the step
+     */
+    synchronized Cursor step(long now) {
+        Cursor current = loadCursor();
+        if (!current.running()) {
+            if (current.started() > 0 && now < current.started() + period) {
+                return current;
+            }
+            current = new Cursor(null, now, channelRepository.count(aaChannelProcessor.reconcileQuery()), 0, 0, 0);
+            logger.log(Level.INFO, "Start reconciling {0} channels with the archivers", current.total());
+        }
+
+        int size = stepSize(current.total(), interval, period, maxRate);
+        MultiValueMap<String, String> searchParameters = new LinkedMultiValueMap<>(aaChannelProcessor.reconcileQuery());
+        searchParameters.set("~size", String.valueOf(size));
+        if (current.after() != null) {
+            searchParameters.set("~search_after", current.after());
+        }
+        List<Channel> channels = new ArrayList<>();
+        channelRepository.searchAll(searchParameters, channels::addAll);
+
+        long fixed = aaChannelProcessor.reconcile(channels, chunkSize);
+        Cursor next;
+        if (channels.size() < size) {
+            next = new Cursor(null, current.started(), current.total(), current.checked() + channels.size(),
+                    current.fixed() + fixed, now);
+            logger.log(Level.INFO, "Reconciled {0} channels with the archivers, {1} pvs fixed",
+                    new Object[]{next.checked(), next.fixed()});
+        } else {
+            next = new Cursor(channels.get(channels.size() - 1).getName(), current.started(), current.total(),
+                    current.checked() + channels.size(), current.fixed() + fixed, 0);
+        }
+        saveCursor(next);
+        return next;
+    }
+
+    /**
+     * @return the number of channels checked at each step to check total channels in a period, at least one and
+     * at most max rate channels per second
+     */
+    static int stepSize(long total, long interval, long period, int maxRate) {
+        long spread = period <= 0 ? total : (long) Math.ceil((double) total * interval / period);
+        long limit = Math.max(1, (long) maxRate * interval / 1000);
+        return (int) Math.max(1, Math.min(spread, limit));
+    }
+
+    private Cursor loadCursor() {
+        if (cursor == null) {
+            cursor = Cursor.NONE;
+            if (!cursorFile.isEmpty() && Files.exists(Path.of(cursorFile))) {
+                try {
+                    cursor = objectMapper.readValue(Files.readString(Path.of(cursorFile), StandardCharsets.UTF_8),
+                            Cursor.class);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to read the reconciliation cursor " + cursorFile, e);
+                }
+            }
+        }
+        return cursor;
+    }
+
+    private void saveCursor(Cursor next) {
+        cursor = next;
+        if (cursorFile.isEmpty()) {
+            return;
+        }
+        try {
+            Path path = Path.of(cursorFile);
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(temporary, objectMapper.writeValueAsString(next), StandardCharsets.UTF_8);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save the reconciliation cursor " + cursorFile, e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.phoebus.channelfinder.processors;
+
+import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Tag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * A change of a channel sent to the {@link ChannelProcessor}s, with the channel before and after the change and
+ * the names of the tags and properties it added, removed or modified.
+ *
+ * @param type              the type of change
+ * @param before            the channel before the change, null when created
+ * @param after             the channel after the change, null when deleted
+ * @param changedTags       the names of the tags added or removed
+ * @param changedProperties the names of the properties added, removed or whose value changed
+ */
+public record ChannelChange(Type type, Channel before, Channel after, Set<String> changedTags,
+                            Set<String> changedProperties) {
+
+    public enum Type {
+        /** the channel was created */
+        CREATE,
+        /** an existing channel was replaced or merged */
+        UPDATE,
+        /** the channel was deleted */
+        DELETE,
+        /** the channel is sent again unchanged, all its tags and properties are reported as changed */
+        PROCESS
+    }
+
+    /**
+     * @param before the channel before the change, null if it did not exist
+     * @param after  the channel after the change, null if it was deleted
+     * @return the change from before to after
+     */
+    public static ChannelChange of(Channel before, Channel after) {
+        Type type = before == null ? Type.CREATE : after == null ? Type.DELETE : Type.UPDATE;
+        Set<String> tagsBefore = tagNames(before);
+        Set<String> tagsAfter = tagNames(after);
+        Set<String> changedTags = new TreeSet<>();
+        tagsBefore.stream().filter(name -> !tagsAfter.contains(name)).forEach(changedTags::add);
+        tagsAfter.stream().filter(name -> !tagsBefore.contains(name)).forEach(changedTags::add);
+        return new ChannelChange(type, before, after, changedTags,
+                changedProperties(propertyValues(before), propertyValues(after)));
+    }
+
+    /**
+     * @param channel a channel to send to the processors again
+     * @return a change reporting all the tags and properties of the channel as changed
+     */
+    public static ChannelChange process(Channel channel) {
+        return new ChannelChange(Type.PROCESS, channel, channel,
+                tagNames(channel), new TreeSet<>(propertyValues(channel).keySet()));
+    }
+
+    /**
+     * @param channel an existing channel
+     * @return a copy of the channel, unaffected by changes of its tag and property lists
+     */
+    public static Channel snapshot(Channel channel) {
+        return channel == null ? null : new Channel(channel.getName(), channel.getOwner(),
+                new ArrayList<>(channel.getProperties()), new ArrayList<>(channel.getTags()));
+    }
+
+    /**
+     * @return the name of the channel
+     */
+    public String name() {
+        return after != null ? after.getName() : before.getName();
+    }
+
+    /**
+     * Combine this change with a later change of the same channel
+     *
+     * @param later the later change
+     * @return the change from the channel before this change to the channel after the later one, null if the
+     * channel was created and then deleted
+     */
+    public ChannelChange merge(ChannelChange later) {
+        Channel first = before;
+        Channel last = later.after;
+        if (first == null && last == null) {
+            return null;
+        }
+        Type merged = first == null ? Type.CREATE : last == null ? Type.DELETE
+                : type == Type.PROCESS || later.type == Type.PROCESS ? Type.PROCESS : Type.UPDATE;
+        return new ChannelChange(merged, first, last,
+                union(changedTags, later.changedTags), union(changedProperties, later.changedProperties));
+    }
+
+    /**
+     * @param properties property names, compared ignoring case
+     * @return true if the change touches any of the properties, if no property is given or if the channel is
+     * sent again unchanged
+     */
+    public boolean touches(Collection<String> properties) {
+        if (type == Type.PROCESS || properties == null || properties.isEmpty()) {
+            return true;
+        }
+        return changedProperties.stream()
+                .anyMatch(changed -> properties.stream().anyMatch(changed::equalsIgnoreCase));
+    }
+
+    /**
+     * @return a compact string representation for the log
+     */
+    public String toLog() {
+        return type + " " + (after != null ? after.toLog() : before.toLog());
+    }
+
+    private static Set<String> tagNames(Channel channel) {
+        return channel == null ? Collections.emptySortedSet() : channel.getTags().stream()
+                .map(Tag::getName)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static Map<String, String> propertyValues(Channel channel) {
+        Map<String, String> values = new HashMap<>();
+        if (channel != null) {
+            channel.getProperties().forEach(property -> values.put(property.getName(), property.getValue()));
+        }
+        return values;
+    }
+
+    private static Set<String> changedProperties(Map<String, String> before, Map<String, String> after) {
+        Set<String> changed = new TreeSet<>();
+        before.forEach((name, value) -> {
+            if (!after.containsKey(name) || !Objects.equals(value, after.get(name))) {
+                changed.add(name);
+            }
+        });
+        after.keySet().stream().filter(name -> !before.containsKey(name)).forEach(changed::add);
+        return changed;
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> union = new TreeSet<>();
+        union.addAll(first);
+        union.addAll(second);
+        return union;
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import org.phoebus.channelfinder.entity.Channel;
 
 import java.util.List;
+import java.util.Set;
 
 public interface ChannelProcessor {
 
@@ -13,4 +14,31 @@ public interface ChannelProcessor {
 
     long process(List<Channel> channels) throws JsonProcessingException;
 
+    /**
+     * The properties this processor acts on, the changes which do not add, remove or modify any of them are not
+     * sent to it. Property names are compared ignoring case.
+     * <p>
+     * When reprocessing channels, unless an enabled processor watches every property, the channels are read with
+     * only the properties watched by the enabled processors and without their tags.
+     *
+     * @return the names of the properties, empty to be sent every change
+     */
+    default Set<String> watchedProperties() {
+        return Set.of();
+    }
+
+    /**
+     * Process the changes of the channels, with the channels before and after each change. By default the
+     * channels after the changes are passed to {@link #process(List)} and the deleted channels are ignored.
+     *
+     * @param changes the changes, at most one per channel
+     * @return the number of channels processed
+     * @throws JsonProcessingException if processing fails
+     */
+    default long processChanges(List<ChannelChange> changes) throws JsonProcessingException {
+        return process(changes.stream()
+                .filter(change -> change.type() != ChannelChange.Type.DELETE)
+                .map(ChannelChange::after)
+                .toList());
+    }
 }
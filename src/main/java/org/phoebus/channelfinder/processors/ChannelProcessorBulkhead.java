@@ -0,0 +1,368 @@
+package org.phoebus.channelfinder.processors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a single {@link ChannelProcessor} on its own bounded pool, so a slow or failing processor does not
+ * delay the others.
+ * <p>
+ * The processor handles at most concurrency batches at once and queueSize batches wait for it, the batches
+ * arriving once the queue is full are held back and sent in order once it has room. At most queueSize batches are
+ * held back, the oldest is dropped when a new one arrives. A batch running longer than the timeout is interrupted.
+ * A failed or timed out batch is sent again after retryDelay milliseconds, up to maxRetries times before it is
+ * dropped. After failureThreshold consecutive failed or timed out batches the circuit opens and the batches are
+ * held back for openDuration milliseconds, the next batch is then sent as a trial and closes the circuit if it
+ * succeeds.
+ * <p>
+ * The batch is completed once the processor handled it or once it was dropped, so its journal position is not
+ * recorded before and a failing processor does not hold back the others for ever. The batches still held back
+ * when the bulkhead stops are completed exceptionally.
+ * <p>
+ * Only the changes touching the {@link ChannelProcessor#watchedProperties()} are sent to the processor.
+ * <p>
+ * The channels processed, the latency of the batches, the failures, the batches held back, the batches dropped
+ * and the changes skipped are published as cf.processor.channels, cf.processor.latency, cf.processor.failures,
+ * cf.processor.rejected, cf.processor.dropped and cf.processor.skipped tagged with the processor name.
+ */
+class ChannelProcessorBulkhead {
+
+    private static final Logger logger = Logger.getLogger(ChannelProcessorBulkhead.class.getName());
+
+    public static final String CF_PROCESSOR_CHANNELS = "cf.processor.channels";
+    public static final String CF_PROCESSOR_LATENCY = "cf.processor.latency";
+    public static final String CF_PROCESSOR_FAILURES = "cf.processor.failures";
+    public static final String CF_PROCESSOR_REJECTED = "cf.processor.rejected";
+    public static final String CF_PROCESSOR_DROPPED = "cf.processor.dropped";
+    public static final String CF_PROCESSOR_SKIPPED = "cf.processor.skipped";
+    public static final String CF_PROCESSOR_PENDING = "cf.processor.pending";
+    public static final String CF_PROCESSOR_CIRCUIT_OPEN = "cf.processor.circuit.open";
+
+    /**
+     * Limits of a bulkhead
+     *
+     * @param concurrency      maximum number of batches processed at once
+     * @param queueSize        maximum number of batches waiting
+     * @param timeout          milliseconds after which a batch is interrupted
+     * @param failureThreshold consecutive failures opening the circuit
+     * @param openDuration     milliseconds the circuit stays open
+     * @param retryDelay       milliseconds before a failed or held back batch is sent again
+     * @param maxRetries       number of times a failed batch is sent again before it is dropped
+     */
+    record Limits(int concurrency, int queueSize, long timeout, int failureThreshold, long openDuration,
+                  long retryDelay, int maxRetries) {
+    }
+
+    private record Pending(List<ChannelChange> batch, CompletableFuture<Void> done, int attempts) {
+    }
+
+    private final ChannelProcessor processor;
+    private final String name;
+    private final Limits limits;
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor executor;
+
+    private final Counter channels;
+    private final Timer latency;
+    private final Counter failures;
+    private final Counter timeouts;
+    private final Counter rejectedFull;
+    private final Counter rejectedOpen;
+    private final Counter droppedRetries;
+    private final Counter droppedFull;
+    private final Counter skipped;
+
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    // batches not yet queued for the processor, in the order they are sent
+    private final Deque<Pending> held = new ArrayDeque<>();
+    private boolean retryScheduled = false;
+
+    /**
+     * @param processor     the processor
+     * @param limits        the limits of the bulkhead
+     * @param timer         scheduler of the timeouts, shared by the bulkheads
+     * @param meterRegistry registry of the metrics
+     */
+    ChannelProcessorBulkhead(ChannelProcessor processor, Limits limits, ScheduledExecutorService timer,
+                             MeterRegistry meterRegistry) {
+        this.processor = processor;
+        this.name = processor.getClass().getSimpleName();
+        this.limits = limits;
+        this.timer = timer;
+        AtomicInteger threadCount = new AtomicInteger();
+        int concurrency = Math.max(1, limits.concurrency());
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, limits.queueSize())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "processor-" + name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        Tags tags = Tags.of("processor", name);
+        channels = Counter.builder(CF_PROCESSOR_CHANNELS)
+                .description("Number of channels processed")
+                .baseUnit("channels")
+                .tags(tags)
+                .register(meterRegistry);
+        latency = Timer.builder(CF_PROCESSOR_LATENCY)
+                .description("Time taken to process a batch of channels")
+                .tags(tags)
+                .register(meterRegistry);
+        failures = Counter.builder(CF_PROCESSOR_FAILURES)
+                .description("Number of batches which failed")
+                .tags(tags.and("reason", "error"))
+                .register(meterRegistry);
+        timeouts = Counter.builder(CF_PROCESSOR_FAILURES)
+                .description("Number of batches which failed")
+                .tags(tags.and("reason", "timeout"))
+                .register(meterRegistry);
+        rejectedFull = Counter.builder(CF_PROCESSOR_REJECTED)
+                .description("Number of times batches were held back from the processor")
+                .tags(tags.and("reason", "queue_full"))
+                .register(meterRegistry);
+        rejectedOpen = Counter.builder(CF_PROCESSOR_REJECTED)
+                .description("Number of times batches were held back from the processor")
+                .tags(tags.and("reason", "circuit_open"))
+                .register(meterRegistry);
+        droppedRetries = Counter.builder(CF_PROCESSOR_DROPPED)
+                .description("Number of batches dropped without being processed")
+                .tags(tags.and("reason", "max_retries"))
+                .register(meterRegistry);
+        droppedFull = Counter.builder(CF_PROCESSOR_DROPPED)
+                .description("Number of batches dropped without being processed")
+                .tags(tags.and("reason", "backlog_full"))
+                .register(meterRegistry);
+        skipped = Counter.builder(CF_PROCESSOR_SKIPPED)
+                .description("Number of channel changes not touching the properties watched by the processor")
+                .baseUnit("channels")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(CF_PROCESSOR_PENDING, this, bulkhead -> bulkhead.pending())
+                .description("Number of batches waiting for the processor")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(CF_PROCESSOR_CIRCUIT_OPEN, this, bulkhead -> bulkhead.isOpen() ? 1 : 0)
+                .description("1 while the processor is not sent any batch after repeated failures")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the name of the processor
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return true while the circuit is open
+     */
+    synchronized boolean isOpen() {
+        return System.currentTimeMillis() < openUntil;
+    }
+
+    /**
+     * @return the number of batches waiting for the processor, queued or held back
+     */
+    synchronized int pending() {
+        return executor.getQueue().size() + held.size();
+    }
+
+    /**
+     * Queue the changes of the batch touching the watched properties for the processor, unless it is disabled.
+     * The batch is held back while the circuit is open or the queue is full, and sent again if it fails.
+     *
+     * @param changes the channel changes
+     * @return completed once the processor handled or dropped the batch, right away if the batch has nothing for
+     * it, or exceptionally if the bulkhead stopped before
+     */
+    CompletableFuture<Void> submit(List<ChannelChange> changes) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (!processor.enabled()) {
+            done.complete(null);
+            return done;
+        }
+        Set<String> watched = processor.watchedProperties();
+        List<ChannelChange> batch = changes.stream().filter(change -> change.touches(watched)).toList();
+        skipped.increment(changes.size() - batch.size());
+        if (batch.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+        Pending dropped = null;
+        synchronized (this) {
+            if (held.size() >= Math.max(1, limits.queueSize())) {
+                dropped = held.poll();
+            }
+            held.add(new Pending(batch, done, 0));
+        }
+        if (dropped != null) {
+            droppedFull.increment();
+            drop(dropped, "more than " + limits.queueSize() + " batches are held back");
+        }
+        send();
+        return done;
+    }
+
+    /**
+     * Queue the held back batches for the processor in order, until the circuit opens or the queue is full
+     */
+    private void send() {
+        List<Pending> stopped = new ArrayList<>();
+        synchronized (this) {
+            while (!held.isEmpty()) {
+                if (executor.isShutdown()) {
+                    stopped.addAll(held);
+                    held.clear();
+                } else if (isOpen()) {
+                    rejectedOpen.increment();
+                    sendLater(openUntil - System.currentTimeMillis());
+                    break;
+                } else {
+                    Pending pending = held.peek();
+                    try {
+                        executor.execute(() -> run(pending));
+                        held.poll();
+                    } catch (RejectedExecutionException e) {
+                        rejectedFull.increment();
+                        logger.log(Level.FINE, () -> "ChannelProcessor " + name + " is busy, holding back "
+                                + held.size() + " batches");
+                        sendLater(limits.retryDelay());
+                        break;
+                    }
+                }
+            }
+        }
+        stopped.forEach(pending -> pending.done().completeExceptionally(
+                new RejectedExecutionException("ChannelProcessor " + name + " is stopped")));
+    }
+
+    private synchronized void sendLater(long delay) {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        try {
+            timer.schedule(() -> {
+                synchronized (this) {
+                    retryScheduled = false;
+                }
+                send();
+            }, Math.max(1, delay), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the timer stops with the bulkheads, the held back batches are completed by shutdown
+            retryScheduled = false;
+        }
+    }
+
+    private void run(Pending pending) {
+        if (process(pending.batch())) {
+            pending.done().complete(null);
+        } else if (pending.attempts() >= limits.maxRetries()) {
+            droppedRetries.increment();
+            drop(pending, "it failed " + (pending.attempts() + 1) + " times");
+        } else {
+            synchronized (this) {
+                held.addFirst(new Pending(pending.batch(), pending.done(), pending.attempts() + 1));
+                sendLater(limits.retryDelay());
+            }
+        }
+    }
+
+    /**
+     * Give up on a batch, completing it so the batches after it are recorded
+     */
+    private void drop(Pending pending, String reason) {
+        logger.log(Level.SEVERE, () -> "ChannelProcessor " + name + " dropped a batch of " + pending.batch().size()
+                + " channels since " + reason + ": "
+                + pending.batch().stream().map(ChannelChange::name).toList());
+        pending.done().complete(null);
+    }
+
+    /**
+     * @return true if the processor handled the batch
+     */
+    private boolean process(List<ChannelChange> batch) {
+        // clear an interrupt of a timeout which fired as the previous batch completed
+        Thread.interrupted();
+        Thread worker = Thread.currentThread();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            timedOut.set(true);
+            worker.interrupt();
+        }, limits.timeout(), TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            processor.processChanges(batch);
+            timeout.cancel(false);
+            channels.increment(batch.size());
+            succeeded();
+            return true;
+        } catch (Exception e) {
+            timeout.cancel(false);
+            // the interrupted processor can fail before the timeout task completes
+            if (timedOut.get()) {
+                timeouts.increment();
+                logger.log(Level.WARNING, "ChannelProcessor " + name + " timed out after " + limits.timeout() + " ms", e);
+            } else {
+                failures.increment();
+                logger.log(Level.WARNING, "ChannelProcessor " + name + " throws exception", e);
+            }
+            failed();
+            return false;
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            Thread.interrupted();
+        }
+    }
+
+    private synchronized void succeeded() {
+        consecutiveFailures = 0;
+        openUntil = 0;
+    }
+
+    private synchronized void failed() {
+        consecutiveFailures++;
+        if (consecutiveFailures >= Math.max(1, limits.failureThreshold())) {
+            openUntil = System.currentTimeMillis() + limits.openDuration();
+            logger.log(Level.WARNING, () -> "ChannelProcessor " + name + " failed " + consecutiveFailures
+                    + " times in a row, holding back its batches for " + limits.openDuration() + " ms");
+        }
+    }
+
+    /**
+     * Stop the bulkhead, waiting for the batches already queued and completing exceptionally those held back
+     *
+     * @param wait milliseconds to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void shutdown(long wait) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(wait, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+        send();
+    }
+}
@@ -0,0 +1,356 @@
+package org.phoebus.channelfinder.processors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.phoebus.channelfinder.TextUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queue of the channel changes waiting to be sent to the {@link ChannelProcessor}s.
+ * <p>
+ * The pending changes are coalesced by channel name, a channel written again before it was dispatched has its
+ * changes merged into its pending change, which keeps its place in the queue, so the processors see one change
+ * from the state before the first write to the latest version of each channel.
+ * <p>
+ * The channels are sent to the processors in batches of up to processors.dispatch.batch.size channels, a batch
+ * is sent once it is full or once its oldest channel waited processors.dispatch.window milliseconds.
+ * <p>
+ * At most processors.dispatch.max.pending channels are queued, writers of new channels then wait up to
+ * processors.dispatch.submit.timeout milliseconds for the processors to catch up and are rejected with a
+ * 503 Service Unavailable if they do not. At most processors.dispatch.max.in.flight
+ * batches are sent to the processors and not yet done, the next batches wait in the queue.
+ * <p>
+ * With processors.journal.dir set the channels are queued in a {@link ChannelProcessorJournal} on the local
+ * disk instead of in memory, so they survive a restart and bursts are not held in the heap. The journal is
+ * bounded by its segments instead of processors.dispatch.max.pending, and only the versions of a channel taken
+ * in the same batch are coalesced.
+ * <p>
+ * Each processor runs in its own {@link ChannelProcessorBulkhead}, limited by the processors.bulkhead.*
+ * properties, so the processors handle the batches in parallel and a slow processor does not delay the others.
+ * A processor is only sent the changes touching its {@link ChannelProcessor#watchedProperties()}.
+ * The journal position is recorded once every processor handled or dropped a batch and the batches before it,
+ * a failed batch is sent again to its processor up to processors.bulkhead.max.retries times before it is dropped.
+ * <p>
+ * The queue depth, the size of the batches and the time the channels waited before being dispatched are
+ * published as the cf.processor.queue.depth, cf.processor.batch.size and cf.processor.lag metrics.
+ */
+@Service
+public class ChannelProcessorDispatcher {
+
+    private static final Logger logger = Logger.getLogger(ChannelProcessorDispatcher.class.getName());
+
+    public static final String CF_PROCESSOR_QUEUE_DEPTH = "cf.processor.queue.depth";
+    public static final String CF_PROCESSOR_BATCH_SIZE = "cf.processor.batch.size";
+    public static final String CF_PROCESSOR_LAG = "cf.processor.lag";
+    public static final String CF_PROCESSOR_COALESCED = "cf.processor.coalesced";
+
+    @Value("${processors.dispatch.batch.size:1000}")
+    private int batchSize;
+
+    @Value("${processors.dispatch.window:1000}")
+    private long window;
+
+    @Value("${processors.dispatch.max.pending:100000}")
+    private int maxPending;
+
+    @Value("${processors.dispatch.max.in.flight:10}")
+    private int maxInFlight;
+
+    @Value("${processors.dispatch.submit.timeout:30000}")
+    private long submitTimeout;
+
+    @Value("${processors.journal.dir:}")
+    private String journalDir;
+
+    @Value("${processors.journal.segment.size:67108864}")
+    private int journalSegmentSize;
+
+    @Value("${processors.journal.max.segments:16}")
+    private int journalMaxSegments;
+
+    @Value("${processors.bulkhead.concurrency:1}")
+    private int bulkheadConcurrency;
+
+    @Value("${processors.bulkhead.queue.size:10}")
+    private int bulkheadQueueSize;
+
+    @Value("${processors.bulkhead.timeout:60000}")
+    private long bulkheadTimeout;
+
+    @Value("${processors.bulkhead.circuit.failures:5}")
+    private int bulkheadCircuitFailures;
+
+    @Value("${processors.bulkhead.circuit.open:60000}")
+    private long bulkheadCircuitOpen;
+
+    @Value("${processors.bulkhead.retry.delay:1000}")
+    private long bulkheadRetryDelay;
+
+    @Value("${processors.bulkhead.max.retries:3}")
+    private int bulkheadMaxRetries;
+
+    private final List<ChannelProcessor> channelProcessors;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notBusy = lock.newCondition();
+    private ChannelQueue queue;
+    private boolean running = true;
+
+    private final Thread dispatcher = new Thread(this::dispatchLoop, "channel-processor-dispatcher");
+    private final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "channel-processor-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<ChannelProcessorBulkhead> bulkheads = new ArrayList<>();
+    // batches sent to the processors, in the order they were taken from the queue
+    private final Deque<InFlight> inFlight = new ArrayDeque<>();
+
+    private record InFlight(ChannelQueue.Batch batch, CompletableFuture<Void> done) {
+    }
+
+    private DistributionSummary batchSizes;
+    private Timer lag;
+    private Counter coalesced;
+
+    @Autowired
+    public ChannelProcessorDispatcher(final List<ChannelProcessor> channelProcessors,
+                                      final MeterRegistry meterRegistry) {
+        this.channelProcessors = channelProcessors;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        queue = openQueue();
+        ChannelProcessorBulkhead.Limits limits = new ChannelProcessorBulkhead.Limits(bulkheadConcurrency,
+                bulkheadQueueSize, bulkheadTimeout, bulkheadCircuitFailures, bulkheadCircuitOpen, bulkheadRetryDelay,
+                bulkheadMaxRetries);
+        channelProcessors.forEach(processor ->
+                bulkheads.add(new ChannelProcessorBulkhead(processor, limits, timeouts, meterRegistry)));
+        Gauge.builder(CF_PROCESSOR_QUEUE_DEPTH, this::getQueueDepth)
+                .description("Number of channels waiting to be sent to the processors")
+                .baseUnit("channels")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder(CF_PROCESSOR_BATCH_SIZE)
+                .description("Number of channels sent to the processors at once")
+                .baseUnit("channels")
+                .register(meterRegistry);
+        lag = Timer.builder(CF_PROCESSOR_LAG)
+                .description("Time the oldest channel of a batch waited before being sent to the processors")
+                .register(meterRegistry);
+        coalesced = Counter.builder(CF_PROCESSOR_COALESCED)
+                .description("Number of queued channels replaced by a later version before being processed")
+                .baseUnit("channels")
+                .register(meterRegistry);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private ChannelQueue openQueue() {
+        if (journalDir != null && !journalDir.isBlank()) {
+            try {
+                return ChannelProcessorJournal.open(Path.of(journalDir), journalSegmentSize, journalMaxSegments);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Failed to open the processor journal " + journalDir
+                        + ", the channels are queued in memory", e);
+            }
+        }
+        return new MemoryChannelQueue(maxPending);
+    }
+
+    /**
+     * @return the number of channels waiting to be sent to the processors
+     */
+    public long getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue the channel changes to be sent to the processors, waiting while the queue is full
+     *
+     * @param changes the changes of the created, updated or deleted channels
+     * @throws ResponseStatusException 503 if the queue stayed full for processors.dispatch.submit.timeout
+     */
+    public void submit(List<ChannelChange> changes) {
+        long now = System.currentTimeMillis();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(submitTimeout);
+        lock.lock();
+        try {
+            for (int i = 0; i < changes.size(); i++) {
+                ChannelChange change = changes.get(i);
+                try {
+                    while (!queue.offer(change, now)) {
+                        if (!running) {
+                            throw new IOException("The processor queue is closed");
+                        }
+                        if (remaining <= 0) {
+                            String message = MessageFormat.format(TextUtil.PROCESSOR_QUEUE_FULL, submitTimeout,
+                                    changes.size() - i);
+                            logger.log(Level.SEVERE, message);
+                            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, message, null);
+                        }
+                        remaining = notFull.awaitNanos(remaining);
+                    }
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Failed to queue channel " + change.name() + " for the processors", e);
+                }
+                if (queue.size() == 1 || queue.size() >= batchSize) {
+                    notEmpty.signal();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while waiting to queue channels for the processors", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            ChannelQueue.Batch batch;
+            lock.lock();
+            try {
+                // the batches stay in the queue while the processors are behind
+                while (inFlight.size() >= Math.max(1, maxInFlight) && running) {
+                    notBusy.await();
+                }
+                while (queue.size() == 0 && running) {
+                    notEmpty.await();
+                }
+                if (queue.size() == 0) {
+                    return;
+                }
+                // wait for a full batch or for the oldest channel to reach the end of the window
+                long deadline = queue.oldest() + window;
+                long remaining;
+                while (queue.size() < batchSize && running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    notEmpty.await(remaining, TimeUnit.MILLISECONDS);
+                }
+                batch = queue.take(batchSize);
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to read the channels queued for the processors", e);
+                return;
+            } finally {
+                lock.unlock();
+            }
+            lag.record(System.currentTimeMillis() - batch.oldest(), TimeUnit.MILLISECONDS);
+            batchSizes.record(batch.changes().size());
+            coalesced.increment(batch.queued() - batch.changes().size());
+            InFlight sent = new InFlight(batch, dispatch(batch.changes()));
+            lock.lock();
+            try {
+                inFlight.add(sent);
+            } finally {
+                lock.unlock();
+            }
+            sent.done().whenComplete((result, e) -> commitCompleted());
+        }
+    }
+
+    /**
+     * Send the batch to every processor, each in its own bulkhead
+     *
+     * @return completed once all the processors are done with the batch
+     */
+    private CompletableFuture<Void> dispatch(List<ChannelChange> batch) {
+        return CompletableFuture.allOf(bulkheads.stream()
+                .map(bulkhead -> bulkhead.submit(batch))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Record the position of the last batch completed by all the processors, all the batches before it being
+     * completed too
+     */
+    private void commitCompleted() {
+        lock.lock();
+        try {
+            ChannelQueue.Batch completed = null;
+            InFlight head;
+            while ((head = inFlight.peek()) != null && head.done().isDone()) {
+                if (head.done().isCompletedExceptionally()) {
+                    // a batch a processor did not handle stays in the journal, sent again after the next start
+                    break;
+                }
+                completed = inFlight.poll().batch();
+            }
+            if (completed != null) {
+                notBusy.signal();
+                queue.commit(completed);
+                // the journal only frees its segments once they are committed
+                notFull.signalAll();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to record the channels sent to the processors", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the dispatcher, the channels already queued are still sent to the processors, those left in the
+     * journal are sent after the next start
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            notBusy.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        dispatcher.join(Math.max(window, 1000) * 5);
+        for (ChannelProcessorBulkhead bulkhead : bulkheads) {
+            bulkhead.shutdown(Math.max(window, 1000) * 5);
+        }
+        timeouts.shutdownNow();
+        lock.lock();
+        try {
+            queue.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
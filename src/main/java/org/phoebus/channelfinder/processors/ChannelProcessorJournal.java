@@ -0,0 +1,274 @@
+package org.phoebus.channelfinder.processors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ChannelQueue} kept in an append only journal on the local disk, so the channel changes queued for
+ * the processors survive a restart of the service.
+ * <p>
+ * The journal is a series of memory mapped segment files of processors.journal.segment.size bytes, each
+ * change is appended as a record holding its length, the time it was queued and the change as json. The
+ * length is written last, so a record partially written when the service stopped is ignored. The position
+ * following the last processed batch is saved in a checkpoint file, the segments before it are deleted, and
+ * the records after it are replayed when the journal is opened again. A batch interrupted by a restart is
+ * processed again.
+ * <p>
+ * At most processors.journal.max.segments segments are kept, the journal is full once they are all written
+ * and not yet processed.
+ */
+class ChannelProcessorJournal implements ChannelQueue {
+
+    private static final Logger logger = Logger.getLogger(ChannelProcessorJournal.class.getName());
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    // record length and queued time
+    private static final int HEADER = Integer.BYTES + Long.BYTES;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private long readSegment;
+    private int readOffset;
+    private long size = 0;
+
+    /**
+     * A position in the journal
+     *
+     * @param segment segment id
+     * @param offset  offset in the segment
+     */
+    record Position(long segment, int offset) {
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writeOffset = 0;
+
+        private Segment(long id, Path path, int size) throws IOException {
+            this.id = id;
+            this.path = path;
+            // the mapping stays valid once the file is closed
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                if (file.length() < size) {
+                    file.setLength(size);
+                }
+                this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            }
+        }
+
+        /**
+         * @return the length of the record at the offset, 0 if there is none
+         */
+        private int recordLength(int offset) {
+            return offset + HEADER <= buffer.capacity() ? buffer.getInt(offset) : 0;
+        }
+
+        private void force() {
+            buffer.force();
+        }
+    }
+
+    private ChannelProcessorJournal(Path directory, int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+    }
+
+    /**
+     * Open the journal in the directory, replaying the records which were not processed
+     *
+     * @param directory   the journal directory, created if needed
+     * @param segmentSize size in bytes of a segment
+     * @param maxSegments maximum number of segments
+     * @return the journal
+     * @throws IOException if the journal could not be opened
+     */
+    static ChannelProcessorJournal open(Path directory, int segmentSize, int maxSegments) throws IOException {
+        Files.createDirectories(directory);
+        ChannelProcessorJournal journal = new ChannelProcessorJournal(directory, segmentSize, maxSegments);
+        journal.load();
+        return journal;
+    }
+
+    private void load() throws IOException {
+        Position checkpoint = readCheckpoint();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    if (checkpoint != null && id < checkpoint.segment()) {
+                        Files.delete(path);
+                    } else {
+                        segments.put(id, new Segment(id, path, 0));
+                    }
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            long id = checkpoint == null ? 0 : checkpoint.segment();
+            segments.put(id, new Segment(id, segmentPath(id), segmentSize));
+        }
+        readSegment = segments.firstKey();
+        readOffset = checkpoint != null && checkpoint.segment() == readSegment ? checkpoint.offset() : 0;
+        // find the end of each segment and count the records left to process
+        for (Segment segment : segments.values()) {
+            int offset = 0;
+            int length;
+            while ((length = segment.recordLength(offset)) > 0 && offset + HEADER + length <= segment.buffer.capacity()) {
+                if (segment.id != readSegment || offset >= readOffset) {
+                    size++;
+                }
+                offset += HEADER + length;
+            }
+            segment.writeOffset = offset;
+        }
+        if (size > 0) {
+            logger.log(Level.INFO, "Replaying " + size + " channel changes from the processor journal " + directory);
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        String[] checkpoint = Files.readString(path, StandardCharsets.UTF_8).trim().split(" ");
+        return new Position(Long.parseLong(checkpoint[0]), Integer.parseInt(checkpoint[1]));
+    }
+
+    private void writeCheckpoint(Position position) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        Files.writeString(temporary, position.segment() + " " + position.offset(), StandardCharsets.UTF_8);
+        Files.move(temporary, directory.resolve(CHECKPOINT),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long oldest() {
+        Segment segment = nextRecordSegment();
+        return segment == null ? -1 : segment.buffer.getLong(readOffset + Integer.BYTES);
+    }
+
+    /**
+     * Move the read position to the next segment once the current one is read to the end
+     *
+     * @return the segment holding the next record, null if there is none
+     */
+    private Segment nextRecordSegment() {
+        Segment segment = segments.get(readSegment);
+        while (segment != null && readOffset >= segment.writeOffset) {
+            Map.Entry<Long, Segment> next = segments.higherEntry(readSegment);
+            if (next == null) {
+                return null;
+            }
+            segment = next.getValue();
+            readSegment = next.getKey();
+            readOffset = 0;
+        }
+        return segment;
+    }
+
+    @Override
+    public boolean offer(ChannelChange change, long time) throws IOException {
+        byte[] record = objectMapper.writeValueAsBytes(change);
+        Segment segment = segments.lastEntry().getValue();
+        if (segment.writeOffset + HEADER + record.length > segment.buffer.capacity()) {
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            // a single change larger than a segment gets a segment of its own size
+            long id = segment.id + 1;
+            segment.force();
+            segment = new Segment(id, segmentPath(id), Math.max(segmentSize, HEADER + record.length));
+            segments.put(id, segment);
+        }
+        int offset = segment.writeOffset;
+        segment.buffer.putLong(offset + Integer.BYTES, time);
+        segment.buffer.put(offset + HEADER, record);
+        // the length is written last, marking the record as complete
+        segment.buffer.putInt(offset, record.length);
+        segment.writeOffset = offset + HEADER + record.length;
+        size++;
+        return true;
+    }
+
+    @Override
+    public Batch take(int max) throws IOException {
+        Map<String, ChannelChange> changes = new LinkedHashMap<>();
+        long queued = 0;
+        long oldest = oldest();
+        Segment segment;
+        while (queued < max && (segment = nextRecordSegment()) != null) {
+            int length = segment.recordLength(readOffset);
+            byte[] record = new byte[length];
+            segment.buffer.get(readOffset + HEADER, record);
+            readOffset += HEADER + length;
+            queued++;
+            try {
+                ChannelChange change = objectMapper.readValue(record, ChannelChange.class);
+                changes.merge(change.name(), change, ChannelChange::merge);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Skipping an unreadable record of the processor journal " + directory, e);
+            }
+        }
+        size -= queued;
+        return new Batch(new ArrayList<>(changes.values()), queued, oldest, new Position(readSegment, readOffset));
+    }
+
+    @Override
+    public void commit(Batch batch) throws IOException {
+        Position position = (Position) batch.position();
+        writeCheckpoint(position);
+        // delete the segments which were processed, keeping the one being written
+        while (!segments.isEmpty() && segments.firstKey() < position.segment()) {
+            Files.deleteIfExists(segments.pollFirstEntry().getValue().path);
+        }
+    }
+
+    @Override
+    public void close() {
+        segments.values().forEach(Segment::force);
+        segments.clear();
+    }
+
+    /**
+     * @return the number of segment files of the journal
+     */
+    int segmentCount() {
+        return segments.size();
+    }
+}
@@ -1,9 +1,11 @@
 package org.phoebus.channelfinder.processors;
 
 import org.phoebus.channelfinder.AuthorizationService;
-import org.phoebus.channelfinder.ChannelScroll;
+import org.phoebus.channelfinder.ChannelRepository;
+import org.phoebus.channelfinder.JobProgress;
+import org.phoebus.channelfinder.JobService;
 import org.phoebus.channelfinder.entity.Channel;
-import org.phoebus.channelfinder.entity.Scroll;
+import org.phoebus.channelfinder.entity.Job;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -27,6 +29,7 @@ import static org.phoebus.channelfinder.CFResourceDescriptors.CHANNEL_PROCESSOR_
 /**
  * A rest end point for retrieving information about the various channel processors included
  * in this installation of ChannelFinder and end points for manually triggering their processing.
+ * Processing the channels matching a query runs as a job, see {@link JobService}.
  */
 
 @RestController
@@ -41,12 +44,20 @@ public class ChannelProcessorManager {
     @Autowired
     AuthorizationService authorizationService;
 
-    // TODO replace with PIT and search_after
     @Autowired
-    ChannelScroll channelScroll;
+    ChannelRepository channelRepository;
 
-    @Value("${elasticsearch.query.size:10000}")
-    private int defaultMaxSize;
+    @Autowired
+    JobService jobService;
+
+    @Autowired
+    AAReconciler aaReconciler;
+
+    @Value("${processors.reprocess.slices:4}")
+    private int reprocessSlices;
+
+    @Value("${processors.reprocess.page.size:1000}")
+    private int reprocessPageSize;
 
     @GetMapping("/count")
     public long processorCount() {
@@ -58,8 +69,16 @@ public class ChannelProcessorManager {
         return channelProcessorService.getProcessorsInfo();
     }
 
+    /**
+     * @return the progress of the current or last reconciliation of the channels with the archivers
+     */
+    @GetMapping("/reconcile")
+    public AAReconciler.Cursor reconcileStatus() {
+        return aaReconciler.status();
+    }
+
     @PutMapping("/process/all")
-    public long processAllChannels() {
+    public Job processAllChannels() {
         logger.log(Level.INFO, "Calling processor on ALL channels in ChannelFinder");
         // Only allow authorized users to trigger this operation
         if(authorizationService
@@ -78,17 +97,29 @@ public class ChannelProcessorManager {
     }
 
     @PutMapping("/process/query")
-    public long processChannels(@RequestParam MultiValueMap<String, String> allRequestParams) {
-        long channelCount = 0;
-        Scroll scrollResult = channelScroll.query(allRequestParams);
-        channelCount += scrollResult.getChannels().size();
-        processChannels(scrollResult.getChannels());
-        while(scrollResult.getChannels().size() == defaultMaxSize) {
-            scrollResult = channelScroll.search(scrollResult.getId(), allRequestParams);
-            channelCount += scrollResult.getChannels().size();
-            processChannels(scrollResult.getChannels());
-        }
-        return channelCount;
+    public Job processChannels(@RequestParam MultiValueMap<String, String> allRequestParams) {
+        return jobService.submit("process-channels", allRequestParams.toString(),
+                progress -> processChannels(allRequestParams, progress));
+    }
+
+    /**
+     * Send the channels matching the query to the processors, scanning processors.reprocess.slices slices of the
+     * channel index in parallel one page at a time. Only the properties watched by the enabled processors are
+     * read, see {@link ChannelProcessor#watchedProperties()}. Each page waits while the processor queue is full,
+     * so at most one page per slice is held in memory. The scan stops after the current pages once the job is
+     * cancelled.
+     *
+     * @param allRequestParams query parameters
+     * @param progress progress of the job
+     * @return the number of channels sent to the processors
+     */
+    long processChannels(MultiValueMap<String, String> allRequestParams, JobProgress progress) {
+        progress.total(channelRepository.count(allRequestParams));
+        return channelRepository.scanAll(allRequestParams, channelProcessorService.getWatchedProperties(),
+                reprocessSlices, reprocessPageSize, progress::isCancelled, channels -> {
+                    processChannels(channels);
+                    progress.scanned(channels.size());
+                });
     }
 
     @PutMapping("/process/channels")
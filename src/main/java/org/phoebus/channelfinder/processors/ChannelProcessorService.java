@@ -2,10 +2,11 @@ package org.phoebus.channelfinder.processors;
 
 import org.phoebus.channelfinder.entity.Channel;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -19,7 +20,7 @@ public class ChannelProcessorService {
     private List<ChannelProcessor> channelProcessors;
 
     @Autowired
-    private TaskExecutor taskExecutor;
+    private ChannelProcessorDispatcher channelProcessorDispatcher;
 
     long getProcessorCount() {
         return channelProcessors.size();
@@ -29,27 +30,51 @@ public class ChannelProcessorService {
         return channelProcessors.stream().map(ChannelProcessor::processorInfo).collect(Collectors.toList());
     }
 
+    /**
+     * The properties the enabled processors act on, see {@link ChannelProcessor#watchedProperties()}
+     *
+     * @return the names of the properties, null if an enabled processor needs the whole channels
+     */
+    Set<String> getWatchedProperties() {
+        Set<String> properties = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (ChannelProcessor processor : channelProcessors) {
+            if (!processor.enabled()) {
+                continue;
+            }
+            if (processor.watchedProperties().isEmpty()) {
+                return null;
+            }
+            properties.addAll(processor.watchedProperties());
+        }
+        return properties;
+    }
+
     /**
      * {@link ChannelProcessor} providers are called for the specified list of channels. Since a provider
-     * implementation may need some time to do it's job, calling them is done asynchronously. Any
-     * error handling or logging has to be done in the {@link ChannelProcessor}, but exceptions are
-     * handled here in order to not abort if any of the providers fails.
+     * implementation may need some time to do it's job, the channels are queued and sent to the providers
+     * in batches by the {@link ChannelProcessorDispatcher}, which only keeps the latest version of a channel
+     * written several times before being processed. This waits while the queue is full.
+     * <p>
+     * The channels are sent as unchanged, with all their tags and properties reported as changed.
      *
      * @param channels list of channels to be processed
      */
     public void sendToProcessors(List<Channel> channels) {
-        logger.log(Level.INFO, channels.stream().map(Channel::toLog).collect(Collectors.joining()));
+        sendChangesToProcessors(channels.stream().map(ChannelChange::process).toList());
+    }
+
+    /**
+     * {@link ChannelProcessor} providers are called for the specified list of channel changes, queued and sent
+     * in batches as for {@link #sendToProcessors(List)}. The changes of a channel written several times before
+     * being processed are merged into one.
+     *
+     * @param changes list of channel changes to be processed
+     */
+    public void sendChangesToProcessors(List<ChannelChange> changes) {
+        logger.log(Level.INFO, changes.stream().map(ChannelChange::toLog).collect(Collectors.joining()));
         if (channelProcessors.isEmpty()) {
             return;
         }
-        taskExecutor.execute(() -> channelProcessors.stream()
-                .filter(ChannelProcessor::enabled)
-                .forEach(channelProcessor -> {
-                    try {
-                        channelProcessor.process(channels);
-                    } catch (Exception e) {
-                        logger.log(Level.WARNING, "ChannelProcessor " + channelProcessor.getClass().getName() + " throws exception", e);
-                    }
-                }));
+        channelProcessorDispatcher.submit(changes);
     }
 }
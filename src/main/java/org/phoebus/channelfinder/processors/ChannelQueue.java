@@ -0,0 +1,62 @@
+package org.phoebus.channelfinder.processors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The channel changes waiting to be sent to the {@link ChannelProcessor}s by the {@link ChannelProcessorDispatcher},
+ * which calls it while holding its lock.
+ */
+interface ChannelQueue extends Closeable {
+
+    /**
+     * A batch of channel changes taken from the queue
+     *
+     * @param changes  the changes of the batch combined into one per channel, in the order the channels were
+     *                 first queued
+     * @param queued   the number of channel changes queued the batch replaces
+     * @param oldest   the time in milliseconds since the epoch the oldest change of the batch was queued
+     * @param position the position in the queue following the batch, for {@link #commit(Batch)}
+     */
+    record Batch(List<ChannelChange> changes, long queued, long oldest, Object position) {
+    }
+
+    /**
+     * @return the number of queue entries, {@link #take(int)} takes up to its maximum of them. A queue merging the
+     * changes of a channel as they are offered counts the channel once
+     */
+    long size();
+
+    /**
+     * @return the time in milliseconds since the epoch the oldest queued change was queued, -1 if empty
+     */
+    long oldest();
+
+    /**
+     * Queue a channel change
+     *
+     * @param change the change
+     * @param time   the time in milliseconds since the epoch the change was queued
+     * @return false if the queue is full and the change was not queued
+     * @throws IOException if the change could not be queued
+     */
+    boolean offer(ChannelChange change, long time) throws IOException;
+
+    /**
+     * Take the oldest changes, the changes of the same channel are merged into one
+     *
+     * @param max maximum number of queue entries taken
+     * @return the batch of changes
+     * @throws IOException if the changes could not be read
+     */
+    Batch take(int max) throws IOException;
+
+    /**
+     * Record that the batch was processed, so it is not processed again after a restart
+     *
+     * @param batch a batch taken from this queue
+     * @throws IOException if the position could not be recorded
+     */
+    void commit(Batch batch) throws IOException;
+}
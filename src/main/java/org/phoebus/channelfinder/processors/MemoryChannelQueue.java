@@ -0,0 +1,86 @@
+package org.phoebus.channelfinder.processors;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ChannelQueue} kept in memory, lost on restart.
+ * <p>
+ * A change of a channel queued again before it is taken is merged with its queued change, which keeps its place in
+ * the queue. A channel created and deleted before it is taken is dropped.
+ */
+class MemoryChannelQueue implements ChannelQueue {
+
+    private final int maxPending;
+    // queued changes by channel name, in the order they were first queued
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+
+    private record Pending(ChannelChange change, long queued, long versions) {
+    }
+
+    /**
+     * @param maxPending maximum number of channels with a queued change
+     */
+    MemoryChannelQueue(int maxPending) {
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    /**
+     * @return the number of channels with a queued change, the versions merged into them are not counted
+     */
+    @Override
+    public long size() {
+        return pending.size();
+    }
+
+    @Override
+    public long oldest() {
+        return pending.isEmpty() ? -1 : pending.values().iterator().next().queued();
+    }
+
+    @Override
+    public boolean offer(ChannelChange change, long time) {
+        Pending previous = pending.get(change.name());
+        if (previous != null) {
+            ChannelChange merged = previous.change().merge(change);
+            if (merged == null) {
+                pending.remove(change.name());
+                return true;
+            }
+            pending.put(change.name(), new Pending(merged, previous.queued(), previous.versions() + 1));
+        } else if (pending.size() >= maxPending) {
+            return false;
+        } else {
+            pending.put(change.name(), new Pending(change, time, 1));
+        }
+        return true;
+    }
+
+    @Override
+    public Batch take(int max) {
+        List<ChannelChange> changes = new ArrayList<>(Math.min(max, pending.size()));
+        long queued = 0;
+        long oldest = oldest();
+        Iterator<Pending> iterator = pending.values().iterator();
+        while (iterator.hasNext() && changes.size() < max) {
+            Pending next = iterator.next();
+            changes.add(next.change());
+            queued += next.versions();
+            iterator.remove();
+        }
+        return new Batch(changes, queued, oldest, null);
+    }
+
+    @Override
+    public void commit(Batch batch) {
+        // nothing to record
+    }
+
+    @Override
+    public void close() {
+        pending.clear();
+    }
+}
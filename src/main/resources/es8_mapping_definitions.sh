@@ -86,3 +86,53 @@ curl -H 'Content-Type: application/json' -XPUT http://${es_host}:${es_port}/chan
     }
   }
 }'
+
+curl -H 'Content-Type: application/json' -XPUT http://${es_host}:${es_port}/cf_jobs -d'
+{
+"mappings":{
+    "properties" : {
+      "id" : {
+        "type" : "keyword"
+      },
+      "type" : {
+        "type" : "keyword"
+      },
+      "description" : {
+        "type" : "keyword"
+      },
+      "owner" : {
+        "type" : "keyword"
+      },
+      "state" : {
+        "type" : "keyword"
+      },
+      "created" : {
+        "type" : "long"
+      },
+      "started" : {
+        "type" : "long"
+      },
+      "finished" : {
+        "type" : "long"
+      },
+      "total" : {
+        "type" : "long"
+      },
+      "scanned" : {
+        "type" : "long"
+      },
+      "modified" : {
+        "type" : "long"
+      },
+      "rate" : {
+        "type" : "double"
+      },
+      "eta" : {
+        "type" : "long"
+      },
+      "error" : {
+        "type" : "text"
+      }
+    }
+  }
+}'
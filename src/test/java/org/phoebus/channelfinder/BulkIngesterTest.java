@@ -0,0 +1,50 @@
+package org.phoebus.channelfinder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+class BulkIngesterTest {
+
+    private BulkIngester bulkIngester;
+
+    @BeforeEach
+    void setup() {
+        ElasticConfig esService = new ElasticConfig();
+        ReflectionTestUtils.setField(esService, "ES_BULK_MAX_OPERATIONS", 3);
+        ReflectionTestUtils.setField(esService, "ES_BULK_MAX_BYTES", 1000L);
+        bulkIngester = new BulkIngester();
+        bulkIngester.esService = esService;
+    }
+
+    private static List<BulkIngester.Operation> operations(long... sizes) {
+        return IntStream.range(0, sizes.length)
+                .mapToObj(i -> new BulkIngester.Operation("channelfinder", "ch" + i, null, sizes[i]))
+                .toList();
+    }
+
+    @Test
+    void splitByOperations() {
+        Assertions.assertEquals(
+                List.of(List.of(0, 1, 2), List.of(3, 4, 5), List.of(6)),
+                bulkIngester.split(operations(10, 10, 10, 10, 10, 10, 10)));
+    }
+
+    @Test
+    void splitByBytes() {
+        Assertions.assertEquals(
+                List.of(List.of(0, 1), List.of(2, 3), List.of(4)),
+                bulkIngester.split(operations(400, 500, 600, 300, 700)));
+    }
+
+    @Test
+    void oversizedOperationIsSentAlone() {
+        Assertions.assertEquals(
+                List.of(List.of(0), List.of(1), List.of(2)),
+                bulkIngester.split(operations(10, 5000, 10)));
+    }
+}
@@ -11,6 +11,7 @@ import org.junit.jupiter.api.TestInstance;
 import org.phoebus.channelfinder.entity.Channel;
 import org.phoebus.channelfinder.entity.Property;
 import org.phoebus.channelfinder.entity.Tag;
+import org.phoebus.channelfinder.entity.WriteSummary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -185,6 +186,28 @@ class ChannelManagerIT {
         Assertions.assertTrue(Iterables.elementsEqual(testChannels, foundChannels), "Failed to create the channels");
     }
 
+    /**
+     * create multiple channels, returning only a summary
+     */
+    @Test
+    void createXmlChannelsSummary() {
+        testProperties.forEach(prop -> prop.setValue("value"));
+        Channel testChannel0 = new Channel("testChannel0", "testOwner",testProperties,testTags);
+        Channel testChannel1 = new Channel("testChannel1", "testOwner");
+        List<Channel> testChannels = Arrays.asList(testChannel0,testChannel1);
+        cleanupTestChannels = testChannels;
+
+        Object summary = channelManager.create(testChannels, "wait_for", "summary", false);
+        // verify only the count was returned and the channels were created as expected
+        Assertions.assertEquals(new WriteSummary(2, Collections.emptyMap()), summary);
+        Assertions.assertNull(channelManager.update(testChannels, "false", "none"));
+        List<Channel> foundChannels = new ArrayList<Channel>();
+        testChannels.forEach(chan -> foundChannels.add(channelRepository.findById(chan.getName()).get()));
+        Assertions.assertTrue(Iterables.elementsEqual(testChannels, foundChannels), "Failed to create the channels");
+
+        Assertions.assertThrows(ResponseStatusException.class, () -> channelManager.create(testChannels, "never", null, false));
+    }
+
     /**
      * create by overriding multiple channels
      */
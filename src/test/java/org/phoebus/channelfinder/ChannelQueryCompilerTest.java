@@ -0,0 +1,84 @@
+package org.phoebus.channelfinder;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.phoebus.channelfinder.ChannelQueryCompiler.ChannelQuery;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Optional;
+
+class ChannelQueryCompilerTest {
+
+    private ChannelQueryCompiler queryCompiler;
+
+    @BeforeEach
+    void setup() {
+        ElasticConfig esService = new ElasticConfig();
+        ReflectionTestUtils.setField(esService, "ES_QUERY_SIZE", 10000);
+        ReflectionTestUtils.setField(esService, "ES_QUERY_CACHE_SIZE", 2);
+        queryCompiler = new ChannelQueryCompiler(esService);
+    }
+
+    @Test
+    void parsePaging() {
+        MultiValueMap<String, String> searchParameters = new LinkedMultiValueMap<>();
+        ChannelQuery channelQuery = queryCompiler.parse(searchParameters);
+        Assertions.assertEquals(10000, channelQuery.size());
+        Assertions.assertEquals(0, channelQuery.from());
+        Assertions.assertEquals(Optional.empty(), channelQuery.searchAfter());
+        Assertions.assertFalse(channelQuery.trackTotalHits());
+
+        searchParameters.add("~size", "10");
+        searchParameters.add("~size", "20");
+        searchParameters.add("~from", "5");
+        searchParameters.add("~search_after", "SR:C001");
+        searchParameters.add("~track_total_hits", "true");
+        channelQuery = queryCompiler.parse(searchParameters);
+        Assertions.assertEquals(20, channelQuery.size());
+        Assertions.assertEquals(5, channelQuery.from());
+        Assertions.assertEquals(Optional.of("SR:C001"), channelQuery.searchAfter());
+        Assertions.assertTrue(channelQuery.trackTotalHits());
+        Assertions.assertTrue(channelQuery.clauses().isEmpty());
+    }
+
+    @Test
+    void equivalentQueriesAreNormalized() {
+        MultiValueMap<String, String> first = new LinkedMultiValueMap<>();
+        first.add("~name", "SR* | BR*");
+        first.add("~tag!", "group1");
+        first.add("prop", "A,b");
+        MultiValueMap<String, String> second = new LinkedMultiValueMap<>();
+        second.add("PROP", "B|a|a");
+        second.add("~tag!", "Group1");
+        second.add("~name", "br*;sr*");
+        second.add("~size", "10");
+
+        Assertions.assertEquals(queryCompiler.parse(first).clauses(), queryCompiler.parse(second).clauses());
+        Assertions.assertSame(queryCompiler.compile(first), queryCompiler.compile(second));
+
+        MultiValueMap<String, String> negated = new LinkedMultiValueMap<>();
+        negated.add("~name", "SR*|BR*");
+        negated.add("~tag", "group1");
+        negated.add("prop", "A,b");
+        Assertions.assertNotEquals(queryCompiler.parse(first).clauses(), queryCompiler.parse(negated).clauses());
+    }
+
+    @Test
+    void leastRecentlyUsedQueryIsEvicted() {
+        List<ChannelQueryCompiler.Clause> sr = List.of(ChannelQueryCompiler.Clause.name(List.of("SR*")));
+        List<ChannelQueryCompiler.Clause> br = List.of(ChannelQueryCompiler.Clause.name(List.of("BR*")));
+        List<ChannelQueryCompiler.Clause> tag = List.of(ChannelQueryCompiler.Clause.tag(List.of("group1"), false));
+
+        Query srQuery = queryCompiler.compile(sr);
+        Query brQuery = queryCompiler.compile(br);
+        Assertions.assertSame(srQuery, queryCompiler.compile(sr));
+        queryCompiler.compile(tag);
+        Assertions.assertSame(srQuery, queryCompiler.compile(sr));
+        Assertions.assertNotSame(brQuery, queryCompiler.compile(br));
+    }
+}
@@ -62,6 +62,28 @@ class ChannelRepositoryIT {
         Assertions.assertEquals(testChannel, createdChannel, "Failed to create the channel");
     }
 
+    /**
+     * index concurrent single channels, which are written together in batches
+     */
+    @Test
+    void indexConcurrentXmlChannels() {
+        List<Channel> testChannels = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            testChannels.add(new Channel("testChannel" + i, "testOwner", testProperties, testTags));
+        }
+        cleanupTestChannels = testChannels;
+
+        List<Channel> createdChannels = testChannels.parallelStream().map(channelRepository::index).toList();
+        // verify each writer got back its own channel
+        Assertions.assertEquals(testChannels, createdChannels, "Failed to create the channels");
+        Assertions.assertTrue(channelRepository.existsByIds(testChannels.stream().map(Channel::getName).toList()),
+                "Failed to create the channels");
+
+        testChannels.parallelStream().forEach(channel -> channelRepository.deleteById(channel.getName()));
+        Assertions.assertTrue(testChannels.stream().noneMatch(channel -> channelRepository.existsById(channel.getName())),
+                "Failed to delete the channels");
+    }
+
     /**
      * index multiple channels
      */
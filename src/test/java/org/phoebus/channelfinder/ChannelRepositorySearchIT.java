@@ -18,7 +18,10 @@ import org.springframework.util.MultiValueMap;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -116,6 +119,46 @@ class ChannelRepositorySearchIT {
         searchParameters.add("~track_total_hits", "true");
         assertSearchCount(allCount, (int) elasticDefaultCount, allCount, searchParameters);
 
+        logger.log(Level.INFO, "Stream all 1000 SR channels and all 500 booster channels beyond the max result window");
+        searchParameters.clear();
+        searchParameters.add("~name", "SR*|BR*");
+        Set<String> streamed = new HashSet<>();
+        long streamedCount = channelRepository.searchAll(searchParameters,
+                channels -> channels.forEach(channel -> streamed.add(channel.getName())));
+        Assertions.assertEquals(allCount, streamedCount);
+        Assertions.assertEquals(allCount, streamed.size());
+
+        searchParameters.add("~size", "42");
+        Assertions.assertEquals(42, channelRepository.searchAll(searchParameters, channels -> {}));
+
+        logger.log(Level.INFO, "Scan all 1000 SR channels and all 500 booster channels in parallel slices");
+        searchParameters.clear();
+        searchParameters.add("~name", "SR*|BR*");
+        Set<String> scanned = ConcurrentHashMap.newKeySet();
+        long scannedCount = channelRepository.scanAll(searchParameters, null, 3, 1000, () -> false,
+                channels -> channels.forEach(channel -> scanned.add(channel.getName())));
+        Assertions.assertEquals(allCount, scannedCount);
+        Assertions.assertEquals(allCount, scanned.size());
+
+        logger.log(Level.INFO, "Scan the channels with only the location property");
+        channelRepository.scanAll(searchParameters, Set.of("LOCATION"), 2, 1000, () -> false,
+                channels -> channels.forEach(channel -> {
+                    Assertions.assertTrue(channel.getTags().isEmpty(), "Failed to leave out the tags");
+                    Assertions.assertEquals(1, channel.getProperties().size());
+                    Assertions.assertEquals("location", channel.getProperties().get(0).getName(),
+                            "Failed to leave out the unwatched properties");
+                }));
+        Assertions.assertEquals(0, channelRepository.scanAll(searchParameters, null, 2, 1000, () -> true,
+                channels -> {}), "Failed to stop a cancelled scan");
+
+        logger.log(Level.INFO, "Count the channels with any of several tags or property values as the search does");
+        searchParameters.clear();
+        searchParameters.add("~tag", "group1_10,group1_20");
+        Assertions.assertEquals(channelRepository.count(searchParameters), channelRepository.countByTag("group1_10,group1_20"));
+        searchParameters.clear();
+        searchParameters.add("group1", "10|20");
+        Assertions.assertEquals(channelRepository.count(searchParameters), channelRepository.countByProperty("group1", "10|20"));
+
         logger.log(Level.INFO, "Search for channels based on a tag");
         for (long id = 1; id < valBucket.size(); id++) {
 
@@ -170,6 +170,26 @@ class ChannelScrollIT {
         }
     }
 
+    /**
+     * Test that a scroll returns a consistent snapshot of the channels which matched when it was opened
+     */
+    @Test
+    void searchSnapshotTest() {
+        MultiValueMap<String, String> searchParameters = new LinkedMultiValueMap<String, String>();
+        searchParameters.add("~name", "SR*");
+        Scroll scrollResult = channelScroll.search(null, searchParameters);
+        List<Channel> result = scrollResult.getChannels();
+
+        // channels created after the scroll was opened should not be returned by it
+        Channel created = channelRepository.index(new Channel("SR:snapshot-test", "testOwner"));
+        while(scrollResult.getChannels().size()==100) {
+            scrollResult = channelScroll.search(scrollResult.getId(), searchParameters);
+            result.addAll(scrollResult.getChannels());
+        }
+        channelRepository.deleteById(created.getName());
+        Assertions.assertEquals(1000, result.size(), "Expected 1000 but got " + result.size());
+    }
+
     private String maptoString(MultiValueMap<String, String> searchParameters) {
         StringBuffer sb = new StringBuffer();
         searchParameters.forEach((key, value) -> sb.append(key).append(" ").append(value));
@@ -12,7 +12,7 @@ public class ElasticConfigIT {
      */
     static void teardown(ElasticConfig elasticConfig) throws IOException {
 
-        String[] indexes = new String[] {elasticConfig.getES_CHANNEL_INDEX(), elasticConfig.getES_PROPERTY_INDEX(), elasticConfig.getES_TAG_INDEX()};
+        String[] indexes = new String[] {elasticConfig.getES_CHANNEL_INDEX(), elasticConfig.getES_PROPERTY_INDEX(), elasticConfig.getES_TAG_INDEX(), elasticConfig.getES_JOB_INDEX()};
         for (String index: indexes) {
             if (elasticConfig.getSearchClient().indices().exists(b -> b.index(index)).value()) {
                 elasticConfig.getSearchClient().indices().delete(b -> b.index(index));
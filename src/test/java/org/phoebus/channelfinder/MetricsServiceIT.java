@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -95,24 +96,46 @@ class MetricsServiceIT {
     @Test
     void testGaugeMetrics() throws Exception {
         mockMvc.perform(get(METRICS_ENDPOINT)).andExpect(status().is(200));
-        mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TOTAL_CHANNEL_COUNT))
-                .andExpect(jsonPath("$.measurements[0].value").value(0));
-        mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_PROPERTY_COUNT))
-                .andExpect(jsonPath("$.measurements[0].value").value(0));
-        mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TAG_COUNT))
-                .andExpect(jsonPath("$.measurements[0].value").value(0));
+        // the gauges read the snapshot of the last update
+        await().untilAsserted(() -> {
+            mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TOTAL_CHANNEL_COUNT))
+                    .andExpect(jsonPath("$.measurements[0].value").value(0));
+            mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_PROPERTY_COUNT))
+                    .andExpect(jsonPath("$.measurements[0].value").value(0));
+            mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TAG_COUNT))
+                    .andExpect(jsonPath("$.measurements[0].value").value(0));
+        });
 
         Channel testChannel = new Channel("testChannel", "testOwner");
         channelRepository.save(testChannel);
         propertyRepository.saveAll(testProperties);
         tagRepository.saveAll(testTags);
 
-        mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TOTAL_CHANNEL_COUNT))
-                .andExpect(jsonPath("$.measurements[0].value").value(1));
-        mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_PROPERTY_COUNT))
-                .andExpect(jsonPath("$.measurements[0].value").value(3));
-        mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TAG_COUNT))
-                .andExpect(jsonPath("$.measurements[0].value").value(2));
+        await().untilAsserted(() -> {
+            mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TOTAL_CHANNEL_COUNT))
+                    .andExpect(jsonPath("$.measurements[0].value").value(1));
+            mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_PROPERTY_COUNT))
+                    .andExpect(jsonPath("$.measurements[0].value").value(3));
+            mockMvc.perform(get(METRICS_ENDPOINT + MetricsService.CF_TAG_COUNT))
+                    .andExpect(jsonPath("$.measurements[0].value").value(2));
+        });
+    }
+
+    @Test
+    void testCountAll() {
+        tagRepository.saveAll(testTags);
+        propertyRepository.saveAll(testProperties);
+        channelRepository.save(new Channel("testChannelCount0", "testOwner",
+                List.of(new Property("testProperty0", "testPropertyOwner0", "testProperty0Value")),
+                List.of(testTags.get(0))));
+        channelRepository.save(new Channel("testChannelCount1", "testOwner", List.of(), testTags));
+
+        ChannelRepository.ChannelCounts counts = channelRepository.countAll(
+                List.of("testTag0", "testTag1"),
+                List.of(new String[]{"testProperty0", "testProperty0Value"}, new String[]{"testProperty1", null}));
+        assertEquals(2, counts.total());
+        assertEquals(List.of(2L, 1L), counts.tags());
+        assertEquals(List.of(1L, 0L), counts.properties());
     }
 
     @Test
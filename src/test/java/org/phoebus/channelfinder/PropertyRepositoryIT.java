@@ -249,6 +249,34 @@ class PropertyRepositoryIT {
         Assertions.assertTrue(chans.isEmpty(), "Failed to remove property from channel");
     }
 
+    /**
+     * rename a property on all its channels, keeping their values
+     */
+    @Test
+    void renameXmlProperty() {
+        Property testProperty = propertyRepository.index(new Property(TEST_PROPERTY_NAME,"testOwner"));
+        List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            channels.add(new Channel("testChannel" + i, "testOwner",
+                    Arrays.asList(new Property(TEST_PROPERTY_NAME, "testOwner", "value" + i)), null));
+        }
+        channelRepository.indexAll(channels);
+
+        Property renamedProperty = propertyRepository.rename(testProperty.getName(), new Property(TEST_PROPERTY_NAME + 1, "updateTestOwner"));
+        Assertions.assertEquals(new Property(TEST_PROPERTY_NAME + 1, "updateTestOwner"), renamedProperty);
+        Assertions.assertFalse(propertyRepository.existsById(TEST_PROPERTY_NAME), "Failed to delete the old property");
+        Assertions.assertTrue(propertyRepository.existsById(TEST_PROPERTY_NAME + 1), "Failed to create the new property");
+
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add(TEST_PROPERTY_NAME, "*");
+        Assertions.assertEquals(0, channelRepository.count(params), "Failed to rename the property on channels");
+        params.clear();
+        params.add(TEST_PROPERTY_NAME + 1, "*");
+        Assertions.assertEquals(100, channelRepository.count(params), "Failed to rename the property on channels");
+        Assertions.assertEquals(List.of(new Property(TEST_PROPERTY_NAME + 1, "updateTestOwner", "value7")),
+                channelRepository.findById("testChannel7").get().getProperties());
+    }
+
     @AfterEach
     public void cleanup() {
         
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Job;
 import org.phoebus.channelfinder.entity.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -48,6 +49,9 @@ class TagManagerIT {
 
     @Autowired
     ElasticConfig esService;
+
+    @Autowired
+    JobService jobService;
     private static final Logger logger = Logger.getLogger(TagManagerIT.class.getName());
 
     @AfterAll
@@ -631,6 +635,33 @@ class TagManagerIT {
         Assertions.assertEquals(new ArrayList<Channel>(), channelRepository.search(params).channels(), "Failed to delete the tag from channels");
     }
 
+    /**
+     * delete a single tag in a background job
+     */
+    @Test
+    void deleteXmlTagAsync() throws InterruptedException {
+        Tag testTag1 = new Tag("testTag1", "testOwner");
+        testTag1.setChannels(testChannels());
+        tagManager.create(testTag1.getName(), testTag1);
+
+        Job job = tagManager.remove(testTag1.getName(), true);
+        Assertions.assertNotNull(job, "Failed to submit the job");
+        Assertions.assertEquals("delete-tag", job.getType());
+        for (int i = 0; i < 100 && !job.getState().isDone(); i++) {
+            Thread.sleep(100);
+            job = jobService.get(job.getId()).orElseThrow();
+        }
+        // verify the job completed and removed the tag from all associated channels
+        Assertions.assertEquals(Job.State.SUCCEEDED, job.getState(), "Failed to complete the job " + job.getError());
+        Assertions.assertEquals(testChannels().size(), job.getModified(), "Failed to report the updated channels");
+        String jobId = job.getId();
+        Assertions.assertTrue(jobService.list().stream().anyMatch(listed -> listed.getId().equals(jobId)), "Failed to list the job");
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<String, String>();
+        params.add("~tag", testTag1.getName());
+        Assertions.assertFalse(tagRepository.existsById(testTag1.getName()), "Failed to delete the tag");
+        Assertions.assertEquals(new ArrayList<Channel>(), channelRepository.search(params).channels(), "Failed to delete the tag from channels");
+    }
+
     /**
      * delete a single tag from a single channel 
      */
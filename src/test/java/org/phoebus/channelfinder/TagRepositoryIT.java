@@ -16,6 +16,7 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +37,9 @@ class TagRepositoryIT {
     @Autowired
     ChannelRepository channelRepository;
 
+    @Autowired
+    MetadataCache metadataCache;
+
     @AfterAll
     void tearDown() throws IOException {
         ElasticConfigIT.teardown(esService);
@@ -235,6 +239,76 @@ class TagRepositoryIT {
         channelRepository.deleteById(createdChannel.getName());
     }
 
+    /**
+     * delete a tag from many channels, keeping their other tags
+     */
+    @Test
+    void deleteXmlTagFromChannels() {
+        Tag testTag = tagRepository.index(new Tag("testTag","testOwner"));
+        Tag testTag1 = tagRepository.index(new Tag("testTag1","testOwner"));
+        cleanupTestTags = Arrays.asList(testTag, testTag1);
+        List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            channels.add(new Channel("testChannel" + i, "testOwner", null, Arrays.asList(testTag, testTag1)));
+        }
+        channelRepository.indexAll(channels);
+
+        tagRepository.deleteById(testTag.getName());
+
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("~tag", testTag.getName());
+        Assertions.assertEquals(0, channelRepository.count(params), "Failed to remove tag from channels");
+        params.set("~tag", testTag1.getName());
+        Assertions.assertEquals(100, channelRepository.count(params), "Removed the wrong tag from channels");
+        Assertions.assertEquals(List.of("testTag1"),
+                channelRepository.findById("testChannel0").get().getTags().stream().map(Tag::getName).toList());
+    }
+
+    /**
+     * rename a tag on all its channels
+     */
+    @Test
+    void renameXmlTag() {
+        Tag testTag = tagRepository.index(new Tag("testTag","testOwner"));
+        cleanupTestTags = Arrays.asList(testTag, new Tag("testTag1","updateTestOwner"));
+        List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            channels.add(new Channel("testChannel" + i, "testOwner", null, Arrays.asList(testTag)));
+        }
+        channelRepository.indexAll(channels);
+
+        Tag renamedTag = tagRepository.rename(testTag.getName(), new Tag("testTag1","updateTestOwner"));
+        Assertions.assertEquals(new Tag("testTag1","updateTestOwner"), renamedTag);
+        Assertions.assertFalse(tagRepository.existsById("testTag"), "Failed to delete the old tag");
+        Assertions.assertEquals(Optional.of("updateTestOwner"), metadataCache.getTagOwner("testTag1"));
+
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("~tag", "testTag");
+        Assertions.assertEquals(0, channelRepository.count(params), "Failed to rename the tag on channels");
+        params.set("~tag", "testTag1");
+        Assertions.assertEquals(100, channelRepository.count(params), "Failed to rename the tag on channels");
+        Tag channelTag = channelRepository.findById("testChannel0").get().getTags().get(0);
+        Assertions.assertEquals("updateTestOwner", channelTag.getOwner());
+    }
+
+    /**
+     * the tag owners cache is updated by the tag writes
+     */
+    @Test
+    void cachedTagOwners() {
+        Tag testTag = new Tag("testTag","testOwner");
+        cleanupTestTags = Arrays.asList(testTag);
+
+        tagRepository.index(testTag);
+        Assertions.assertEquals(Optional.of("testOwner"), metadataCache.getTagOwner(testTag.getName()));
+        tagRepository.save(new Tag("testTag","updateTestOwner"));
+        Assertions.assertEquals(Optional.of("updateTestOwner"), metadataCache.getTagOwner(testTag.getName()));
+        Assertions.assertEquals(List.of(new Tag("testTag","updateTestOwner")), metadataCache.getTags());
+
+        tagRepository.deleteById(testTag.getName());
+        Assertions.assertFalse(metadataCache.containsTag(testTag.getName()), "Failed to remove the deleted tag");
+    }
+
     // helper operations to clean up tagrepoIT
     
     private List<Tag> cleanupTestTags = Collections.emptyList();
@@ -0,0 +1,156 @@
+package org.phoebus.channelfinder.epics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.pva.data.PVABoolArray;
+import org.epics.pva.data.PVAStringArray;
+import org.epics.pva.data.PVAStructure;
+import org.epics.pva.data.nt.MustBeArrayException;
+import org.epics.pva.data.nt.PVATable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Property;
+import org.phoebus.channelfinder.entity.Tag;
+
+/**
+ * Compares building the NTTable of the pva RPC service with the {@link ChannelTableBuilder} to the map of lists
+ * it replaced, for wide results of channels with many properties and tags.
+ * <p>
+ * Run from the IDE or with the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.phoebus.channelfinder.epics.ChannelTableBuilderBenchmark
+ * </pre>
+ * and add -prof gc to the JMH options to compare the allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelTableBuilderBenchmark {
+
+    @Param({"1000", "10000"})
+    int channelCount;
+
+    @Param({"40"})
+    int propertyCount;
+
+    @Param({"10"})
+    int tagCount;
+
+    @Param({"1000"})
+    int pageSize;
+
+    List<Channel> channels;
+
+    @Setup
+    public void setup() {
+        channels = new ArrayList<>(channelCount);
+        for (int i = 0; i < channelCount; i++) {
+            List<Property> properties = new ArrayList<>(propertyCount);
+            for (int p = 0; p < propertyCount; p++) {
+                // some channels lack the last properties
+                if (p < propertyCount - i % 5) {
+                    properties.add(new Property("property" + p, "owner", "value" + (i % 100)));
+                }
+            }
+            List<Tag> tags = new ArrayList<>(tagCount);
+            for (int t = 0; t < tagCount; t++) {
+                if ((i + t) % 3 != 0) {
+                    tags.add(new Tag("tag" + t, "owner"));
+                }
+            }
+            channels.add(new Channel(String.format("SR:C%02d-BI:%06d", i % 30, i), "owner", properties, tags));
+        }
+    }
+
+    @Benchmark
+    public PVAStructure mapOfLists() throws MustBeArrayException {
+        return mapOfLists(channels);
+    }
+
+    @Benchmark
+    public PVAStructure columnar() throws MustBeArrayException {
+        return new ChannelTableBuilder(channels.size()).add(channels).build(ChannelFinderEpicsService.SERVICE_DESC);
+    }
+
+    @Benchmark
+    public PVAStructure columnarPages() throws MustBeArrayException {
+        ChannelTableBuilder table = new ChannelTableBuilder(0);
+        for (int from = 0; from < channels.size(); from += pageSize) {
+            table.add(channels.subList(from, Math.min(channels.size(), from + pageSize)));
+        }
+        return table.build(ChannelFinderEpicsService.SERVICE_DESC);
+    }
+
+    /**
+     * The table built as by the pva RPC service before the {@link ChannelTableBuilder}
+     */
+    static PVAStructure mapOfLists(List<Channel> result) throws MustBeArrayException {
+        final Map<String, List<String>> channelTable = new HashMap<>();
+        final Map<String, List<String>> channelPropertyTable = new HashMap<>();
+        final Map<String, boolean[]> channelTagTable = new HashMap<>();
+        channelTable.put(ChannelFinderEpicsService.COLUMN_CHANNEL_NAME, Arrays.asList(new String[result.size()]));
+        channelTable.put(ChannelFinderEpicsService.COLUMN_OWNER, Arrays.asList(new String[result.size()]));
+
+        AtomicInteger counter = new AtomicInteger(0);
+
+        result.forEach(ch -> {
+            int index = counter.getAndIncrement();
+
+            channelTable.get(ChannelFinderEpicsService.COLUMN_CHANNEL_NAME).set(index, ch.getName());
+            channelTable.get(ChannelFinderEpicsService.COLUMN_OWNER).set(index, ch.getOwner());
+
+            ch.getTags().forEach(t -> {
+                if (!channelTagTable.containsKey(t.getName())) {
+                    channelTagTable.put(t.getName(), new boolean[result.size()]);
+                }
+                channelTagTable.get(t.getName())[index] = true;
+            });
+
+            ch.getProperties().forEach(prop -> {
+                if (!channelPropertyTable.containsKey(prop.getName())) {
+                    channelPropertyTable.put(prop.getName(), Arrays.asList(new String[result.size()]));
+                }
+                channelPropertyTable.get(prop.getName()).set(index, prop.getValue());
+            });
+        });
+        PVATable.PVATableBuilder ntTableBuilder = PVATable.PVATableBuilder.aPVATable()
+                .name(ChannelFinderEpicsService.SERVICE_DESC);
+
+        channelTable.keySet().forEach(name ->
+                ntTableBuilder.addColumn(new PVAStringArray(name, channelTable.get(name).toArray(String[]::new))));
+        channelPropertyTable.keySet().forEach(name ->
+                ntTableBuilder.addColumn(new PVAStringArray(name, channelPropertyTable.get(name).toArray(String[]::new))));
+        channelTagTable.keySet().forEach(name ->
+                ntTableBuilder.addColumn(new PVABoolArray(name, channelTagTable.get(name))));
+        return ntTableBuilder.build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChannelTableBuilderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
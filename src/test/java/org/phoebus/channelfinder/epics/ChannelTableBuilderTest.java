@@ -0,0 +1,76 @@
+package org.phoebus.channelfinder.epics;
+
+import org.epics.pva.data.nt.MustBeArrayException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Property;
+import org.phoebus.channelfinder.entity.Tag;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class ChannelTableBuilderTest {
+
+    private static final List<Channel> channels = List.of(
+            new Channel("ch0", "owner0",
+                    List.of(new Property("location", "owner", "a"), new Property("device", "owner", "d0")),
+                    List.of(new Tag("tag0", "owner"))),
+            new Channel("ch1", "owner1",
+                    List.of(new Property("location", "owner", "b")),
+                    List.of(new Tag("tag0", "owner"), new Tag("tag1", "owner"))),
+            new Channel("ch2", "owner2", List.of(), List.of()));
+
+    private static Map<String, String> properties(Channel channel) {
+        return channel.getProperties().stream().collect(Collectors.toMap(Property::getName, Property::getValue));
+    }
+
+    private static Set<String> tags(Channel channel) {
+        return channel.getTags().stream().map(Tag::getName).collect(Collectors.toSet());
+    }
+
+    private static void assertTable(List<Channel> parsed) {
+        Assertions.assertEquals(List.of("ch0", "ch1", "ch2"), parsed.stream().map(Channel::getName).toList());
+        Assertions.assertEquals(List.of("owner0", "owner1", "owner2"), parsed.stream().map(Channel::getOwner).toList());
+        Assertions.assertEquals(Map.of("location", "a", "device", "d0"), properties(parsed.get(0)));
+        Assertions.assertEquals(Map.of("location", "b"), properties(parsed.get(1)));
+        Assertions.assertEquals(Map.of(), properties(parsed.get(2)));
+        Assertions.assertEquals(Set.of("tag0"), tags(parsed.get(0)));
+        Assertions.assertEquals(Set.of("tag0", "tag1"), tags(parsed.get(1)));
+        Assertions.assertEquals(Set.of(), tags(parsed.get(2)));
+    }
+
+    @Test
+    void buildTable() throws MustBeArrayException {
+        ChannelTableBuilder table = new ChannelTableBuilder(channels.size()).add(channels);
+        Assertions.assertEquals(3, table.size());
+        assertTable(NTXmlUtil.parse(table.build(ChannelFinderEpicsService.SERVICE_DESC)));
+    }
+
+    @Test
+    void buildTableFromPages() throws MustBeArrayException {
+        ChannelTableBuilder table = new ChannelTableBuilder(0)
+                .add(channels.subList(0, 1))
+                .add(channels.subList(1, 3));
+        assertTable(NTXmlUtil.parse(table.build(ChannelFinderEpicsService.SERVICE_DESC)));
+    }
+
+    @Test
+    void sameTableAsMapOfLists() throws MustBeArrayException {
+        assertTable(NTXmlUtil.parse(ChannelTableBuilderBenchmark.mapOfLists(channels)));
+    }
+
+    @Test
+    void iterateTable() throws MustBeArrayException {
+        Iterator<Channel> iterator = NTXmlUtil.iterator(new ChannelTableBuilder(channels.size()).add(channels)
+                .build(ChannelFinderEpicsService.SERVICE_DESC));
+        List<Channel> parsed = new ArrayList<>();
+        iterator.forEachRemaining(parsed::add);
+        assertTable(parsed);
+        Assertions.assertFalse(iterator.hasNext());
+    }
+}
@@ -2,7 +2,10 @@ package org.phoebus.channelfinder.epics;
 
 import org.epics.pva.client.PVAChannel;
 import org.epics.pva.client.PVAClient;
+import org.epics.pva.data.PVALong;
+import org.epics.pva.data.PVAStringArray;
 import org.epics.pva.data.PVAStructure;
+import org.epics.pva.data.nt.PVATable;
 import org.epics.pva.data.nt.PVAURI;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
@@ -67,6 +70,9 @@ class EpicsRPCRequestIT {
     @Autowired
     TagManager tagManager;
 
+    @Autowired
+    ChannelFinderEpicsPVs epicsPVs;
+
     @Test
     void testRPCService() throws ExecutionException, InterruptedException, TimeoutException {
         pvaChannel.connect().get(5, TimeUnit.SECONDS);
@@ -111,4 +117,80 @@ class EpicsRPCRequestIT {
             Assertions.fail(e);
         }
     }
+
+    @Test
+    void testRPCSizeLimit() throws ExecutionException, InterruptedException, TimeoutException {
+        pvaChannel.connect().get(5, TimeUnit.SECONDS);
+
+        PVAURI uri = new PVAURI("uriname", "pva", "auth", ChannelFinderEpicsService.SERVICE_DESC,
+                Map.of("_name", "*", "_size", String.valueOf(Integer.MAX_VALUE)));
+        Assertions.assertThrows(ExecutionException.class,
+                () -> pvaChannel.invoke(uri.cloneData()).get(30, TimeUnit.SECONDS),
+                "Failed to reject a size above epics.rpc.max.size");
+    }
+
+    @Test
+    void testRPCOperations() throws Exception {
+        pvaChannel.connect().get(5, TimeUnit.SECONDS);
+
+        Tag tag = new Tag("testOperationTag", "testOwner");
+        tagManager.create(List.of(tag));
+        List<Channel> created = List.of(
+                new Channel("testOperation1", "testOwner", List.of(), List.of(tag)),
+                new Channel("testOperation0", "testOwner", List.of(), List.of(tag)));
+        channelManager.create(created);
+
+        PVAURI countUri = new PVAURI("uriname", "pva", "auth", ChannelFinderEpicsService.SERVICE_DESC,
+                Map.of("_name", "testOperation*", "_op", "count"));
+        PVAStructure count = pvaChannel.invoke(countUri.cloneData()).get(30, TimeUnit.SECONDS);
+        Assertions.assertEquals(2L, ((PVALong) count.get("value")).get());
+
+        PVAURI namesUri = new PVAURI("uriname", "pva", "auth", ChannelFinderEpicsService.SERVICE_DESC,
+                Map.of("_name", "testOperation*", "_op", "names"));
+        PVAStructure names = pvaChannel.invoke(namesUri.cloneData()).get(30, TimeUnit.SECONDS);
+        PVAStringArray channelNames = PVATable.fromStructure(names).getColumn(ChannelFinderEpicsService.COLUMN_CHANNEL_NAME);
+        Assertions.assertArrayEquals(new String[]{"testOperation0", "testOperation1"}, channelNames.get());
+
+        PVAURI tagsUri = new PVAURI("uriname", "pva", "auth", ChannelFinderEpicsService.SERVICE_DESC,
+                Map.of("_op", "tags"));
+        PVAStructure tags = pvaChannel.invoke(tagsUri.cloneData()).get(30, TimeUnit.SECONDS);
+        PVAStringArray tagNames = PVATable.fromStructure(tags).getColumn(ChannelFinderEpicsService.COLUMN_NAME);
+        Assertions.assertTrue(List.of(tagNames.get()).contains(tag.getName()));
+
+        PVAURI unknownUri = new PVAURI("uriname", "pva", "auth", ChannelFinderEpicsService.SERVICE_DESC,
+                Map.of("_op", "delete"));
+        Assertions.assertThrows(ExecutionException.class,
+                () -> pvaChannel.invoke(unknownUri.cloneData()).get(30, TimeUnit.SECONDS),
+                "Failed to reject an unknown operation");
+    }
+
+    @Test
+    void testCountPVs() throws Exception {
+        PVAChannel changes = pvaClient.getChannel("cfService:changes");
+        PVAChannel tagCount = pvaClient.getChannel("cfService:tagCount");
+        try {
+            changes.connect().get(5, TimeUnit.SECONDS);
+            tagCount.connect().get(5, TimeUnit.SECONDS);
+
+            epicsPVs.update(System.currentTimeMillis());
+            long changesBefore = ((PVALong) changes.read("").get(5, TimeUnit.SECONDS).get("value")).get();
+
+            tagManager.create(List.of(new Tag("testCountTag", "testOwner")));
+            epicsPVs.update(System.currentTimeMillis());
+
+            Assertions.assertTrue(((PVALong) changes.read("").get(5, TimeUnit.SECONDS).get("value")).get() > changesBefore,
+                    "Failed to count the committed write");
+            Assertions.assertTrue(((PVALong) tagCount.read("").get(5, TimeUnit.SECONDS).get("value")).get() >= 1,
+                    "Failed to count the created tag");
+
+            long changesCreated = ((PVALong) changes.read("").get(5, TimeUnit.SECONDS).get("value")).get();
+            tagManager.remove("testCountTag");
+            epicsPVs.update(System.currentTimeMillis());
+            Assertions.assertTrue(((PVALong) changes.read("").get(5, TimeUnit.SECONDS).get("value")).get() > changesCreated,
+                    "Failed to count the deleted tag");
+        } finally {
+            changes.close();
+            tagCount.close();
+        }
+    }
 }
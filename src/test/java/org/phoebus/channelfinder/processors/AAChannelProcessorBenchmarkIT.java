@@ -0,0 +1,174 @@
+package org.phoebus.channelfinder.processors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.phoebus.channelfinder.entity.Channel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.activeProperty;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.archiveProperty;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.inactiveProperty;
+
+/**
+ * Measures the throughput of the {@link AAChannelProcessor} against an {@link ArchiverApplianceSimulator}, calling
+ * the processor directly and through the {@link ChannelProcessorService}, and reports the channels processed per
+ * second and the archiver calls per channel.
+ * <p>
+ * The number of channels and the batch size are set with the benchmark.channels and benchmark.batch.size system
+ * properties. The number of archiver calls is checked so a change sending more requests per channel fails.
+ */
+@WebMvcTest(AAChannelProcessor.class)
+@TestPropertySource(locations = "classpath:application_test.properties",
+        properties = {"aa.retry.backoff=10"})
+class AAChannelProcessorBenchmarkIT {
+
+    private static final Logger logger = Logger.getLogger(AAChannelProcessorBenchmarkIT.class.getName());
+
+    private static final int CHANNELS = Integer.getInteger("benchmark.channels", 20000);
+    private static final int BATCH_SIZE = Integer.getInteger("benchmark.batch.size", 1000);
+
+    @Autowired
+    AAChannelProcessor aaChannelProcessor;
+
+    @Value("${aa.chunk.size:1000}")
+    int chunkSize;
+
+    ArchiverApplianceSimulator archiver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        archiver = new ArchiverApplianceSimulator().start(17665);
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        archiver.close();
+    }
+
+    private static List<Channel> channels(String prefix) {
+        // one channel in ten is inactive and left alone
+        return IntStream.range(0, CHANNELS)
+                .mapToObj(i -> new Channel(String.format("%s:%06d", prefix, i), "owner",
+                        List.of(archiveProperty, i % 10 == 0 ? inactiveProperty : activeProperty), List.of()))
+                .toList();
+    }
+
+    private static long active(List<Channel> channels) {
+        return channels.stream().filter(channel -> channel.getProperties().contains(activeProperty)).count();
+    }
+
+    /**
+     * The most requests a batch may need: the policy list, then the status and the action of each chunk
+     */
+    private long maxCalls(int channels) {
+        long batches = (channels + BATCH_SIZE - 1) / BATCH_SIZE;
+        long chunks = (Math.min(channels, BATCH_SIZE) + chunkSize - 1) / chunkSize;
+        return batches * (1 + 2 * chunks);
+    }
+
+    private void report(String name, long channels, long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        logger.log(Level.INFO, () -> String.format(
+                "%s: %d channels in %d ms, %.0f channels/s, %.4f archiver calls per channel",
+                name, channels, elapsed, channels * 1000.0 / elapsed, (double) archiver.calls() / channels));
+    }
+
+    private long processInBatches(List<Channel> channels) throws JsonProcessingException {
+        long count = 0;
+        for (int from = 0; from < channels.size(); from += BATCH_SIZE) {
+            count += aaChannelProcessor.process(channels.subList(from, Math.min(channels.size(), from + BATCH_SIZE)));
+        }
+        return count;
+    }
+
+    @Test
+    void processorThroughput() throws JsonProcessingException {
+        List<Channel> channels = channels("BENCH:PROCESSOR");
+
+        long start = System.currentTimeMillis();
+        assertEquals(active(channels), processInBatches(channels));
+        report("Archive", channels.size(), start);
+        assertEquals(active(channels), archiver.count(ArchiverApplianceSimulator.BEING_ARCHIVED));
+        assertTrue(archiver.calls() <= maxCalls(channels.size()),
+                "Sent " + archiver.calls() + " archiver requests, expected at most " + maxCalls(channels.size()));
+
+        // nothing to change, only the status is asked
+        archiver.resetCalls();
+        start = System.currentTimeMillis();
+        assertEquals(0, processInBatches(channels));
+        report("Unchanged", channels.size(), start);
+        assertEquals(0, archiver.calls("archivePV"));
+    }
+
+    @Test
+    void throughputWithLatencyAndErrors() throws JsonProcessingException {
+        archiver.latency(20).errorRate(0.05);
+        List<Channel> channels = channels("BENCH:FLAKY");
+
+        long start = System.currentTimeMillis();
+        processInBatches(channels);
+        report("Archive with 20 ms latency and 5% errors", channels.size(), start);
+        assertEquals(active(channels), archiver.count(ArchiverApplianceSimulator.BEING_ARCHIVED),
+                "Failed to archive every pv despite the retries");
+    }
+
+    @Test
+    void serviceThroughput() throws InterruptedException, IOException {
+        ChannelProcessorDispatcher dispatcher = new ChannelProcessorDispatcher(List.of(aaChannelProcessor),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(dispatcher, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(dispatcher, "window", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "maxPending", CHANNELS);
+        ReflectionTestUtils.setField(dispatcher, "maxInFlight", CHANNELS / BATCH_SIZE + 1);
+        ReflectionTestUtils.setField(dispatcher, "journalDir", "");
+        ReflectionTestUtils.setField(dispatcher, "bulkheadConcurrency", 1);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadQueueSize", CHANNELS / BATCH_SIZE + 1);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadTimeout", 60000L);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadCircuitFailures", 5);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadCircuitOpen", 60000L);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadRetryDelay", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadMaxRetries", 3);
+        ReflectionTestUtils.setField(dispatcher, "submitTimeout", 30000L);
+        dispatcher.init();
+        ChannelProcessorService service = new ChannelProcessorService();
+        ReflectionTestUtils.setField(service, "channelProcessors", List.of(aaChannelProcessor));
+        ReflectionTestUtils.setField(service, "channelProcessorDispatcher", dispatcher);
+
+        try {
+            List<Channel> channels = channels("BENCH:SERVICE");
+            long expected = active(channels);
+            long start = System.currentTimeMillis();
+            for (int from = 0; from < channels.size(); from += BATCH_SIZE) {
+                service.sendToProcessors(channels.subList(from, Math.min(channels.size(), from + BATCH_SIZE)));
+            }
+            long deadline = start + 120000;
+            while (archiver.count(ArchiverApplianceSimulator.BEING_ARCHIVED) < expected
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            report("Archive through the processor service", channels.size(), start);
+            assertEquals(expected, archiver.count(ArchiverApplianceSimulator.BEING_ARCHIVED));
+            // a batch may be sent before it is full once the window is over
+            long maxCalls = maxCalls(channels.size()) + maxCalls(BATCH_SIZE);
+            assertTrue(archiver.calls() <= maxCalls,
+                    "Sent " + archiver.calls() + " archiver requests, expected at most " + maxCalls);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+}
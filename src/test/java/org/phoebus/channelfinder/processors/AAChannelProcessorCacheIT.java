@@ -0,0 +1,105 @@
+package org.phoebus.channelfinder.processors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.phoebus.channelfinder.entity.Channel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.activeProperty;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.archiveProperty;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.inactiveProperty;
+
+@WebMvcTest(AAChannelProcessor.class)
+@TestPropertySource(locations = "classpath:application_test.properties",
+        properties = {"aa.policy.cache.ttl=60000", "aa.status.cache.ttl=60000"})
+class AAChannelProcessorCacheIT {
+
+    @Autowired
+    AAChannelProcessor aaChannelProcessor;
+
+    MockWebServer mockArchiverAppliance;
+    ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockArchiverAppliance = new MockWebServer();
+        mockArchiverAppliance.start(17665);
+
+        objectMapper = new ObjectMapper();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        mockArchiverAppliance.shutdown();
+    }
+
+    private void enqueue(Object body) throws JsonProcessingException {
+        mockArchiverAppliance.enqueue(new MockResponse()
+                .setBody(objectMapper.writeValueAsString(body))
+                .addHeader("Content-Type", "application/json"));
+    }
+
+    /**
+     * The second write of a channel uses the cached policies and the status set by the pause request, so only
+     * the resume request reaches the archiver
+     */
+    @Test
+    void testCachedStatus() throws JsonProcessingException, InterruptedException {
+        Channel inactive = new Channel("PVCachedStatus", "owner", List.of(archiveProperty, inactiveProperty), List.of());
+        Channel active = new Channel("PVCachedStatus", "owner", List.of(archiveProperty, activeProperty), List.of());
+
+        enqueue(Map.of("policy", "description"));
+        enqueue(List.of(Map.of("pvName", inactive.getName(), "status", "Being archived")));
+        enqueue(List.of(Map.of("pvName", inactive.getName(), "status", "Archive request submitted")));
+        assertEquals(1, aaChannelProcessor.process(List.of(inactive)));
+        assertEquals("/mgmt/bpl/getPolicyList", mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS).getPath());
+        mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS);
+        assertEquals("/mgmt/bpl/pauseArchivingPV", mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS).getPath());
+
+        enqueue(List.of(Map.of("pvName", active.getName(), "status", "Archive request submitted")));
+        assertEquals(1, aaChannelProcessor.process(List.of(active)));
+        RecordedRequest resume = mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS);
+        assertNotNull(resume);
+        assertEquals("/mgmt/bpl/resumeArchivingPV", resume.getPath());
+        assertEquals(4, mockArchiverAppliance.getRequestCount());
+    }
+
+    /**
+     * Reconciling a channel asks the archiver for its status even when it is cached, and fixes the drift
+     */
+    @Test
+    void testReconcileIgnoresCachedStatus() throws JsonProcessingException, InterruptedException {
+        Channel inactive = new Channel("PVReconciled", "owner", List.of(archiveProperty, inactiveProperty), List.of());
+
+        enqueue(Map.of("policy", "description"));
+        enqueue(List.of(Map.of("pvName", inactive.getName(), "status", "Being archived")));
+        enqueue(List.of(Map.of("pvName", inactive.getName(), "status", "Archive request submitted")));
+        assertEquals(1, aaChannelProcessor.process(List.of(inactive)));
+        assertEquals("/mgmt/bpl/getPolicyList", mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS).getPath());
+        mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS);
+        assertEquals("/mgmt/bpl/pauseArchivingPV", mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS).getPath());
+
+        // resumed on the archiver by another client
+        enqueue(List.of(Map.of("pvName", inactive.getName(), "status", "Being archived")));
+        enqueue(List.of(Map.of("pvName", inactive.getName(), "status", "Archive request submitted")));
+        assertEquals(1, aaChannelProcessor.reconcile(List.of(inactive), 1000));
+        assertEquals("/mgmt/bpl/getPVStatus", mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS).getPath());
+        assertEquals("/mgmt/bpl/pauseArchivingPV", mockArchiverAppliance.takeRequest(2, TimeUnit.SECONDS).getPath());
+        assertEquals(5, mockArchiverAppliance.getRequestCount());
+    }
+}
@@ -0,0 +1,120 @@
+package org.phoebus.channelfinder.processors;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.phoebus.channelfinder.entity.Channel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.activeProperty;
+import static org.phoebus.channelfinder.processors.AAChannelProcessorIT.archiveProperty;
+
+@WebMvcTest(AAChannelProcessor.class)
+@TestPropertySource(locations = "classpath:application_test.properties",
+        properties = {"aa.chunk.size=2", "aa.retries=2", "aa.retry.backoff=10"})
+class AAChannelProcessorChunkIT {
+
+    @Autowired
+    AAChannelProcessor aaChannelProcessor;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    MockWebServer mockArchiverAppliance;
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    final Queue<String> paths = new ConcurrentLinkedQueue<>();
+    final Queue<Integer> chunkSizes = new ConcurrentLinkedQueue<>();
+    final AtomicInteger failures = new AtomicInteger();
+    volatile boolean statusDown = false;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockArchiverAppliance = new MockWebServer();
+        mockArchiverAppliance.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                try {
+                    String path = request.getRequestUrl().encodedPath();
+                    if (path.endsWith("/getPolicyList")) {
+                        return json(Map.of("policy", "description"));
+                    }
+                    // the first status request fails and is retried
+                    if (path.endsWith("/getPVStatus") && (failures.getAndIncrement() == 0 || statusDown)) {
+                        return new MockResponse().setResponseCode(503);
+                    }
+                    paths.add(path);
+                    List<Object> body = objectMapper.readValue(request.getBody().readUtf8(), new TypeReference<>() {});
+                    chunkSizes.add(body.size());
+                    if (path.endsWith("/getPVStatus")) {
+                        return json(body.stream()
+                                .map(pv -> Map.of("pvName", pv.toString(), "status", "Not being archived"))
+                                .toList());
+                    }
+                    return json(List.of());
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(500);
+                }
+            }
+        });
+        mockArchiverAppliance.start(17665);
+    }
+
+    private MockResponse json(Object body) throws IOException {
+        return new MockResponse()
+                .setBody(objectMapper.writeValueAsString(body))
+                .addHeader("Content-Type", "application/json");
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        mockArchiverAppliance.shutdown();
+    }
+
+    @Test
+    void testChunkedRequests() throws IOException {
+        List<Channel> channels = IntStream.range(0, 5)
+                .mapToObj(i -> new Channel("PVChunk" + i, "owner", List.of(archiveProperty, activeProperty), List.of()))
+                .toList();
+
+        assertEquals(5, aaChannelProcessor.process(channels));
+        assertEquals(3, paths.stream().filter(path -> path.endsWith("/getPVStatus")).count());
+        assertEquals(3, paths.stream().filter(path -> path.endsWith("/archivePV")).count());
+        assertTrue(chunkSizes.stream().allMatch(size -> size <= 2), "Sent a chunk larger than aa.chunk.size");
+        assertEquals(10, chunkSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testFailedRequestsAreCounted() throws IOException {
+        statusDown = true;
+        List<Channel> channels = IntStream.range(0, 3)
+                .mapToObj(i -> new Channel("PVDown" + i, "owner", List.of(archiveProperty, activeProperty), List.of()))
+                .toList();
+
+        assertEquals(0, aaChannelProcessor.process(channels));
+        assertTrue(paths.stream().noneMatch(path -> path.endsWith("/archivePV")), "Archived pvs of unknown status");
+        assertEquals(2, meterRegistry.get(AAChannelProcessor.CF_PROCESSOR_AA_FAILURES)
+                .tag("request", "getPVStatus").counter().count());
+    }
+}
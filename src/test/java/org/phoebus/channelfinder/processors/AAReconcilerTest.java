@@ -0,0 +1,22 @@
+package org.phoebus.channelfinder.processors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AAReconcilerTest {
+
+    @Test
+    void stepSpreadsPassOverPeriod() {
+        // 1.2M channels checked every minute across a day
+        Assertions.assertEquals(834, AAReconciler.stepSize(1_200_000, 60_000, 86_400_000, 100));
+        Assertions.assertEquals(1, AAReconciler.stepSize(10, 60_000, 86_400_000, 100),
+                "Failed to check at least one channel per step");
+    }
+
+    @Test
+    void stepBoundedByMaxRate() {
+        Assertions.assertEquals(600, AAReconciler.stepSize(1_200_000, 60_000, 86_400_000, 10));
+        Assertions.assertEquals(6000, AAReconciler.stepSize(1_200_000, 60_000, 0, 100),
+                "Failed to bound a pass without period by the max rate");
+    }
+}
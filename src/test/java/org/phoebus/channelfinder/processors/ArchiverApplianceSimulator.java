@@ -0,0 +1,218 @@
+package org.phoebus.channelfinder.processors;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A stand-in for the management API of an archiver appliance, keeping the status of the archived pvs in memory.
+ * <p>
+ * It serves getPolicyList, getPVStatus, archivePV, pauseArchivingPV and resumeArchivingPV, with the pvs passed in
+ * the request body or in the pv query parameter. A pv submitted to be archived is being archived right away. Each
+ * response is delayed by the configured latency, and the configured fraction of the requests fails with a 503 so
+ * the retries of the processor are exercised. The requests are counted by endpoint.
+ */
+class ArchiverApplianceSimulator extends Dispatcher implements Closeable {
+
+    static final String BEING_ARCHIVED = "Being archived";
+    static final String PAUSED = "Paused";
+    static final String NOT_ARCHIVED = "Not being archived";
+
+    private static final String MGMT_RESOURCE = "/mgmt/bpl/";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MockWebServer server = new MockWebServer();
+    // status by pv name
+    private final Map<String, String> pvs = new ConcurrentHashMap<>();
+    // requests by endpoint
+    private final Map<String, AtomicLong> calls = new ConcurrentHashMap<>();
+    private final Random random = new Random(0);
+
+    private volatile List<String> policies = List.of("default", "fast");
+    private volatile long latency = 0;
+    private volatile double errorRate = 0;
+
+    ArchiverApplianceSimulator() {
+        server.setDispatcher(this);
+    }
+
+    /**
+     * @param port the port to listen on
+     * @return this simulator
+     * @throws IOException if the port is not available
+     */
+    ArchiverApplianceSimulator start(int port) throws IOException {
+        server.start(port);
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * @param millis milliseconds each response is delayed by
+     * @return this simulator
+     */
+    ArchiverApplianceSimulator latency(long millis) {
+        this.latency = millis;
+        return this;
+    }
+
+    /**
+     * @param rate fraction of the requests failing with a 503, between 0 and 1
+     * @return this simulator
+     */
+    ArchiverApplianceSimulator errorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * @param names the names of the policies returned by getPolicyList
+     * @return this simulator
+     */
+    ArchiverApplianceSimulator policies(String... names) {
+        this.policies = List.of(names);
+        return this;
+    }
+
+    /**
+     * @param pv the pv name
+     * @return the archive status of the pv
+     */
+    String status(String pv) {
+        return pvs.getOrDefault(pv, NOT_ARCHIVED);
+    }
+
+    /**
+     * Change the status of a pv behind the back of the processor
+     *
+     * @param pv     the pv name
+     * @param status the archive status, null to forget the pv
+     */
+    void setStatus(String pv, String status) {
+        if (status == null) {
+            pvs.remove(pv);
+        } else {
+            pvs.put(pv, status);
+        }
+    }
+
+    /**
+     * @param status an archive status
+     * @return the number of pvs with the status
+     */
+    long count(String status) {
+        return pvs.values().stream().filter(status::equals).count();
+    }
+
+    /**
+     * @param endpoint the endpoint, e.g. getPVStatus
+     * @return the number of requests received by the endpoint, including the failed ones
+     */
+    long calls(String endpoint) {
+        AtomicLong count = calls.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the number of requests received, including the failed ones
+     */
+    long calls() {
+        return calls.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    void resetCalls() {
+        calls.clear();
+    }
+
+    @NotNull
+    @Override
+    public MockResponse dispatch(@NotNull RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        String path = url == null ? "" : url.encodedPath();
+        String endpoint = path.startsWith(MGMT_RESOURCE) ? path.substring(MGMT_RESOURCE.length()) : path;
+        calls.computeIfAbsent(endpoint, e -> new AtomicLong()).incrementAndGet();
+
+        if (fails()) {
+            return delayed(new MockResponse().setResponseCode(503));
+        }
+        try {
+            return switch (endpoint) {
+                case "getPolicyList" -> json(policies.stream().collect(Collectors.toMap(p -> p, p -> p + " policy")));
+                case "getPVStatus" -> json(requestedPVs(request).stream()
+                        .map(pv -> Map.of("pvName", pv, "status", status(pv)))
+                        .toList());
+                case "archivePV" -> json(update(requestedPVs(request), BEING_ARCHIVED, "Archive request submitted"));
+                case "pauseArchivingPV" -> json(update(requestedPVs(request), PAUSED, "ok"));
+                case "resumeArchivingPV" -> json(update(requestedPVs(request), BEING_ARCHIVED, "ok"));
+                default -> delayed(new MockResponse().setResponseCode(404));
+            };
+        } catch (IOException | IllegalArgumentException e) {
+            return delayed(new MockResponse().setResponseCode(400).setBody(String.valueOf(e.getMessage())));
+        }
+    }
+
+    private boolean fails() {
+        if (errorRate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < errorRate;
+        }
+    }
+
+    private List<Map<String, String>> update(List<String> requested, String status, String response) {
+        requested.forEach(pv -> pvs.put(pv, status));
+        return requested.stream().map(pv -> Map.of("pvName", pv, "status", response)).toList();
+    }
+
+    /**
+     * The pvs of the request, a json list of pv names or of archive requests in the body, or the comma separated
+     * pv query parameter
+     */
+    private List<String> requestedPVs(RecordedRequest request) throws IOException {
+        String body = request.getBody().readUtf8();
+        if (body.isBlank()) {
+            HttpUrl url = request.getRequestUrl();
+            String pv = url == null ? null : url.queryParameter("pv");
+            return pv == null ? List.of() : Arrays.asList(pv.split(","));
+        }
+        List<JsonNode> nodes = objectMapper.readValue(body, new TypeReference<>() {});
+        List<String> requested = new ArrayList<>();
+        for (JsonNode node : nodes) {
+            requested.add(node.isTextual() ? node.asText() : node.path("pv").asText());
+        }
+        return requested;
+    }
+
+    private MockResponse json(Object body) throws IOException {
+        return delayed(new MockResponse()
+                .setBody(objectMapper.writeValueAsString(body))
+                .addHeader("Content-Type", "application/json"));
+    }
+
+    private MockResponse delayed(MockResponse response) {
+        return latency > 0 ? response.setHeadersDelay(latency, TimeUnit.MILLISECONDS) : response;
+    }
+}
@@ -0,0 +1,74 @@
+package org.phoebus.channelfinder.processors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Property;
+import org.phoebus.channelfinder.entity.Tag;
+
+import java.util.List;
+import java.util.Set;
+
+class ChannelChangeTest {
+
+    private static Channel channel(List<Property> properties, List<Tag> tags) {
+        return new Channel("ch0", "owner", properties, tags);
+    }
+
+    @Test
+    void changedTagsAndProperties() {
+        Channel before = channel(
+                List.of(new Property("archive", "owner", "monitor"), new Property("location", "owner", "a")),
+                List.of(new Tag("tag0", "owner")));
+        Channel after = channel(
+                List.of(new Property("archive", "owner", "monitor"), new Property("location", "owner", "b"),
+                        new Property("device", "owner", "d")),
+                List.of(new Tag("tag1", "owner")));
+
+        ChannelChange change = ChannelChange.of(before, after);
+        Assertions.assertEquals(ChannelChange.Type.UPDATE, change.type());
+        Assertions.assertEquals(Set.of("location", "device"), change.changedProperties());
+        Assertions.assertEquals(Set.of("tag0", "tag1"), change.changedTags());
+        Assertions.assertFalse(change.touches(Set.of("Archive")), "Reported an unchanged property as touched");
+        Assertions.assertTrue(change.touches(Set.of("LOCATION")), "Failed to compare the properties ignoring case");
+        Assertions.assertTrue(change.touches(Set.of()), "Failed to send every change to processors watching nothing");
+    }
+
+    @Test
+    void processTouchesWatchedProperties() {
+        // a reprocessed channel without the archive property may still need its pv paused
+        ChannelChange change = ChannelChange.process(channel(List.of(new Property("location", "owner", "a")), List.of()));
+        Assertions.assertEquals(ChannelChange.Type.PROCESS, change.type());
+        Assertions.assertTrue(change.touches(Set.of("archive", "pvStatus")),
+                "Failed to send a reprocessed channel lacking the watched properties");
+    }
+
+    @Test
+    void createAndDelete() {
+        Channel channel = channel(List.of(new Property("archive", "owner", "monitor")), List.of());
+
+        ChannelChange created = ChannelChange.of(null, channel);
+        Assertions.assertEquals(ChannelChange.Type.CREATE, created.type());
+        Assertions.assertEquals(Set.of("archive"), created.changedProperties());
+
+        ChannelChange deleted = ChannelChange.of(channel, null);
+        Assertions.assertEquals(ChannelChange.Type.DELETE, deleted.type());
+        Assertions.assertEquals("ch0", deleted.name());
+        Assertions.assertTrue(deleted.touches(Set.of("archive")));
+
+        Assertions.assertNull(created.merge(deleted), "Failed to drop a channel created then deleted");
+    }
+
+    @Test
+    void mergeKeepsFirstAndLastState() {
+        Channel first = channel(List.of(new Property("archive", "owner", "monitor")), List.of());
+        Channel second = channel(List.of(new Property("archive", "owner", "scan")), List.of());
+        Channel third = channel(List.of(new Property("archive", "owner", "scan"), new Property("location", "owner", "a")), List.of());
+
+        ChannelChange merged = ChannelChange.of(first, second).merge(ChannelChange.of(second, third));
+        Assertions.assertEquals(ChannelChange.Type.UPDATE, merged.type());
+        Assertions.assertSame(first, merged.before());
+        Assertions.assertSame(third, merged.after());
+        Assertions.assertEquals(Set.of("archive", "location"), merged.changedProperties());
+    }
+}
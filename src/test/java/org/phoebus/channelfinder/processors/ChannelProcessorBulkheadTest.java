@@ -0,0 +1,210 @@
+package org.phoebus.channelfinder.processors;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.phoebus.channelfinder.entity.Channel;
+import org.phoebus.channelfinder.entity.Property;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ChannelProcessorBulkheadTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ChannelChange> batch = List.of(ChannelChange.of(null, new Channel("ch0", "owner")));
+
+    private interface Process {
+        void process(List<Channel> channels) throws InterruptedException;
+    }
+
+    private static ChannelProcessor processor(Process process) {
+        return new ChannelProcessor() {
+            @Override
+            public boolean enabled() {
+                return true;
+            }
+
+            @Override
+            public String processorInfo() {
+                return "test";
+            }
+
+            @Override
+            public long process(List<Channel> channels) {
+                try {
+                    process.process(channels);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return channels.size();
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    void slowProcessorDoesNotBlockOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ChannelProcessorBulkhead slow = new ChannelProcessorBulkhead(processor(channels -> release.await()),
+                new ChannelProcessorBulkhead.Limits(1, 10, 10000, 5, 60000, 10, 5), timer, meterRegistry);
+        ChannelProcessorBulkhead fast = new ChannelProcessorBulkhead(processor(channels -> { }),
+                new ChannelProcessorBulkhead.Limits(1, 10, 10000, 5, 60000, 10, 5), timer, meterRegistry);
+
+        slow.submit(batch);
+        fast.submit(batch).get(5, TimeUnit.SECONDS);
+        release.countDown();
+        slow.shutdown(5000);
+        fast.shutdown(5000);
+    }
+
+    @Test
+    void skipUnwatchedChanges() throws Exception {
+        List<List<Channel>> processed = new CopyOnWriteArrayList<>();
+        ChannelProcessor watching = new ChannelProcessor() {
+            @Override
+            public boolean enabled() {
+                return true;
+            }
+
+            @Override
+            public String processorInfo() {
+                return "test";
+            }
+
+            @Override
+            public Set<String> watchedProperties() {
+                return Set.of("archive");
+            }
+
+            @Override
+            public long process(List<Channel> channels) {
+                processed.add(channels);
+                return channels.size();
+            }
+        };
+        ChannelProcessorBulkhead bulkhead = new ChannelProcessorBulkhead(watching,
+                new ChannelProcessorBulkhead.Limits(1, 10, 10000, 5, 60000, 10, 5), timer, meterRegistry);
+        Channel archived = new Channel("ch1", "owner", List.of(new Property("archive", "owner", "monitor")), List.of());
+
+        bulkhead.submit(List.of(ChannelChange.of(null, new Channel("ch0", "owner")), ChannelChange.of(null, archived)))
+                .get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(List.of(List.of(archived)), processed);
+        Assertions.assertEquals(1, meterRegistry.get(ChannelProcessorBulkhead.CF_PROCESSOR_SKIPPED).counter().count());
+        bulkhead.shutdown(5000);
+    }
+
+    @Test
+    void timeoutInterruptsAndOpensCircuit() throws Exception {
+        ChannelProcessorBulkhead bulkhead = new ChannelProcessorBulkhead(processor(channels -> Thread.sleep(60000)),
+                new ChannelProcessorBulkhead.Limits(1, 10, 100, 2, 60000, 10, 5), timer, meterRegistry);
+
+        CompletableFuture<Void> done = bulkhead.submit(batch);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!bulkhead.isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(bulkhead.isOpen(), "Failed to open the circuit after repeated timeouts");
+        Assertions.assertEquals(2, meterRegistry.get(ChannelProcessorBulkhead.CF_PROCESSOR_FAILURES)
+                .tag("reason", "timeout").counter().count());
+        Assertions.assertFalse(done.isDone(), "Completed a batch the processor did not handle");
+
+        CompletableFuture<Void> held = bulkhead.submit(batch);
+        Assertions.assertTrue(meterRegistry.get(ChannelProcessorBulkhead.CF_PROCESSOR_REJECTED)
+                .tag("reason", "circuit_open").counter().count() >= 1);
+        bulkhead.shutdown(5000);
+        Assertions.assertTrue(done.isCompletedExceptionally(), "Failed to report the batch left unprocessed");
+        Assertions.assertTrue(held.isCompletedExceptionally(), "Failed to report the batch left unprocessed");
+    }
+
+    @Test
+    void retryFailedBatches() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<List<Channel>> processed = new CopyOnWriteArrayList<>();
+        ChannelProcessorBulkhead bulkhead = new ChannelProcessorBulkhead(processor(channels -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new IllegalStateException("unavailable");
+            }
+            processed.add(channels);
+        }), new ChannelProcessorBulkhead.Limits(1, 10, 10000, 5, 60000, 10, 5), timer, meterRegistry);
+
+        bulkhead.submit(batch).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, processed.size(), "Failed to send the failed batch again");
+        Assertions.assertEquals(2, meterRegistry.get(ChannelProcessorBulkhead.CF_PROCESSOR_FAILURES)
+                .tag("reason", "error").counter().count());
+        bulkhead.shutdown(5000);
+    }
+
+    @Test
+    void holdBackBatchesWhileTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        ChannelProcessorBulkhead bulkhead = new ChannelProcessorBulkhead(processor(channels -> {
+            release.await();
+            processed.add(channels.get(0).getName());
+        }), new ChannelProcessorBulkhead.Limits(1, 2, 10000, 5, 60000, 10, 5), timer, meterRegistry);
+
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            done.add(bulkhead.submit(List.of(ChannelChange.of(null, new Channel("ch" + i, "owner")))));
+        }
+        Assertions.assertTrue(meterRegistry.get(ChannelProcessorBulkhead.CF_PROCESSOR_REJECTED)
+                .tag("reason", "queue_full").counter().count() >= 1);
+        release.countDown();
+        CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(List.of("ch0", "ch1", "ch2", "ch3", "ch4"), processed,
+                "Failed to process the held back batches in order");
+        bulkhead.shutdown(5000);
+    }
+
+    @Test
+    void dropBatchesAfterMaxRetries() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ChannelProcessorBulkhead bulkhead = new ChannelProcessorBulkhead(processor(channels -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("unavailable");
+        }), new ChannelProcessorBulkhead.Limits(1, 10, 10000, 10, 60000, 10, 2), timer, meterRegistry);
+
+        bulkhead.submit(batch).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(3, attempts.get(), "Failed to give up after the retries");
+        Assertions.assertEquals(1, meterRegistry.get(ChannelProcessorBulkhead.CF_PROCESSOR_DROPPED)
+                .tag("reason", "max_retries").counter().count());
+        bulkhead.shutdown(5000);
+    }
+
+    @Test
+    void dropOldestHeldBackBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        ChannelProcessorBulkhead bulkhead = new ChannelProcessorBulkhead(processor(channels -> {
+            release.await();
+            processed.add(channels.get(0).getName());
+        }), new ChannelProcessorBulkhead.Limits(1, 1, 10000, 5, 60000, 10, 5), timer, meterRegistry);
+
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            done.add(bulkhead.submit(List.of(ChannelChange.of(null, new Channel("ch" + i, "owner")))));
+        }
+        done.get(2).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, meterRegistry.get(ChannelProcessorBulkhead.CF_PROCESSOR_DROPPED)
+                .tag("reason", "backlog_full").counter().count());
+        release.countDown();
+        CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(List.of("ch0", "ch1", "ch3"), processed, "Failed to drop the oldest held back batch");
+        bulkhead.shutdown(5000);
+    }
+}
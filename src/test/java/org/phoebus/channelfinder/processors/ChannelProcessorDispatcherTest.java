@@ -0,0 +1,179 @@
+package org.phoebus.channelfinder.processors;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.phoebus.channelfinder.entity.Channel;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+class ChannelProcessorDispatcherTest {
+
+    private final LinkedBlockingQueue<List<Channel>> batches = new LinkedBlockingQueue<>();
+    private ChannelProcessorDispatcher dispatcher;
+    // released to let the processor handle its batches
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private int maxInFlight = 10;
+    private long submitTimeout = 30000;
+
+    @TempDir
+    Path journal;
+
+    private void start(int batchSize, long window) {
+        gate.countDown();
+        start(batchSize, window, "", 0, 0);
+    }
+
+    private void start(int batchSize, long window, String journalDir, int segmentSize, int maxSegments) {
+        ChannelProcessor processor = new ChannelProcessor() {
+            @Override
+            public boolean enabled() {
+                return true;
+            }
+
+            @Override
+            public String processorInfo() {
+                return "test";
+            }
+
+            @Override
+            public long process(List<Channel> channels) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                batches.add(channels);
+                return channels.size();
+            }
+        };
+        dispatcher = new ChannelProcessorDispatcher(List.of(processor), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(dispatcher, "batchSize", batchSize);
+        ReflectionTestUtils.setField(dispatcher, "window", window);
+        ReflectionTestUtils.setField(dispatcher, "maxPending", 100);
+        ReflectionTestUtils.setField(dispatcher, "maxInFlight", maxInFlight);
+        ReflectionTestUtils.setField(dispatcher, "submitTimeout", submitTimeout);
+        ReflectionTestUtils.setField(dispatcher, "journalDir", journalDir);
+        ReflectionTestUtils.setField(dispatcher, "journalSegmentSize", segmentSize);
+        ReflectionTestUtils.setField(dispatcher, "journalMaxSegments", maxSegments);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadConcurrency", 1);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadQueueSize", 10);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadTimeout", 10000L);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadCircuitFailures", 5);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadCircuitOpen", 60000L);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadRetryDelay", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "bulkheadMaxRetries", 3);
+        dispatcher.init();
+    }
+
+    private static List<ChannelChange> created(Channel... channels) {
+        return Stream.of(channels).map(channel -> ChannelChange.of(null, channel)).toList();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException, IOException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void coalesceByName() throws InterruptedException {
+        start(10, 200);
+        dispatcher.submit(created(new Channel("ch0", "owner0"), new Channel("ch1", "owner0")));
+        dispatcher.submit(created(new Channel("ch0", "owner1")));
+
+        List<Channel> batch = batches.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(batch, "Failed to dispatch the channels");
+        Assertions.assertEquals(List.of("ch0", "ch1"), batch.stream().map(Channel::getName).toList());
+        Assertions.assertEquals("owner1", batch.get(0).getOwner(), "Failed to keep the latest version of the channel");
+        Assertions.assertNull(batches.poll(500, TimeUnit.MILLISECONDS), "Dispatched a channel more than once");
+    }
+
+    @Test
+    void flushFullBatches() throws InterruptedException {
+        start(2, 60000);
+        dispatcher.submit(created(new Channel("ch0", "owner"), new Channel("ch1", "owner"), new Channel("ch2", "owner")));
+
+        List<Channel> batch = batches.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(batch, "Failed to dispatch the full batch before the end of the window");
+        Assertions.assertEquals(2, batch.size());
+        Assertions.assertEquals(1, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void countChannelsNotVersions() throws InterruptedException {
+        start(2, 60000);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.submit(created(new Channel("ch0", "owner" + i)));
+        }
+
+        Assertions.assertNull(batches.poll(500, TimeUnit.MILLISECONDS), "Dispatched a single channel as a full batch");
+        Assertions.assertEquals(1, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void resumeWritersOnceTheJournalIsCommitted() throws InterruptedException {
+        start(1, 0, journal.toString(), 512, 2);
+        int count = 50;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                dispatcher.submit(created(new Channel("ch" + i, "owner")));
+            }
+        });
+        writer.start();
+        writer.join(500);
+        Assertions.assertTrue(writer.isAlive(), "Failed to wait for the processor with a full journal");
+
+        gate.countDown();
+        writer.join(5000);
+        Assertions.assertFalse(writer.isAlive(), "Failed to resume the writer once the journal was committed");
+        int processed = 0;
+        List<Channel> batch;
+        while (processed < count && (batch = batches.poll(5, TimeUnit.SECONDS)) != null) {
+            processed += batch.size();
+        }
+        Assertions.assertEquals(count, processed);
+    }
+
+    @Test
+    void boundBatchesInFlight() throws InterruptedException {
+        maxInFlight = 2;
+        start(1, 0, "", 0, 0);
+        for (int i = 0; i < 5; i++) {
+            dispatcher.submit(created(new Channel("ch" + i, "owner")));
+        }
+        Thread.sleep(500);
+        Assertions.assertEquals(3, dispatcher.getQueueDepth(), "Failed to keep the batches queued past the limit");
+
+        gate.countDown();
+        int processed = 0;
+        List<Channel> batch;
+        while (processed < 5 && (batch = batches.poll(5, TimeUnit.SECONDS)) != null) {
+            processed += batch.size();
+        }
+        Assertions.assertEquals(5, processed);
+    }
+
+    @Test
+    void rejectWritersAfterTheSubmitTimeout() {
+        submitTimeout = 200;
+        start(1, 0, journal.toString(), 512, 2);
+        List<ChannelChange> changes = Stream.iterate(0, i -> i + 1).limit(50)
+                .map(i -> ChannelChange.of(null, new Channel("ch" + i, "owner"))).toList();
+
+        ResponseStatusException e = Assertions.assertThrows(ResponseStatusException.class,
+                () -> dispatcher.submit(changes), "Failed to reject the writer once the journal stayed full");
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        gate.countDown();
+    }
+}
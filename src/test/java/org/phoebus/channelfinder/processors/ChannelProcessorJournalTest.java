@@ -0,0 +1,75 @@
+package org.phoebus.channelfinder.processors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.phoebus.channelfinder.entity.Channel;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+class ChannelProcessorJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private static List<String> names(ChannelQueue.Batch batch) {
+        return batch.changes().stream().map(ChannelChange::name).toList();
+    }
+
+    private static ChannelChange created(String name, String owner) {
+        return ChannelChange.of(null, new Channel(name, owner));
+    }
+
+    @Test
+    void coalesceBatch() throws IOException {
+        ChannelProcessorJournal journal = ChannelProcessorJournal.open(directory, 4096, 4);
+        journal.offer(created("ch0", "owner0"), 1);
+        journal.offer(created("ch1", "owner0"), 2);
+        journal.offer(created("ch0", "owner1"), 3);
+        Assertions.assertEquals(3, journal.size());
+        Assertions.assertEquals(1, journal.oldest());
+
+        ChannelQueue.Batch batch = journal.take(10);
+        Assertions.assertEquals(List.of("ch0", "ch1"), names(batch));
+        Assertions.assertEquals("owner1", batch.changes().get(0).after().getOwner(), "Failed to keep the latest version of the channel");
+        Assertions.assertEquals(3, batch.queued());
+        Assertions.assertEquals(0, journal.size());
+        journal.close();
+    }
+
+    @Test
+    void replayAfterCheckpoint() throws IOException {
+        ChannelProcessorJournal journal = ChannelProcessorJournal.open(directory, 4096, 4);
+        for (int i = 0; i < 5; i++) {
+            journal.offer(created("ch" + i, "owner"), i);
+        }
+        journal.commit(journal.take(2));
+        // taken but not committed, processed again after a restart
+        journal.take(1);
+        journal.close();
+
+        ChannelProcessorJournal reopened = ChannelProcessorJournal.open(directory, 4096, 4);
+        Assertions.assertEquals(3, reopened.size());
+        Assertions.assertEquals(List.of("ch2", "ch3", "ch4"), names(reopened.take(10)));
+        reopened.close();
+    }
+
+    @Test
+    void boundedSegments() throws IOException {
+        ChannelProcessorJournal journal = ChannelProcessorJournal.open(directory, 256, 2);
+        int queued = 0;
+        while (journal.offer(created("ch" + queued, "owner"), queued)) {
+            queued++;
+        }
+        Assertions.assertEquals(2, journal.segmentCount());
+        Assertions.assertEquals(queued, journal.size());
+
+        // processing the first segment frees it for new channels
+        journal.commit(journal.take(queued));
+        Assertions.assertEquals(1, journal.segmentCount());
+        Assertions.assertTrue(journal.offer(created("chNext", "owner"), queued));
+        journal.close();
+    }
+}